@@ -0,0 +1,122 @@
+package com.example.benchmark;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import java.util.List;
+import java.util.Map;
+
+// 基准测试共用的语料
+public final class BenchmarkCorpus {
+
+    public static final String LONG_ANSWER_ZH =
+            "您好！重置密码的步骤如下：首先，在登录页面点击“忘记密码”链接；"
+            + "然后输入您注册时使用的手机号或邮箱，系统会发送一条包含验证码的消息。"
+            + "请在十分钟内输入验证码，并设置一个新的密码，新密码需要包含大小写字母和数字，长度不少于八位。"
+            + "设置完成后，请使用新密码重新登录。如果您没有收到验证码，请检查垃圾邮件文件夹，"
+            + "或者稍等一分钟后点击“重新发送”。若仍然无法完成重置，请联系在线客服，"
+            + "并提供您的账号信息，我们会在一个工作日内为您处理。For security reasons, "
+            + "please do not share the verification code with anyone, including our staff. "
+            + "感谢您的耐心，祝您使用愉快！";
+
+    public static final String LONG_ANSWER_EN =
+            "Hello! To reset your password, click the \"Forgot password\" link on the sign-in page, "
+            + "then enter the phone number or email address you registered with. We will send you a message "
+            + "containing a verification code. Enter the code within ten minutes and choose a new password "
+            + "that is at least eight characters long and contains upper-case letters, lower-case letters and digits. "
+            + "Once the password has been changed, sign in again with the new password. If the code does not arrive, "
+            + "please check your spam folder or click \"Resend\" after one minute. If you still cannot reset it, "
+            + "contact our online support with your account details and we will handle it within one business day. "
+            + "For security reasons, please do not share the verification code with anyone, including our staff.";
+
+    // 按语言划分的客服问答语料：问题混合了独立问题和依赖上下文的追问
+    public record Corpus(List<String> questions, List<String> context, List<Map<String, String>> history,
+                         String answer) {
+    }
+
+    public static final Corpus ZH = new Corpus(
+            List.of(
+                    "我忘记了登录密码，应该怎么重置？",
+                    "订单已经付款但一直显示待发货，请问什么时候能发货？",
+                    "这个可以退吗？",
+                    "那运费谁出？",
+                    "会员积分的有效期是多久，过期之后还能恢复吗",
+                    "如何修改收货地址",
+                    "刚才说的优惠券在哪里领取？",
+                    "发票可以开具增值税专用发票吗？需要提供哪些资料"),
+            List.of(
+                    "退货政策：签收后七天内可无理由退货，商品需保持完好，不影响二次销售。",
+                    "运费说明：质量问题退货由商家承担运费，非质量问题由买家承担。",
+                    "发票说明：支持电子普通发票和增值税专用发票，专票需提供开票资料。"),
+            List.of(
+                    Map.of("role", "user", "content", "你好，我上周买了一件羽绒服，尺码偏大，想换小一号。"),
+                    Map.of("role", "assistant", "content", "您好！签收后七天内支持换货，请在订单详情页点击“申请售后”，选择换货并填写需要的尺码。"),
+                    Map.of("role", "user", "content", "已经提交了，需要我先把衣服寄回去吗？"),
+                    Map.of("role", "assistant", "content", "是的，请在审核通过后三天内寄回，寄回时请附上写有订单号的纸条，仓库收到后会尽快为您发出新尺码。"),
+                    Map.of("role", "user", "content", "寄回的运费需要我自己出吗？"),
+                    Map.of("role", "assistant", "content", "尺码不合适属于非质量问题，寄回运费需要您承担；如果您开通了运费险，可以在签收后申请理赔。")),
+            LONG_ANSWER_ZH);
+
+    public static final Corpus EN = new Corpus(
+            List.of(
+                    "I forgot my password, how can I reset it?",
+                    "My order has been paid but still shows pending shipment, when will it ship?",
+                    "Can I return it?",
+                    "Who pays for shipping then?",
+                    "How long are loyalty points valid and can expired points be restored",
+                    "How do I change my delivery address",
+                    "Where do I get the coupon you mentioned earlier?",
+                    "Can you issue a VAT invoice? What information do I need to provide"),
+            List.of(
+                    "Return policy: items may be returned within seven days of delivery if they are undamaged and resalable.",
+                    "Shipping: the merchant pays return shipping for defective items; otherwise the buyer pays.",
+                    "Invoices: electronic invoices and VAT invoices are available; VAT invoices require company details."),
+            List.of(
+                    Map.of("role", "user", "content", "Hi, I bought a down jacket last week and it is a bit too large, I would like a smaller size."),
+                    Map.of("role", "assistant", "content", "Hello! Exchanges are supported within seven days of delivery. Open the order details page, click \"After-sales\", choose exchange and enter the size you need."),
+                    Map.of("role", "user", "content", "Done. Do I need to send the jacket back first?"),
+                    Map.of("role", "assistant", "content", "Yes, please ship it back within three days of approval and include a note with your order number. We will send the new size as soon as the warehouse receives it."),
+                    Map.of("role", "user", "content", "Do I have to pay for the return shipping?"),
+                    Map.of("role", "assistant", "content", "A size exchange is not a quality issue, so return shipping is paid by you. If you bought shipping insurance you can file a claim after delivery.")),
+            LONG_ANSWER_EN);
+
+    private BenchmarkCorpus() {
+    }
+
+    public static Corpus of(String language) {
+        return "en".equals(language) ? EN : ZH;
+    }
+
+    // 模拟 DeepSeek 的非流式响应
+    public static String deepSeekCompletion(String answer) {
+        return "{\"id\":\"5f1c2a7e-0b7e-4c1e-9a57-3f7f0c0e8d11\",\"object\":\"chat.completion\","
+                + "\"created\":1718345013,\"model\":\"deepseek-chat\","
+                + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\""
+                + new String(JsonStringEncoder.getInstance().quoteAsString(answer))
+                + "\"},\"logprobs\":null,\"finish_reason\":\"stop\"}],"
+                + "\"usage\":{\"prompt_tokens\":42,\"completion_tokens\":236,\"total_tokens\":278,"
+                + "\"prompt_tokens_details\":{\"cached_tokens\":0},"
+                + "\"prompt_cache_hit_tokens\":0,\"prompt_cache_miss_tokens\":42},"
+                + "\"system_fingerprint\":\"fp_a49d71b8a1\"}";
+    }
+
+    // 模拟 DeepSeek 的 SSE 响应：每个增量 1~2 个字符，与真实接口的分词粒度相近
+    public static String deepSeekStream(String answer) {
+        StringBuilder stream = new StringBuilder();
+        stream.append(event("{\"role\":\"assistant\",\"content\":\"\"}", "null"));
+        for (int i = 0; i < answer.length(); ) {
+            int end = Math.min(answer.length(), i + 1 + (i % 2));
+            String token = answer.substring(i, end);
+            stream.append(event("{\"content\":\"" + new String(JsonStringEncoder.getInstance().quoteAsString(token)) + "\"}", "null"));
+            i = end;
+        }
+        stream.append(event("{\"content\":\"\"}", "\"stop\""));
+        stream.append("data: [DONE]\n\n");
+        return stream.toString();
+    }
+
+    private static String event(String delta, String finishReason) {
+        return "data: {\"id\":\"5f1c2a7e-0b7e-4c1e-9a57-3f7f0c0e8d11\",\"object\":\"chat.completion.chunk\","
+                + "\"created\":1718345013,\"model\":\"deepseek-chat\",\"system_fingerprint\":\"fp_a49d71b8a1\","
+                + "\"choices\":[{\"index\":0,\"delta\":" + delta + ",\"logprobs\":null,\"finish_reason\":" + finishReason + "}]}\n\n";
+    }
+}
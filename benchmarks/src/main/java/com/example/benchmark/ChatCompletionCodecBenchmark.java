@@ -0,0 +1,97 @@
+package com.example.benchmark;
+
+import com.example.qa.llm.ChatCompletionCodec;
+import com.example.qa.llm.ChatCompletionRequest;
+import com.example.qa.llm.ChatCompletionResponse;
+import com.example.qa.llm.ChatMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// 非流式 chat/completions 编解码对比：HashMap + ObjectMapper（原有方式），
+// 对比 ChatCompletionCodec 的预序列化常量 + 流式生成/解析。按中文、英文（纯 ASCII）语料分别统计。
+// 查看分配情况：java -jar benchmarks/target/benchmarks.jar ChatCompletionCodecBenchmark -prof gc
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatCompletionCodecBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Param({"zh", "en"})
+    public String language;
+
+    private String question;
+    private ChatCompletionCodec codec;
+    private byte[] response;
+
+    @Setup
+    public void setUp() {
+        codec = new ChatCompletionCodec("deepseek-chat");
+        BenchmarkCorpus.Corpus corpus = BenchmarkCorpus.of(language);
+        question = corpus.questions().get(0);
+        response = BenchmarkCorpus.deepSeekCompletion(corpus.answer()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] encodeMap() throws Exception {
+        List<Map<String, String>> messages = new ArrayList<>();
+        Map<String, String> systemMessage = new HashMap<>();
+        systemMessage.put("role", "system");
+        systemMessage.put("content", ChatCompletionCodec.DEFAULT_SYSTEM_PROMPT);
+        messages.add(systemMessage);
+        Map<String, String> userMessage = new HashMap<>();
+        userMessage.put("role", "user");
+        userMessage.put("content", question);
+        messages.add(userMessage);
+
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", "deepseek-chat");
+        requestBody.put("messages", messages);
+        requestBody.put("max_tokens", 1000);
+        requestBody.put("temperature", 0.7);
+        return MAPPER.writeValueAsBytes(requestBody);
+    }
+
+    @Benchmark
+    public byte[] encodeCodec() {
+        List<ChatMessage> messages = List.of(
+                ChatMessage.system(ChatCompletionCodec.DEFAULT_SYSTEM_PROMPT),
+                ChatMessage.user(question));
+        return codec.encode(ChatCompletionRequest.blocking(messages, 1000, 0.7));
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public String decodeMap() throws Exception {
+        Map<String, Object> body = MAPPER.readValue(response, Map.class);
+        List<Map<String, Object>> choices = (List<Map<String, Object>>) body.get("choices");
+        Map<String, Object> message = (Map<String, Object>) choices.get(0).get("message");
+        return (String) message.get("content");
+    }
+
+    @Benchmark
+    public String decodeCodec() throws Exception {
+        ChatCompletionResponse decoded = codec.decode(response);
+        return decoded.content();
+    }
+}
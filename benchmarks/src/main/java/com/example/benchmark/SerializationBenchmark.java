@@ -0,0 +1,73 @@
+package com.example.benchmark;
+
+import com.example.common.response.ApiResponse;
+import com.example.qa.entity.Answer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// answerCache 在 Redis 中的值编解码（与 RedisConfig 相同的 GenericJackson2JsonRedisSerializer），
+// 以及 QaController 返回 ApiResponse 时的 JSON 编码，按中文、英文答案分别统计
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Param({"zh", "en"})
+    public String language;
+
+    private GenericJackson2JsonRedisSerializer redisSerializer;
+    private Answer answer;
+    private byte[] serializedAnswer;
+    private ApiResponse<Map<String, Object>> apiResponse;
+
+    @Setup
+    public void setUp() {
+        BenchmarkCorpus.Corpus corpus = BenchmarkCorpus.of(language);
+        redisSerializer = new GenericJackson2JsonRedisSerializer();
+        answer = new Answer(corpus.answer(), corpus.questions().get(0), 10001L);
+        serializedAnswer = redisSerializer.serialize(answer);
+
+        // 与 /qa/message 的响应结构一致
+        Map<String, Object> data = new HashMap<>();
+        data.put("answer", corpus.answer());
+        data.put("question", corpus.questions().get(0));
+        data.put("userId", 10001L);
+        data.put("sessionId", "3f9c1b7a2e5d4c8f9a0b1c2d3e4f5a6b");
+        apiResponse = ApiResponse.success(data);
+    }
+
+    @Benchmark
+    public byte[] serializeAnswer() {
+        return redisSerializer.serialize(answer);
+    }
+
+    @Benchmark
+    public Object deserializeAnswer() {
+        return redisSerializer.deserialize(serializedAnswer);
+    }
+
+    @Benchmark
+    public byte[] encodeApiResponse() throws Exception {
+        return MAPPER.writeValueAsBytes(apiResponse);
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.benchmark;
+
+import com.example.qa.llm.ChatDelta;
+import com.example.qa.llm.SseDeltaDecoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// 流式回答解析对比：按字符串切分 + ObjectMapper 解析为 Map（原有方式），
+// 对比 SseDeltaDecoder 直接处理 DataBuffer + 流式 JSON 解析。
+// 一次调用处理一个完整回答（约 300 个增量），网络分块大小由 chunkSize 控制，事件会跨块。
+// 查看分配情况：java -jar benchmarks/target/benchmarks.jar SseDeltaDecoderBenchmark -prof gc
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SseDeltaDecoderBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Param({"64", "512", "4096"})
+    public int chunkSize;
+
+    private List<byte[]> chunks;
+
+    @Setup
+    public void setUp() {
+        byte[] stream = BenchmarkCorpus.deepSeekStream(BenchmarkCorpus.LONG_ANSWER_ZH).getBytes(StandardCharsets.UTF_8);
+        chunks = new ArrayList<>();
+        for (int offset = 0; offset < stream.length; offset += chunkSize) {
+            chunks.add(Arrays.copyOfRange(stream, offset, Math.min(stream.length, offset + chunkSize)));
+        }
+    }
+
+    @Benchmark
+    public String stringAndMap() {
+        StringBuilder answer = new StringBuilder();
+        StringBuilder carry = new StringBuilder();
+        for (byte[] chunk : chunks) {
+            carry.append(new String(chunk, StandardCharsets.UTF_8));
+            int boundary;
+            while ((boundary = carry.indexOf("\n\n")) >= 0) {
+                String event = carry.substring(0, boundary);
+                carry.delete(0, boundary + 2);
+                appendContent(event, answer);
+            }
+        }
+        return answer.toString();
+    }
+
+    @Benchmark
+    public String dataBufferDecoder() {
+        List<DataBuffer> buffers = new ArrayList<>(chunks.size());
+        for (byte[] chunk : chunks) {
+            buffers.add(DefaultDataBufferFactory.sharedInstance.wrap(chunk));
+        }
+        StringBuilder answer = new StringBuilder();
+        SseDeltaDecoder.decode(Flux.fromIterable(buffers))
+                .filter(ChatDelta::hasContent)
+                .doOnNext(delta -> answer.append(delta.content()))
+                .blockLast();
+        return answer.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void appendContent(String event, StringBuilder answer) {
+        if (!event.startsWith("data: ")) {
+            return;
+        }
+        String payload = event.substring("data: ".length());
+        if ("[DONE]".equals(payload)) {
+            return;
+        }
+        try {
+            Map<String, Object> chunk = MAPPER.readValue(payload, Map.class);
+            List<Map<String, Object>> choices = (List<Map<String, Object>>) chunk.get("choices");
+            Map<String, Object> delta = (Map<String, Object>) choices.get(0).get("delta");
+            Object content = delta.get("content");
+            if (content != null) {
+                answer.append(content);
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.loadtest;
+
+import com.example.benchmark.BenchmarkCorpus;
+import com.example.qa.llm.TokenEstimator;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+// 本地 DeepSeek 替身：实现 DeepSeekService 使用的 POST /chat/completions（JSON 与 stream:true 的 SSE），
+// 用于压测时不消耗真实 token。
+//
+// 启动：java -cp benchmarks/target/benchmarks.jar com.example.loadtest.DeepSeekStubServer \
+//         --port=9090 --latency=lognormal:800ms,0.6 --tokens-per-second=40 --error-rate=0.01
+// qa-service 指向替身：--deepseek.api.url=http://localhost:9090，DEEPSEEK_API_KEY 任意填写（至少 10 个字符）
+//
+// 参数：
+//   port               监听端口，默认 9090
+//   latency            首个 token 前的耗时分布，见 LatencyDistribution，默认 lognormal:800ms,0.6
+//   tokens-per-second  生成速度，流式按该速率逐个发送增量，非流式在全部生成后一次返回；0 表示不限速
+//   answer-tokens      每次回答的 token 数（不超过请求的 max_tokens），默认 120
+//   language           回答语料 zh / en，默认 zh
+//   error-rate         直接返回错误状态码的比例，默认 0
+//   error-status       错误状态码，可写多个随机选择，默认 500,429,503
+//   abort-rate         流式回答中途断开连接的比例，默认 0
+@Slf4j
+public final class DeepSeekStubServer {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final LatencyDistribution latency;
+    private final long nanosPerToken;
+    private final int answerTokens;
+    private final List<String> tokens;
+    private final double errorRate;
+    private final int[] errorStatuses;
+    private final double abortRate;
+
+    DeepSeekStubServer(Options options) {
+        this.latency = LatencyDistribution.parse(options.string("latency", "lognormal:800ms,0.6"));
+        double tokensPerSecond = options.decimal("tokens-per-second", 40);
+        this.nanosPerToken = tokensPerSecond > 0 ? (long) (1_000_000_000L / tokensPerSecond) : 0;
+        this.answerTokens = options.integer("answer-tokens", 120);
+        this.tokens = tokenize(BenchmarkCorpus.of(options.string("language", "zh")).answer());
+        this.errorRate = options.decimal("error-rate", 0);
+        String[] statuses = options.string("error-status", "500,429,503").split(",");
+        this.errorStatuses = new int[statuses.length];
+        for (int i = 0; i < statuses.length; i++) {
+            errorStatuses[i] = Integer.parseInt(statuses[i].trim());
+        }
+        this.abortRate = options.decimal("abort-rate", 0);
+    }
+
+    public static void main(String[] args) {
+        Options options = new Options(args);
+        DeepSeekStubServer stub = new DeepSeekStubServer(options);
+        DisposableServer server = HttpServer.create()
+                .port(options.integer("port", 9090))
+                .route(routes -> routes
+                        .post("/chat/completions", stub::handle)
+                        .post("/v1/chat/completions", stub::handle))
+                .bindNow();
+        log.info("DeepSeek 替身已启动: http://localhost:{}/chat/completions", server.port());
+        server.onDispose().block();
+    }
+
+    private Publisher<Void> handle(HttpServerRequest request, HttpServerResponse response) {
+        return request.receive().aggregate().asString(StandardCharsets.UTF_8)
+                .defaultIfEmpty("{}")
+                .flatMap(body -> {
+                    JsonNode json;
+                    try {
+                        json = MAPPER.readTree(body);
+                    } catch (IOException e) {
+                        return sendError(response, 400, "invalid request body");
+                    }
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    Duration firstToken = Duration.ofNanos(latency.sampleNanos(random));
+                    if (random.nextDouble() < errorRate) {
+                        int status = errorStatuses[random.nextInt(errorStatuses.length)];
+                        return Mono.delay(firstToken).then(sendError(response, status, "injected error"));
+                    }
+
+                    int completionTokens = Math.min(answerTokens, json.path("max_tokens").asInt(answerTokens));
+                    int promptTokens = promptTokens(json.path("messages"));
+                    if (json.path("stream").asBoolean(false)) {
+                        boolean abort = random.nextDouble() < abortRate;
+                        return stream(response, firstToken, promptTokens, completionTokens, abort);
+                    }
+                    Duration generation = Duration.ofNanos(nanosPerToken * completionTokens);
+                    return Mono.delay(firstToken.plus(generation))
+                            .then(response.header("Content-Type", "application/json;charset=UTF-8")
+                                    .sendString(Mono.just(completion(promptTokens, completionTokens)), StandardCharsets.UTF_8)
+                                    .then());
+                });
+    }
+
+    private Mono<Void> stream(HttpServerResponse response, Duration firstToken, int promptTokens,
+                              int completionTokens, boolean abort) {
+        int sent = abort ? completionTokens / 2 : completionTokens;
+        Flux<String> deltas = (nanosPerToken > 0
+                ? Flux.interval(firstToken, Duration.ofNanos(nanosPerToken)).take(sent).map(Long::intValue)
+                : Mono.delay(firstToken).thenMany(Flux.range(0, sent)))
+                .map(i -> chunk("{\"content\":\"" + escape(tokens.get(i % tokens.size())) + "\"}", "null"));
+
+        Flux<String> tail = abort
+                ? Flux.error(new IOException("注入的连接中断"))
+                : Flux.just(
+                        chunk("{\"content\":\"\"}", "\"stop\""),
+                        "data: {\"id\":\"" + UUID.randomUUID() + "\",\"object\":\"chat.completion.chunk\","
+                                + "\"model\":\"deepseek-chat\",\"choices\":[]," + usage(promptTokens, completionTokens) + "}\n\n",
+                        "data: [DONE]\n\n");
+
+        return response.header("Content-Type", "text/event-stream;charset=UTF-8")
+                .sendString(Flux.concat(
+                        Flux.just(chunk("{\"role\":\"assistant\",\"content\":\"\"}", "null")),
+                        deltas,
+                        tail), StandardCharsets.UTF_8)
+                .then();
+    }
+
+    private static Mono<Void> sendError(HttpServerResponse response, int status, String message) {
+        return response.status(status)
+                .header("Content-Type", "application/json;charset=UTF-8")
+                .sendString(Mono.just("{\"error\":{\"message\":\"" + message + "\",\"type\":\"stub_error\",\"code\":" + status + "}}"), StandardCharsets.UTF_8)
+                .then();
+    }
+
+    private String completion(int promptTokens, int completionTokens) {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < completionTokens; i++) {
+            content.append(tokens.get(i % tokens.size()));
+        }
+        return "{\"id\":\"" + UUID.randomUUID() + "\",\"object\":\"chat.completion\","
+                + "\"created\":" + System.currentTimeMillis() / 1000 + ",\"model\":\"deepseek-chat\","
+                + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\""
+                + escape(content.toString()) + "\"},\"logprobs\":null,\"finish_reason\":\"stop\"}],"
+                + usage(promptTokens, completionTokens) + "}";
+    }
+
+    private static String chunk(String delta, String finishReason) {
+        return "data: {\"id\":\"stub\",\"object\":\"chat.completion.chunk\",\"model\":\"deepseek-chat\","
+                + "\"choices\":[{\"index\":0,\"delta\":" + delta + ",\"logprobs\":null,\"finish_reason\":" + finishReason + "}]}\n\n";
+    }
+
+    private static String usage(int promptTokens, int completionTokens) {
+        return "\"usage\":{\"prompt_tokens\":" + promptTokens + ",\"completion_tokens\":" + completionTokens
+                + ",\"total_tokens\":" + (promptTokens + completionTokens)
+                + ",\"prompt_cache_hit_tokens\":0,\"prompt_cache_miss_tokens\":" + promptTokens + "}";
+    }
+
+    private static int promptTokens(JsonNode messages) {
+        int total = 0;
+        for (JsonNode message : messages) {
+            total += TokenEstimator.estimateMessage(message.path("content").asText(""));
+        }
+        return total;
+    }
+
+    // 与真实接口的分词粒度相近：每个 token 1~2 个字符
+    private static List<String> tokenize(String answer) {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < answer.length(); ) {
+            int end = Math.min(answer.length(), i + 1 + (i % 2));
+            tokens.add(answer.substring(i, end));
+            i = end;
+        }
+        return tokens;
+    }
+
+    private static String escape(String text) {
+        return new String(JsonStringEncoder.getInstance().quoteAsString(text));
+    }
+}
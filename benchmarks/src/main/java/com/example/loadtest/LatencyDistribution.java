@@ -0,0 +1,52 @@
+package com.example.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.util.random.RandomGenerator;
+
+// 模拟上游耗时的分布，写法：
+//   fixed:300ms
+//   uniform:100ms..800ms
+//   exponential:400ms          （均值）
+//   lognormal:800ms,0.6        （中位数，sigma；长尾，接近真实 LLM 首包耗时）
+interface LatencyDistribution {
+
+    long sampleNanos(RandomGenerator random);
+
+    static LatencyDistribution parse(String spec) {
+        int colon = spec.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("耗时分布格式错误: " + spec);
+        }
+        String type = spec.substring(0, colon);
+        String params = spec.substring(colon + 1);
+        switch (type) {
+            case "fixed": {
+                long nanos = nanos(params);
+                return random -> nanos;
+            }
+            case "uniform": {
+                String[] range = params.split("\\.\\.");
+                long min = nanos(range[0]);
+                long max = nanos(range[1]);
+                return random -> min + (max > min ? random.nextLong(max - min) : 0);
+            }
+            case "exponential": {
+                long mean = nanos(params);
+                return random -> (long) (-Math.log(1 - random.nextDouble()) * mean);
+            }
+            case "lognormal": {
+                String[] parts = params.split(",");
+                double mu = Math.log(nanos(parts[0]));
+                double sigma = Double.parseDouble(parts[1]);
+                return random -> (long) Math.exp(mu + sigma * random.nextGaussian());
+            }
+            default:
+                throw new IllegalArgumentException("不支持的耗时分布: " + type);
+        }
+    }
+
+    private static long nanos(String duration) {
+        return DurationStyle.detectAndParse(duration.trim()).toNanos();
+    }
+}
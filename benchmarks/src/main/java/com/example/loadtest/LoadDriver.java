@@ -0,0 +1,267 @@
+package com.example.loadtest;
+
+import com.example.benchmark.BenchmarkCorpus;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// 端到端压测驱动：经网关按比例回放 /qa/message、/qa/ask、/qa/ask/stream，
+// 统计吞吐量、耗时 p50/p99/p999 以及首字节耗时（TTFB，对流式接口即首个 SSE 数据块）。
+// 耗时和 TTFB 都从计划发送时间算起：闭环模式下即实际发送时间，开环模式下包含请求在客户端排队的时间
+//
+// 启动：java -cp benchmarks/target/benchmarks.jar com.example.loadtest.LoadDriver \
+//         --base-url=http://localhost:8080/api --mix=message:4,ask:4,stream:2 --concurrency=50 --duration=2m
+//
+// 参数：
+//   base-url      网关地址，默认 http://localhost:8080/api（网关去掉 /api 前缀后转发到 qa-service）
+//   mix           各接口的权重，默认 message:4,ask:4,stream:2
+//   concurrency   闭环模式的并发用户数，每个用户收到响应后立即发下一个请求，默认 20
+//   rate          大于 0 时改为开环模式，按固定速率（请求/秒）发送，耗时从计划发送时间算起，避免协同遗漏
+//   max-in-flight 开环模式下同时进行的最大请求数，默认 1000
+//   duration      统计时长，默认 60s
+//   warmup        预热时长，期间的请求不计入统计，默认 10s
+//   language      问题语料 zh / en / mixed，默认 mixed
+//   unique-ratio  在问题后追加随机后缀的比例，用于制造缓存未命中，默认 0.1
+//   timeout       单个请求的超时时间，默认 120s
+@Slf4j
+public final class LoadDriver {
+
+    enum Endpoint {
+        MESSAGE("/qa/message"), ASK("/qa/ask"), STREAM("/qa/ask/stream");
+
+        final String path;
+
+        Endpoint(String path) {
+            this.path = path;
+        }
+    }
+
+    private final HttpClient client;
+    private final Endpoint[] weightedEndpoints;
+    private final List<String> questions;
+    private final double uniqueRatio;
+    private final Duration timeout;
+    private final Map<Endpoint, Stats> stats = new EnumMap<>(Endpoint.class);
+    private final AtomicLong userIds = new AtomicLong(100000);
+    private volatile long measureFrom;
+
+    LoadDriver(Options options, int maxConnections) {
+        this.client = HttpClient.create(ConnectionProvider.builder("load-driver")
+                        .maxConnections(maxConnections)
+                        .pendingAcquireMaxCount(-1)
+                        .build())
+                .baseUrl(options.string("base-url", "http://localhost:8080/api"));
+        this.weightedEndpoints = parseMix(options.string("mix", "message:4,ask:4,stream:2"));
+        this.questions = questions(options.string("language", "mixed"));
+        this.uniqueRatio = options.decimal("unique-ratio", 0.1);
+        this.timeout = options.duration("timeout", "120s");
+        for (Endpoint endpoint : Endpoint.values()) {
+            stats.put(endpoint, new Stats());
+        }
+    }
+
+    public static void main(String[] args) {
+        Options options = new Options(args);
+        int concurrency = options.integer("concurrency", 20);
+        double rate = options.decimal("rate", 0);
+        int maxInFlight = options.integer("max-in-flight", 1000);
+        Duration warmup = options.duration("warmup", "10s");
+        Duration duration = options.duration("duration", "60s");
+
+        LoadDriver driver = new LoadDriver(options, rate > 0 ? maxInFlight : concurrency);
+        long start = System.nanoTime();
+        driver.measureFrom = start + warmup.toNanos();
+        long deadline = driver.measureFrom + duration.toNanos();
+
+        log.info("开始压测：{}，预热 {}，统计 {}", rate > 0 ? "开环 " + rate + " 请求/秒" : "闭环 " + concurrency + " 并发",
+                warmup, duration);
+        Flux<Void> load = rate > 0
+                ? driver.openLoop(rate, maxInFlight, deadline)
+                : driver.closedLoop(concurrency, deadline);
+        load.blockLast();
+        driver.report(Duration.ofNanos(System.nanoTime() - driver.measureFrom));
+    }
+
+    // 闭环：固定数量的虚拟用户循环发送请求
+    private Flux<Void> closedLoop(int concurrency, long deadline) {
+        return Flux.range(0, concurrency)
+                .flatMap(user -> Mono.defer(() -> call(nextEndpoint(), System.nanoTime()))
+                        .repeat(() -> System.nanoTime() < deadline), concurrency);
+    }
+
+    // 开环：按计划时间发送，服务端变慢时请求不会因等待上一个响应而推迟
+    private Flux<Void> openLoop(double rate, int maxInFlight, long deadline) {
+        long intervalNanos = (long) (1_000_000_000L / rate);
+        return Flux.defer(() -> {
+            long origin = System.nanoTime();
+            return Flux.interval(Duration.ofNanos(intervalNanos), Schedulers.parallel())
+                    .onBackpressureDrop(tick -> log.warn("发送速率跟不上计划，已跳过一次请求"))
+                    .takeWhile(tick -> System.nanoTime() < deadline)
+                    .flatMap(tick -> call(nextEndpoint(), origin + (tick + 1) * intervalNanos), maxInFlight);
+        });
+    }
+
+    private Mono<Void> call(Endpoint endpoint, long scheduledAt) {
+        byte[] body = requestBody(endpoint).getBytes(StandardCharsets.UTF_8);
+        long[] firstByteAt = {0};
+        ErrorScanner errorScanner = endpoint == Endpoint.STREAM ? new ErrorScanner() : null;
+        return client.headers(headers -> headers
+                        .set("Content-Type", "application/json")
+                        .set("Content-Length", body.length))
+                .post()
+                .uri(endpoint.path)
+                .send(Mono.fromSupplier(() -> Unpooled.wrappedBuffer(body)))
+                .response((response, content) -> content
+                        .doOnNext(buffer -> {
+                            if (firstByteAt[0] == 0) {
+                                firstByteAt[0] = System.nanoTime();
+                            }
+                            if (errorScanner != null) {
+                                errorScanner.scan(buffer);
+                            }
+                        })
+                        .then(Mono.just(response.status().code())))
+                .next()
+                .timeout(timeout)
+                .doOnNext(status -> {
+                    long now = System.nanoTime();
+                    boolean ok = status >= 200 && status < 300 && (errorScanner == null || !errorScanner.found);
+                    record(endpoint, scheduledAt, now, firstByteAt[0] != 0 ? firstByteAt[0] - scheduledAt : -1, ok);
+                })
+                .onErrorResume(e -> {
+                    record(endpoint, scheduledAt, System.nanoTime(), -1, false);
+                    log.debug("请求失败: {} {}", endpoint.path, e.toString());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private void record(Endpoint endpoint, long scheduledAt, long finishedAt, long ttfbNanos, boolean ok) {
+        if (scheduledAt < measureFrom) {
+            return;
+        }
+        Stats endpointStats = stats.get(endpoint);
+        if (!ok) {
+            endpointStats.errors.increment();
+            return;
+        }
+        endpointStats.latency.recordValue(TimeUnit.NANOSECONDS.toMicros(finishedAt - scheduledAt));
+        if (ttfbNanos >= 0) {
+            endpointStats.ttfb.recordValue(TimeUnit.NANOSECONDS.toMicros(ttfbNanos));
+        }
+    }
+
+    private void report(Duration elapsed) {
+        double seconds = elapsed.toNanos() / 1e9;
+        System.out.printf("%n统计时长 %.1fs%n", seconds);
+        System.out.printf("%-16s %8s %7s %9s | %9s %9s %9s | %9s %9s %9s%n",
+                "接口", "成功", "失败", "吞吐/s", "p50(ms)", "p99(ms)", "p999(ms)", "ttfb50", "ttfb99", "ttfb999");
+        for (Map.Entry<Endpoint, Stats> entry : stats.entrySet()) {
+            Histogram latency = entry.getValue().latency;
+            Histogram ttfb = entry.getValue().ttfb;
+            System.out.printf("%-16s %8d %7d %9.1f | %9.1f %9.1f %9.1f | %9.1f %9.1f %9.1f%n",
+                    entry.getKey().path,
+                    latency.getTotalCount(),
+                    entry.getValue().errors.sum(),
+                    latency.getTotalCount() / seconds,
+                    millis(latency, 50), millis(latency, 99), millis(latency, 99.9),
+                    millis(ttfb, 50), millis(ttfb, 99), millis(ttfb, 99.9));
+        }
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getTotalCount() == 0 ? 0 : histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private Endpoint nextEndpoint() {
+        return weightedEndpoints[ThreadLocalRandom.current().nextInt(weightedEndpoints.length)];
+    }
+
+    private String requestBody(Endpoint endpoint) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String question = questions.get(random.nextInt(questions.size()));
+        if (random.nextDouble() < uniqueRatio) {
+            question = question + " #" + Long.toHexString(random.nextLong());
+        }
+        String escaped = new String(JsonStringEncoder.getInstance().quoteAsString(question));
+        long userId = userIds.incrementAndGet();
+        if (endpoint == Endpoint.MESSAGE) {
+            return "{\"question\":\"" + escaped + "\",\"userId\":" + userId + "}";
+        }
+        return "{\"content\":\"" + escaped + "\",\"userId\":" + userId + "}";
+    }
+
+    // 在流式响应的字节中查找 "error" 字段名，不解码成字符串；匹配进度跨数据块保留
+    private static final class ErrorScanner {
+        private static final byte[] PATTERN = "\"error\"".getBytes(StandardCharsets.US_ASCII);
+
+        private int matched;
+        private boolean found;
+
+        void scan(ByteBuf buffer) {
+            for (int i = buffer.readerIndex(), end = buffer.writerIndex(); i < end && !found; i++) {
+                byte b = buffer.getByte(i);
+                if (b == PATTERN[matched]) {
+                    matched++;
+                } else {
+                    // 模式中只有首尾的引号相同，失配时当前字节是引号就从第一位重新开始
+                    matched = b == PATTERN[0] ? 1 : 0;
+                }
+                if (matched == PATTERN.length) {
+                    found = true;
+                }
+            }
+        }
+    }
+
+    private static Endpoint[] parseMix(String mix) {
+        List<Endpoint> weighted = new ArrayList<>();
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split(":");
+            Endpoint endpoint = Endpoint.valueOf(pair[0].trim().toUpperCase());
+            int weight = pair.length > 1 ? Integer.parseInt(pair[1].trim()) : 1;
+            for (int i = 0; i < weight; i++) {
+                weighted.add(endpoint);
+            }
+        }
+        if (weighted.isEmpty()) {
+            throw new IllegalArgumentException("mix 至少包含一个接口");
+        }
+        return weighted.toArray(new Endpoint[0]);
+    }
+
+    private static List<String> questions(String language) {
+        if ("mixed".equals(language)) {
+            List<String> mixed = new ArrayList<>(BenchmarkCorpus.ZH.questions());
+            mixed.addAll(BenchmarkCorpus.EN.questions());
+            return mixed;
+        }
+        return BenchmarkCorpus.of(language).questions();
+    }
+
+    private static final class Stats {
+        // 单位微秒，自动扩展范围
+        final Histogram latency = new ConcurrentHistogram(3);
+        final Histogram ttfb = new ConcurrentHistogram(3);
+        final LongAdder errors = new LongAdder();
+    }
+}
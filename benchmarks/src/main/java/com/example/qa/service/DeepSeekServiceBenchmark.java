@@ -0,0 +1,152 @@
+package com.example.qa.service;
+
+import com.example.benchmark.BenchmarkCorpus;
+import com.example.qa.llm.ChatCompletionCodec;
+import com.example.qa.llm.ChatMessage;
+import com.example.qa.llm.ConversationContextBuilder;
+import com.example.qa.routing.AhoCorasickContextualClassifier;
+import com.example.qa.routing.ContextualQuestionClassifier;
+import com.example.qa.routing.ContextualRoutingProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// DeepSeekService 热路径上的纯计算部分，按中文、英文语料分别统计。
+// 与 DeepSeekService 同包，直接调用包内可见的方法；每次调用遍历一遍语料中的全部问题
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeepSeekServiceBenchmark {
+
+    @Param({"zh", "en"})
+    public String language;
+
+    // 历史轮数：语料原有的 6 轮放得下预算；60 轮会触发摘要
+    @Param({"6", "60"})
+    public int historyTurns;
+
+    // warm：同一会话反复提问，复用已缓存的滚动摘要；cold：每次调用都是新会话，摘要从头生成
+    @Param({"warm", "cold"})
+    public String conversation;
+
+    private long conversationSeq;
+
+    private List<String> questions;
+    private List<String> context;
+    private List<Map<String, String>> history;
+    private ContextualQuestionClassifier contextualClassifier;
+    private ConversationContextBuilder contextBuilder;
+    private ChatCompletionCodec codec;
+    private byte[] response;
+
+    @Setup
+    public void setUp() {
+        BenchmarkCorpus.Corpus corpus = BenchmarkCorpus.of(language);
+        questions = corpus.questions();
+        context = corpus.context();
+        history = repeatHistory(corpus.history(), historyTurns);
+        // 与 application.yml 中的默认值一致
+        contextualClassifier = new AhoCorasickContextualClassifier(new ContextualRoutingProperties());
+        contextBuilder = new ConversationContextBuilder(3000, 600, 400, 40, 20, 10000, Duration.ofMinutes(30));
+        codec = new ChatCompletionCodec("deepseek-chat");
+        response = BenchmarkCorpus.deepSeekCompletion(corpus.answer()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // needsContextualUnderstanding 在有历史时委托给路由分类器
+    @Benchmark
+    public void needsContextualUnderstanding(Blackhole blackhole) {
+        for (String question : questions) {
+            blackhole.consume(contextualClassifier.needsContext(question));
+        }
+    }
+
+    // 原有实现：小写化后对关键词数组逐个 String.contains，用于对比
+    @Benchmark
+    public void needsContextualUnderstandingContains(Blackhole blackhole) {
+        for (String question : questions) {
+            blackhole.consume(containsScan(question));
+        }
+    }
+
+    @Benchmark
+    public void buildMessages(Blackhole blackhole) {
+        for (String question : questions) {
+            blackhole.consume(DeepSeekService.buildMessages(question, context));
+        }
+    }
+
+    // buildMessagesWithHistory 委托给 ConversationContextBuilder，这里直接调用并带上请求体编码
+    @Benchmark
+    public void buildMessagesWithHistory(Blackhole blackhole) {
+        String conversationId = "cold".equals(conversation) ? language + ":" + conversationSeq++ : language;
+        for (String question : questions) {
+            List<ChatMessage> messages = contextBuilder.build(conversationId, ChatCompletionCodec.HISTORY_SYSTEM_PROMPT,
+                    question, history);
+            blackhole.consume(messages);
+        }
+    }
+
+    // 循环使用语料历史，每轮带上序号，避免各轮内容完全相同
+    private static List<Map<String, String>> repeatHistory(List<Map<String, String>> base, int turns) {
+        List<Map<String, String>> repeated = new ArrayList<>(turns);
+        for (int i = 0; i < turns; i++) {
+            Map<String, String> turn = new HashMap<>(base.get(i % base.size()));
+            if (i >= base.size()) {
+                turn.put("content", "(" + i + ") " + turn.get("content"));
+            }
+            repeated.add(turn);
+        }
+        return repeated;
+    }
+
+    private static final String[] CONTEXTUAL_WORDS = {
+            "它", "这个", "那个", "他", "她", "这", "那", "上面", "前面", "刚才", "之前",
+            "this", "that", "it", "above", "previous", "earlier", "what", "which"
+    };
+    private static final String[] SIMPLE_QUESTIONS = {"什么", "怎么", "如何", "为什么", "when", "how", "why", "what"};
+
+    private static boolean containsScan(String question) {
+        String lowerQuestion = question.toLowerCase().trim();
+        for (String word : CONTEXTUAL_WORDS) {
+            if (lowerQuestion.contains(word)) {
+                return true;
+            }
+        }
+        if (lowerQuestion.length() < 10) {
+            return true;
+        }
+        if (lowerQuestion.endsWith("?") || lowerQuestion.endsWith("？")) {
+            for (String word : SIMPLE_QUESTIONS) {
+                if (lowerQuestion.contains(word)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Benchmark
+    public String extractAnswerFromResponse() throws Exception {
+        return DeepSeekService.extractAnswerFromResponse(codec.decode(response));
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.common.text;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+// 问题规范化：全角转半角（NFKC）、去标点、合并空白、转小写，
+// 使 "如何重置密码？"、"如何重置密码?"、" 如何重置密码 " 得到同一个 key。
+// qa-service 的答案缓存和 knowledge-service 的精确匹配索引共用，两边的规范化结果必须一致
+public final class QuestionNormalizer {
+
+    private QuestionNormalizer() {
+    }
+
+    public static String normalize(String question) {
+        if (question == null || question.isEmpty()) {
+            return "";
+        }
+        String folded = Normalizer.normalize(question, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+
+        StringBuilder result = new StringBuilder(folded.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < folded.length(); ) {
+            int codePoint = folded.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            if (Character.isWhitespace(codePoint) || Character.isSpaceChar(codePoint) || isPunctuation(codePoint)) {
+                pendingSpace = result.length() > 0;
+                continue;
+            }
+            // 只在两个拉丁字母/数字之间保留一个空格，中文之间的空白没有语义
+            if (pendingSpace && isLatinOrDigit(result.codePointBefore(result.length())) && isLatinOrDigit(codePoint)) {
+                result.append(' ');
+            }
+            pendingSpace = false;
+            result.appendCodePoint(codePoint);
+        }
+        return result.toString();
+    }
+
+    private static boolean isPunctuation(int codePoint) {
+        switch (Character.getType(codePoint)) {
+            case Character.CONNECTOR_PUNCTUATION:
+            case Character.DASH_PUNCTUATION:
+            case Character.START_PUNCTUATION:
+            case Character.END_PUNCTUATION:
+            case Character.INITIAL_QUOTE_PUNCTUATION:
+            case Character.FINAL_QUOTE_PUNCTUATION:
+            case Character.OTHER_PUNCTUATION:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isLatinOrDigit(int codePoint) {
+        return codePoint < 0x250 && Character.isLetterOrDigit(codePoint);
+    }
+}
@@ -3,9 +3,12 @@ package com.example.history.controller;
 
 import com.example.common.response.ApiResponse;
 import com.example.history.dto.PageResult;
+import com.example.history.dto.PopularQuestion;
 import com.example.history.entity.QaHistory;
 import com.example.history.service.QaHistoryService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -23,6 +26,15 @@ public class QaHistoryController {
         return ApiResponse.success(null);
     }
 
+    // 批量保存，供 qa-service 的异步写入队列使用
+    @PostMapping("/batch")
+    public ApiResponse<Integer> saveHistoryBatch(@RequestBody List<QaHistory> histories) {
+        if (histories == null || histories.isEmpty()) {
+            return ApiResponse.success(0);
+        }
+        return ApiResponse.success(qaHistoryService.saveHistoryBatch(histories));
+    }
+
     // 修改原有接口，支持分页参数
     @GetMapping("/user/{userId}")
     public ApiResponse<?> getHistoryByUserId(@PathVariable Long userId,
@@ -40,9 +52,23 @@ public class QaHistoryController {
         return ApiResponse.success(pageResult);
     }
 
+    // 热门问题，供 qa-service 启动和定时预热缓存
+    @GetMapping("/popular")
+    public ApiResponse<List<PopularQuestion>> getPopularQuestions(@RequestParam(defaultValue = "100") int limit,
+                                                                  @RequestParam(defaultValue = "7") int days) {
+        return ApiResponse.success(qaHistoryService.getPopularQuestions(limit, days));
+    }
+
     @GetMapping("/{id}")
     public ApiResponse<QaHistory> getHistoryById(@PathVariable Long id) {
         QaHistory qaHistory = qaHistoryService.getHistoryById(id);
         return ApiResponse.success(qaHistory);
     }
-}
\ No newline at end of file
+
+    // 记录违反约束（如 user_id 为空或不存在）时返回 400，qa-service 据此拆批定位问题记录，不再原样重试
+    @ExceptionHandler(DataIntegrityViolationException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ApiResponse<Void> handleDataIntegrityViolation(DataIntegrityViolationException e) {
+        return ApiResponse.error(400, "历史记录数据不合法: " + e.getMostSpecificCause().getMessage());
+    }
+}
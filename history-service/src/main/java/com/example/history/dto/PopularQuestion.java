@@ -0,0 +1,14 @@
+package com.example.history.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// 热门问题：问题原文及其在统计时间窗口内被提问的次数
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PopularQuestion {
+    private String question;
+    private long count;
+}
@@ -1,9 +1,11 @@
 // history-service/src/main/java/com/example/history/mapper/QaHistoryMapper.java
 package com.example.history.mapper;
 
+import com.example.history.dto.PopularQuestion;
 import com.example.history.entity.QaHistory;
 import org.apache.ibatis.annotations.*;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Mapper
@@ -14,6 +16,15 @@ public interface QaHistoryMapper {
     @Options(useGeneratedKeys = true, keyProperty = "id")
     int insert(QaHistory qaHistory);
 
+    // 批量写入：一条多行 INSERT 语句，减少往返次数
+    @Insert("<script>" +
+            "INSERT INTO qa_history(user_id, question, answer, create_time) VALUES " +
+            "<foreach collection='list' item='item' separator=','>" +
+            "(#{item.userId}, #{item.question}, #{item.answer}, COALESCE(#{item.createTime}, NOW()))" +
+            "</foreach>" +
+            "</script>")
+    int insertBatch(@Param("list") List<QaHistory> list);
+
     @Select("SELECT * FROM qa_history WHERE user_id = #{userId} ORDER BY create_time DESC")
     List<QaHistory> findByUserId(Long userId);
 
@@ -29,5 +40,9 @@ public interface QaHistoryMapper {
     // 新增查询总数方法
     @Select("SELECT COUNT(*) FROM qa_history WHERE user_id = #{userId}")
     long countByUserId(@Param("userId") Long userId);
-}
 
+    // 统计时间窗口内提问次数最多的问题，供 qa-service 缓存预热使用
+    @Select("SELECT question, COUNT(*) AS count FROM qa_history WHERE create_time >= #{since} " +
+            "GROUP BY question ORDER BY count DESC LIMIT #{limit}")
+    List<PopularQuestion> findPopularQuestions(@Param("since") LocalDateTime since, @Param("limit") int limit);
+}
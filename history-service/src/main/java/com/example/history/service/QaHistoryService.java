@@ -2,11 +2,15 @@
 package com.example.history.service;
 
 import com.example.history.dto.PageResult;
+import com.example.history.dto.PopularQuestion;
 import com.example.history.entity.QaHistory;
 import com.example.history.mapper.QaHistoryMapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Service
@@ -15,10 +19,29 @@ public class QaHistoryService {
 
     private final QaHistoryMapper qaHistoryMapper;
 
+    // 单条多行 INSERT 的最大行数，避免超过 max_allowed_packet
+    @Value("${history.batch.max-rows:500}")
+    private int batchMaxRows;
+
+    // 热门问题单次返回的最大条数
+    @Value("${history.popular.max-limit:1000}")
+    private int popularMaxLimit;
+
     public void saveHistory(QaHistory qaHistory) {
         qaHistoryMapper.insert(qaHistory);
     }
 
+    // 批量保存，按 batchMaxRows 分段写入，同一事务内完成
+    @Transactional
+    public int saveHistoryBatch(List<QaHistory> histories) {
+        int saved = 0;
+        for (int from = 0; from < histories.size(); from += batchMaxRows) {
+            int to = Math.min(histories.size(), from + batchMaxRows);
+            saved += qaHistoryMapper.insertBatch(histories.subList(from, to));
+        }
+        return saved;
+    }
+
     public List<QaHistory> getHistoryByUserId(Long userId) {
         return qaHistoryMapper.findByUserId(userId);
     }
@@ -40,4 +63,11 @@ public class QaHistoryService {
     public QaHistory getHistoryById(Long id) {
         return qaHistoryMapper.findById(id);
     }
-}
\ No newline at end of file
+
+    // 最近 days 天内提问次数最多的 limit 个问题
+    public List<PopularQuestion> getPopularQuestions(int limit, int days) {
+        int boundedLimit = Math.max(1, Math.min(limit, popularMaxLimit));
+        LocalDateTime since = LocalDateTime.now().minusDays(Math.max(1, days));
+        return qaHistoryMapper.findPopularQuestions(since, boundedLimit);
+    }
+}
@@ -5,6 +5,7 @@ import com.example.common.response.ApiResponse;
 import com.example.knowledge.entity.Knowledge;
 import com.example.knowledge.service.KnowledgeService;
 import com.example.knowledge.dto.PageResult;
+import com.example.knowledge.dto.ScoredKnowledge;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 
@@ -62,10 +63,20 @@ public class KnowledgeController {
         return ApiResponse.success(answer);
     }
 
-    // 搜索知识库
+    // 搜索知识库 - 按相关性从高到低返回前 limit 条，每条带 score
     @GetMapping("/search")
-    public ApiResponse<List<Knowledge>> searchKnowledge(@RequestParam String query) {
-        List<Knowledge> results = knowledgeService.searchKnowledge(query);
+    public ApiResponse<List<ScoredKnowledge>> searchKnowledge(@RequestParam String query,
+                                                              @RequestParam(defaultValue = "10") int limit) {
+        List<ScoredKnowledge> results = knowledgeService.searchKnowledge(query, limit);
+        return ApiResponse.success(results);
+    }
+
+    // 相似问题检索 - 返回问题向量余弦相似度不低于 threshold 的知识，按相似度从高到低，score 为相似度
+    @GetMapping("/similar")
+    public ApiResponse<List<ScoredKnowledge>> findSimilar(@RequestParam String question,
+                                                          @RequestParam(defaultValue = "5") int limit,
+                                                          @RequestParam(required = false) Double threshold) {
+        List<ScoredKnowledge> results = knowledgeService.findSimilar(question, limit, threshold);
         return ApiResponse.success(results);
     }
 
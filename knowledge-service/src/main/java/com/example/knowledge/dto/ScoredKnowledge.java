@@ -0,0 +1,26 @@
+package com.example.knowledge.dto;
+
+import com.example.knowledge.entity.Knowledge;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// 检索结果：知识条目及其相关性得分（索引未就绪、回退到数据库查询时得分为 null）
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScoredKnowledge {
+    private Long id;
+    private String question;
+    private String answer;
+    private LocalDateTime createTime;
+    private LocalDateTime updateTime;
+    private Double score;
+
+    public static ScoredKnowledge of(Knowledge knowledge, Double score) {
+        return new ScoredKnowledge(knowledge.getId(), knowledge.getQuestion(), knowledge.getAnswer(),
+                knowledge.getCreateTime(), knowledge.getUpdateTime(), score);
+    }
+}
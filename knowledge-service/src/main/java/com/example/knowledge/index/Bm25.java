@@ -0,0 +1,15 @@
+package com.example.knowledge.index;
+
+// BM25 参数：k1 控制词频饱和速度，b 控制字段长度归一化的程度
+record Bm25(double k1, double b) {
+
+    // 使用 Lucene 的 idf 形式，保证结果非负
+    double idf(int documentCount, int documentFrequency) {
+        return Math.log(1 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    double saturation(int termFrequency, int fieldLength, double averageFieldLength) {
+        double norm = k1 * (1 - b + b * fieldLength / averageFieldLength);
+        return termFrequency * (k1 + 1) / (termFrequency + norm);
+    }
+}
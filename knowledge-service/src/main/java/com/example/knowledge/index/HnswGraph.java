@@ -0,0 +1,391 @@
+package com.example.knowledge.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+// 内存 HNSW 图（Malkov & Yashunin），用于单位向量的近似最近邻检索，距离为 1 - 余弦相似度。
+// 节点保存稀疏向量；查询向量展开成稠密数组，与节点的点积只需遍历节点的非零维。
+// 与其他问题几乎正交（用词独特）的问题没有有效的近邻，从入口节点很难走到，
+// 因此第 0 层搜索时再以与查询共享最罕见非零维的节点作为额外起点。
+// 支持增量插入；删除只做标记，被删除的节点仍参与导航但不会出现在结果中，全量重建时清理。
+// 修改需要调用方互斥；search 只读，可以并发执行
+final class HnswGraph {
+
+    record Neighbor(long id, double similarity) {
+    }
+
+    private final int dimensions;
+    private final int maxConnections;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random;
+    // 选邻居时展开候选向量用的稠密数组，用完只清零写过的维
+    private final float[] scratch;
+
+    private final Map<Long, Node> nodes = new HashMap<>();
+    // 维 -> 该维非零的未删除节点，用于选取额外的搜索起点
+    private final Map<Integer, List<Node>> postings = new HashMap<>();
+    private Node entryPoint;
+    // 节点序号，用于搜索时按位标记已访问节点；被删除节点的序号不复用
+    private int nextOrdinal;
+
+    HnswGraph(int dimensions, int maxConnections, int efConstruction, long seed) {
+        this.dimensions = dimensions;
+        this.maxConnections = maxConnections;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(maxConnections);
+        this.random = new Random(seed);
+        this.scratch = new float[dimensions];
+    }
+
+    int size() {
+        return nodes.size();
+    }
+
+    void insert(long id, SparseVector vector) {
+        remove(id);
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        Node node = new Node(nextOrdinal++, id, vector, level);
+        nodes.put(id, node);
+        if (entryPoint == null) {
+            entryPoint = node;
+            addPostings(node);
+            return;
+        }
+
+        float[] dense = vector.toDense(dimensions);
+        Node current = entryPoint;
+        for (int layer = entryPoint.level; layer > level; layer--) {
+            current = greedyClosest(dense, current, layer);
+        }
+        List<Node> entries = List.of(current);
+        for (int layer = Math.min(level, entryPoint.level); layer >= 0; layer--) {
+            List<Node> candidates = searchLayer(dense, layer == 0 ? withSeeds(entries, vector, efConstruction) : entries,
+                    efConstruction, layer);
+            int limit = layer == 0 ? maxConnections * 2 : maxConnections;
+            List<Node> selected = selectNeighbors(dense, candidates, limit);
+            node.neighbors.get(layer).addAll(selected);
+            for (Node neighbor : selected) {
+                List<Node> links = neighbor.neighbors.get(layer);
+                links.add(node);
+                if (links.size() > limit) {
+                    dropFarthest(neighbor, links);
+                }
+            }
+            entries = candidates;
+        }
+        if (level > entryPoint.level) {
+            entryPoint = node;
+        }
+        addPostings(node);
+    }
+
+    // 快照只写未删除的节点，指向已删除节点的连接随之丢弃；入口节点已删除时改用层数最高的节点。
+    // 节点按新序号依次写出：id、层数、稀疏向量（下标差值编码），再逐层写邻居序号
+    void writeTo(IndexSnapshot.Writer out) throws IOException {
+        List<Node> live = new ArrayList<>(nodes.values());
+        Map<Node, Integer> ordinals = new HashMap<>();
+        Node entry = entryPoint != null && !entryPoint.deleted ? entryPoint : null;
+        for (Node node : live) {
+            ordinals.put(node, ordinals.size());
+            if (entry == null || node.level > entry.level) {
+                entry = node;
+            }
+        }
+        out.writeVarInt(live.size());
+        out.writeVarInt(entry == null ? 0 : ordinals.get(entry) + 1);
+        for (Node node : live) {
+            out.writeVarLong(node.id);
+            out.writeVarInt(node.level);
+            int[] indices = node.vector.indices();
+            float[] values = node.vector.values();
+            out.writeVarInt(indices.length);
+            for (int i = 0, previous = 0; i < indices.length; previous = indices[i++]) {
+                out.writeVarInt(indices[i] - previous);
+                out.writeFloat(values[i]);
+            }
+            for (List<Node> links : node.neighbors) {
+                List<Node> kept = links.stream().filter(link -> !link.deleted).toList();
+                out.writeVarInt(kept.size());
+                for (Node link : kept) {
+                    out.writeVarInt(ordinals.get(link));
+                }
+            }
+        }
+    }
+
+    static HnswGraph readFrom(IndexSnapshot.Reader in, int dimensions, int maxConnections, int efConstruction, long seed) {
+        HnswGraph graph = new HnswGraph(dimensions, maxConnections, efConstruction, seed);
+        int count = in.readVarInt();
+        int entry = in.readVarInt() - 1;
+        Node[] nodes = new Node[count];
+        int[][][] links = new int[count][][];
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            long id = in.readVarLong();
+            int level = in.readVarInt();
+            int[] indices = new int[in.readVarInt()];
+            float[] values = new float[indices.length];
+            for (int i = 0, previous = 0; i < indices.length; i++) {
+                previous += in.readVarInt();
+                indices[i] = previous;
+                values[i] = in.readFloat();
+            }
+            nodes[ordinal] = new Node(ordinal, id, new SparseVector(indices, values), level);
+            links[ordinal] = new int[level + 1][];
+            for (int layer = 0; layer <= level; layer++) {
+                int[] layerLinks = new int[in.readVarInt()];
+                for (int i = 0; i < layerLinks.length; i++) {
+                    layerLinks[i] = in.readVarInt();
+                }
+                links[ordinal][layer] = layerLinks;
+            }
+        }
+        for (Node node : nodes) {
+            for (int layer = 0; layer <= node.level; layer++) {
+                for (int link : links[node.ordinal][layer]) {
+                    node.neighbors.get(layer).add(nodes[link]);
+                }
+            }
+            graph.nodes.put(node.id, node);
+            graph.addPostings(node);
+        }
+        graph.nextOrdinal = count;
+        graph.entryPoint = entry >= 0 ? nodes[entry] : null;
+        return graph;
+    }
+
+    // 标记删除；入口节点被删除时不替换，它仍可用于导航
+    void remove(long id) {
+        Node node = nodes.remove(id);
+        if (node != null) {
+            node.deleted = true;
+            for (int index : node.vector.indices()) {
+                List<Node> posting = postings.get(index);
+                posting.remove(node);
+                if (posting.isEmpty()) {
+                    postings.remove(index);
+                }
+            }
+        }
+    }
+
+    // 相似度从高到低的最多 k 个未删除节点
+    List<Neighbor> search(SparseVector vector, int k, int ef) {
+        if (entryPoint == null || nodes.isEmpty()) {
+            return List.of();
+        }
+        float[] query = vector.toDense(dimensions);
+        Node current = entryPoint;
+        for (int layer = entryPoint.level; layer > 0; layer--) {
+            current = greedyClosest(query, current, layer);
+        }
+        List<Node> found = searchLayer(query, withSeeds(List.of(current), vector, Math.max(ef, k)), Math.max(ef, k), 0);
+        List<Neighbor> results = new ArrayList<>(k);
+        for (Node node : found) {
+            if (!node.deleted) {
+                results.add(new Neighbor(node.id, node.vector.dot(query)));
+                if (results.size() == k) {
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+    private void addPostings(Node node) {
+        for (int index : node.vector.indices()) {
+            postings.computeIfAbsent(index, k -> new ArrayList<>()).add(node);
+        }
+    }
+
+    // 在 entries 之后追加最多 limit 个与 vector 共享非零维的节点，按维的罕见程度（节点数从少到多）依次选取
+    private List<Node> withSeeds(List<Node> entries, SparseVector vector, int limit) {
+        List<List<Node>> lists = new ArrayList<>();
+        for (int index : vector.indices()) {
+            List<Node> posting = postings.get(index);
+            if (posting != null) {
+                lists.add(posting);
+            }
+        }
+        lists.sort(Comparator.comparingInt(List::size));
+        List<Node> seeded = new ArrayList<>(entries);
+        BitSet seen = new BitSet(nextOrdinal);
+        entries.forEach(entry -> seen.set(entry.ordinal));
+        for (List<Node> posting : lists) {
+            for (Node node : posting) {
+                if (seeded.size() - entries.size() >= limit) {
+                    return seeded;
+                }
+                if (!seen.get(node.ordinal)) {
+                    seen.set(node.ordinal);
+                    seeded.add(node);
+                }
+            }
+        }
+        return seeded;
+    }
+
+    // 上层只做贪心搜索，找到离查询最近的节点作为下一层的入口
+    private Node greedyClosest(float[] query, Node start, int layer) {
+        Node current = start;
+        double best = distance(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (Node neighbor : current.neighbors.get(layer)) {
+                double d = distance(query, neighbor);
+                if (d < best) {
+                    best = d;
+                    current = neighbor;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    // 在一层上做宽度为 ef 的最佳优先搜索，返回按距离从近到远排序的节点
+    private List<Node> searchLayer(float[] query, List<Node> entries, int ef, int layer) {
+        BitSet visited = new BitSet(nextOrdinal);
+        PriorityQueue<Scored> candidates = new PriorityQueue<>(NEAREST_FIRST);
+        PriorityQueue<Scored> results = new PriorityQueue<>(FARTHEST_FIRST);
+        for (Node entry : entries) {
+            visited.set(entry.ordinal);
+            Scored scored = new Scored(entry, distance(query, entry));
+            candidates.add(scored);
+            results.add(scored);
+        }
+        while (results.size() > ef) {
+            results.poll();
+        }
+        while (!candidates.isEmpty()) {
+            Scored closest = candidates.poll();
+            if (closest.distance() > results.peek().distance() && results.size() >= ef) {
+                break;
+            }
+            for (Node neighbor : closest.node().neighbors.get(layer)) {
+                if (visited.get(neighbor.ordinal)) {
+                    continue;
+                }
+                visited.set(neighbor.ordinal);
+                double d = distance(query, neighbor);
+                if (results.size() < ef || d < results.peek().distance()) {
+                    Scored scored = new Scored(neighbor, d);
+                    candidates.add(scored);
+                    results.add(scored);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        List<Scored> sorted = new ArrayList<>(results);
+        sorted.sort(NEAREST_FIRST);
+        List<Node> ordered = new ArrayList<>(sorted.size());
+        for (Scored scored : sorted) {
+            ordered.add(scored.node());
+        }
+        return ordered;
+    }
+
+    // 启发式选邻居：候选按距离从近到远，只保留比已选邻居更接近目标的，使连接分散到不同方向；
+    // 不足 limit 个时用被跳过的候选补齐
+    private List<Node> selectNeighbors(float[] target, List<Node> candidates, int limit) {
+        List<Scored> sorted = new ArrayList<>(candidates.size());
+        for (Node candidate : candidates) {
+            sorted.add(new Scored(candidate, distance(target, candidate)));
+        }
+        sorted.sort(NEAREST_FIRST);
+        List<Node> selected = new ArrayList<>(limit);
+        List<Node> skipped = new ArrayList<>();
+        for (Scored candidate : sorted) {
+            if (selected.size() >= limit) {
+                break;
+            }
+            SparseVector vector = candidate.node().vector;
+            scatter(vector);
+            boolean diverse = true;
+            for (Node chosen : selected) {
+                if (1 - chosen.vector.dot(scratch) < candidate.distance()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            for (int index : vector.indices()) {
+                scratch[index] = 0;
+            }
+            if (diverse) {
+                selected.add(candidate.node());
+            } else {
+                skipped.add(candidate.node());
+            }
+        }
+        for (int i = 0; i < skipped.size() && selected.size() < limit; i++) {
+            selected.add(skipped.get(i));
+        }
+        return selected;
+    }
+
+    private void scatter(SparseVector vector) {
+        int[] indices = vector.indices();
+        float[] values = vector.values();
+        for (int i = 0; i < indices.length; i++) {
+            scratch[indices[i]] = values[i];
+        }
+    }
+
+    // 邻居已满时去掉离它最远的一个；不在这里重新做启发式选择，否则每次插入要多算 O(M²) 次距离
+    private void dropFarthest(Node node, List<Node> links) {
+        scatter(node.vector);
+        int farthest = 0;
+        double max = -1;
+        for (int i = 0; i < links.size(); i++) {
+            double d = distance(scratch, links.get(i));
+            if (d > max) {
+                max = d;
+                farthest = i;
+            }
+        }
+        for (int index : node.vector.indices()) {
+            scratch[index] = 0;
+        }
+        links.remove(farthest);
+    }
+
+    private static double distance(float[] query, Node node) {
+        return 1 - node.vector.dot(query);
+    }
+
+    private record Scored(Node node, double distance) {
+    }
+
+    private static final Comparator<Scored> NEAREST_FIRST = (a, b) -> Double.compare(a.distance, b.distance);
+    private static final Comparator<Scored> FARTHEST_FIRST = (a, b) -> Double.compare(b.distance, a.distance);
+
+    private static final class Node {
+        final int ordinal;
+        final long id;
+        final SparseVector vector;
+        final int level;
+        final List<List<Node>> neighbors;
+        boolean deleted;
+
+        Node(int ordinal, long id, SparseVector vector, int level) {
+            this.ordinal = ordinal;
+            this.id = id;
+            this.vector = vector;
+            this.level = level;
+            this.neighbors = new ArrayList<>(level + 1);
+            for (int i = 0; i <= level; i++) {
+                neighbors.add(new ArrayList<>());
+            }
+        }
+    }
+}
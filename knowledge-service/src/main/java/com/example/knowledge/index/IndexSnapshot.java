@@ -0,0 +1,246 @@
+package com.example.knowledge.index;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// 知识库索引的磁盘快照，重启时直接加载，不必从数据库全量读取、重新分词和构建向量图。
+// 文件格式：头部（魔数、格式版本、向量维度、水位线），各结构依次写入的数据段，末尾 8 字节为前面全部内容的 CRC32。
+// 整数用变长编码，倒排表和向量下标按差值存储。读取时通过 FileChannel.map 映射文件，
+// 倒排项和答案原文只记录在映射中的位置（见 slice），用到时才解码，内容留在操作系统的页缓存中，不复制到堆上。
+// 校验和不一致、格式版本或向量维度不同的快照一律忽略，由调用方回退到全量构建。
+// 写入分两步：先在内存中序列化（调用方持锁期间只做这一步），再写临时文件并原子替换，读到的总是一份完整的快照；
+// 被替换的旧文件仍被映射引用时，其磁盘空间在映射被回收后才释放
+final class IndexSnapshot {
+
+    private static final int MAGIC = 0x4B494458; // "KIDX"
+    private static final int FORMAT_VERSION = 2;
+
+    // 水位线为快照中各条知识 update_time 的最大值，为 null 表示快照中没有知识
+    record Header(int dimensions, LocalDateTime watermark) {
+    }
+
+    @FunctionalInterface
+    interface Body {
+        void writeTo(Writer out) throws IOException;
+    }
+
+    private IndexSnapshot() {
+    }
+
+    static void write(Path path, Header header, Body body) throws IOException {
+        write(path, serialize(header, body));
+    }
+
+    // 不带头部和校验和的编码，用于先编码再按长度写入的数据块
+    static byte[] encode(Body body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        body.writeTo(new Writer(data));
+        data.flush();
+        return bytes.toByteArray();
+    }
+
+    // 序列化出完整的文件内容，包括末尾的校验和
+    static byte[] serialize(Header header, Body body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+        CRC32 crc = new CRC32();
+        DataOutputStream data = new DataOutputStream(new CheckedOutputStream(bytes, crc));
+        Writer out = new Writer(data);
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT_VERSION);
+        data.writeInt(header.dimensions());
+        out.writeTime(header.watermark());
+        body.writeTo(out);
+        data.flush();
+        // 校验和本身不计入校验范围
+        new DataOutputStream(bytes).writeLong(crc.getValue());
+        return bytes.toByteArray();
+    }
+
+    static void write(Path path, byte[] content) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream file = Files.newOutputStream(temp)) {
+                file.write(content);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // 文件不存在或无法使用时返回 null
+    static Reader open(Path path, int dimensions) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 20 || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        int contentLength = buffer.capacity() - Long.BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(0, contentLength));
+        if (crc.getValue() != buffer.getLong(contentLength)) {
+            throw new IOException("快照校验和不一致: " + path);
+        }
+        ByteBuffer content = buffer.slice(0, contentLength);
+        if (content.getInt() != MAGIC || content.getInt() != FORMAT_VERSION || content.getInt() != dimensions) {
+            return null;
+        }
+        Reader in = new Reader(content);
+        in.header = new Header(dimensions, in.readTime());
+        return in;
+    }
+
+    static final class Writer {
+
+        private final DataOutputStream data;
+
+        private Writer(DataOutputStream data) {
+            this.data = data;
+        }
+
+        void writeVarInt(int value) throws IOException {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                data.writeByte((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data.writeByte((int) value);
+        }
+
+        void writeFloat(float value) throws IOException {
+            data.writeFloat(value);
+        }
+
+        // null 写为 0，否则写 UTF-8 字节数 + 1，再写内容
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length + 1);
+            data.write(bytes);
+        }
+
+        // 写长度再写内容，读取时用 Reader.slice 直接引用这一段
+        void writeBytes(ByteBuffer bytes) throws IOException {
+            ByteBuffer source = bytes.duplicate();
+            writeVarInt(source.remaining());
+            byte[] chunk = new byte[Math.min(source.remaining(), 8192)];
+            while (source.hasRemaining()) {
+                int length = Math.min(source.remaining(), chunk.length);
+                source.get(chunk, 0, length);
+                data.write(chunk, 0, length);
+            }
+        }
+
+        void writeTime(LocalDateTime value) throws IOException {
+            if (value == null) {
+                data.writeByte(0);
+                return;
+            }
+            data.writeByte(1);
+            data.writeLong(value.toEpochSecond(ZoneOffset.UTC));
+            writeVarInt(value.getNano());
+        }
+    }
+
+    static final class Reader {
+
+        private final ByteBuffer buffer;
+        private Header header;
+
+        private Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        // 从头读取 slice 返回的一段，不影响其他读取者的位置
+        static Reader over(ByteBuffer bytes) {
+            return new Reader(bytes.duplicate());
+        }
+
+        Header header() {
+            return header;
+        }
+
+        int readVarInt() {
+            return (int) readVarLong();
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        float readFloat() {
+            return buffer.getFloat();
+        }
+
+        String readString() {
+            int length = readVarInt();
+            if (length == 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length - 1];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        // writeBytes 写入的一段在映射中的只读视图，不复制内容
+        ByteBuffer slice() {
+            return slice(readVarInt());
+        }
+
+        // writeString 写入的字符串的 UTF-8 编码视图，null 仍返回 null
+        ByteBuffer sliceString() {
+            int length = readVarInt();
+            return length == 0 ? null : slice(length - 1);
+        }
+
+        private ByteBuffer slice(int length) {
+            ByteBuffer slice = buffer.slice(buffer.position(), length).asReadOnlyBuffer();
+            buffer.position(buffer.position() + length);
+            return slice;
+        }
+
+        LocalDateTime readTime() {
+            if (buffer.get() == 0) {
+                return null;
+            }
+            long seconds = buffer.getLong();
+            return LocalDateTime.ofEpochSecond(seconds, readVarInt(), ZoneOffset.UTC);
+        }
+    }
+}
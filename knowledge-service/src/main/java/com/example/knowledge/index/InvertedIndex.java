@@ -0,0 +1,324 @@
+package com.example.knowledge.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// 单个字段的倒排表：词 -> (知识条目 id -> 词频)，同时记录每条的字段长度供 BM25 使用。
+// 后缀匹配通过反转词的词典按范围查找；包含匹配需要扫描整个词典，只在 scanInfix 为 true 的字段上进行。
+// 从快照恢复时倒排项不解码，直接引用映射中的编码（见 Postings）；字段长度表和词典仍加载到堆上。
+// 非线程安全，由 KnowledgeIndex 加锁访问
+final class InvertedIndex {
+
+    // 候选数不超过该值时不再继续求交集，直接逐条校验
+    private static final int VERIFY_THRESHOLD = 32;
+    // 计算得分时，前缀、后缀、包含匹配的查询词展开后最多计算的倒排项条数（各索引词文档频率之和），
+    // 与查询词最接近的索引词优先；与查询词相同的索引词总是计算
+    private static final int MAX_EXPANDED_POSTINGS = 4096;
+
+    private final TreeMap<String, Postings> postings = new TreeMap<>();
+    // 反转后的词 -> 原词，用于后缀匹配
+    private final TreeMap<String, String> reversedTerms = new TreeMap<>();
+    private final boolean scanInfix;
+    private final Map<Long, Integer> lengths = new HashMap<>();
+    private long totalLength;
+
+    InvertedIndex() {
+        this(true);
+    }
+
+    // scanInfix 为 false 时，包含匹配只按前缀和后缀查找，词中间出现的查询词不计入
+    InvertedIndex(boolean scanInfix) {
+        this.scanInfix = scanInfix;
+    }
+
+    void add(long id, String text) {
+        int[] length = {0};
+        KnowledgeTokenizer.forEachTerm(text, term -> {
+            Postings frequencies = postings.get(term);
+            if (frequencies == null) {
+                frequencies = new Postings();
+                postings.put(term, frequencies);
+                reversedTerms.put(reverse(term), term);
+            }
+            frequencies.mutable().merge(id, 1, Integer::sum);
+            length[0]++;
+        });
+        lengths.put(id, length[0]);
+        totalLength += length[0];
+    }
+
+    void remove(long id, String text) {
+        KnowledgeTokenizer.forEachTerm(text, term -> {
+            Postings frequencies = postings.get(term);
+            if (frequencies != null && frequencies.mutable().remove(id) != null && frequencies.size() == 0) {
+                postings.remove(term);
+                reversedTerms.remove(reverse(term));
+            }
+        });
+        Integer length = lengths.remove(id);
+        if (length != null) {
+            totalLength -= length;
+        }
+    }
+
+    int termCount() {
+        return postings.size();
+    }
+
+    // 快照格式：字段长度表，然后按词典序写每个词、倒排项条数和倒排项的编码（带长度，id 升序差值编码）
+    void writeTo(IndexSnapshot.Writer out) throws IOException {
+        writeSorted(out, lengths);
+        out.writeVarInt(postings.size());
+        for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+            out.writeString(entry.getKey());
+            entry.getValue().writeTo(out);
+        }
+    }
+
+    static InvertedIndex readFrom(IndexSnapshot.Reader in, boolean scanInfix) {
+        InvertedIndex index = new InvertedIndex(scanInfix);
+        readSorted(in, index.lengths);
+        for (int length : index.lengths.values()) {
+            index.totalLength += length;
+        }
+        for (int i = 0, termCount = in.readVarInt(); i < termCount; i++) {
+            String term = in.readString();
+            int count = in.readVarInt();
+            index.postings.put(term, new Postings(count, in.slice()));
+            index.reversedTerms.put(reverse(term), term);
+        }
+        return index;
+    }
+
+    private static void writeSorted(IndexSnapshot.Writer out, Map<Long, Integer> values) throws IOException {
+        out.writeVarInt(values.size());
+        writeEntries(out, values);
+    }
+
+    private static void writeEntries(IndexSnapshot.Writer out, Map<Long, Integer> values) throws IOException {
+        long[] ids = values.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        long previous = 0;
+        for (long id : ids) {
+            out.writeVarLong(id - previous);
+            out.writeVarInt(values.get(id));
+            previous = id;
+        }
+    }
+
+    private static Map<Long, Integer> readSorted(IndexSnapshot.Reader in, Map<Long, Integer> values) {
+        long id = 0;
+        for (int i = 0, count = in.readVarInt(); i < count; i++) {
+            id += in.readVarLong();
+            values.put(id, in.readVarInt());
+        }
+        return values;
+    }
+
+    // 可能包含查询串的条目 id，结果还需要按原文校验；返回 null 表示查询中没有可用的词，无法缩小范围
+    Set<Long> candidates(List<KnowledgeTokenizer.QueryTerm> terms) {
+        if (terms.isEmpty()) {
+            return null;
+        }
+        // 先用代价低的精确词求交集，需要扫描词典的放在最后
+        List<KnowledgeTokenizer.QueryTerm> ordered = terms.stream()
+                .distinct()
+                .sorted(Comparator.comparing(KnowledgeTokenizer.QueryTerm::match))
+                .toList();
+        Set<Long> result = null;
+        for (KnowledgeTokenizer.QueryTerm term : ordered) {
+            Collection<Long> matched = matchingIds(term);
+            if (result == null) {
+                result = new HashSet<>(matched);
+            } else {
+                result.retainAll(matched instanceof Set<Long> set ? set : new HashSet<>(matched));
+            }
+            if (result.size() <= VERIFY_THRESHOLD) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    // 按 BM25 计算本字段的得分，乘以 boost 后累加到 scores。
+    // 一个查询词展开为多个索引词时取其中得分最高的一个，避免展开越多得分越高；
+    // 展开得到的更长的词按 查询词长度 / 索引词长度 打折，精确出现的词得分高于只是包含它的词
+    void score(List<KnowledgeTokenizer.QueryTerm> terms, int documentCount, Bm25 bm25, double boost,
+               Map<Long, Double> scores) {
+        if (lengths.isEmpty()) {
+            return;
+        }
+        double averageLength = Math.max(1.0, (double) totalLength / lengths.size());
+        for (KnowledgeTokenizer.QueryTerm term : new HashSet<>(terms)) {
+            Map<Long, Double> best = new HashMap<>();
+            List<Map.Entry<String, Postings>> expanded = expand(term);
+            if (expanded.size() > 1) {
+                // 越接近查询词越靠前（精确词最先），同样接近时文档频率低的在前
+                expanded.sort(Comparator.<Map.Entry<String, Postings>>comparingInt(entry -> entry.getKey().length())
+                        .thenComparingInt(entry -> entry.getValue().size()));
+            }
+            int budget = MAX_EXPANDED_POSTINGS;
+            for (Map.Entry<String, Postings> expansion : expanded) {
+                Postings frequencies = expansion.getValue();
+                boolean exact = expansion.getKey().length() == term.text().length();
+                if (!exact && frequencies.size() > budget) {
+                    continue;
+                }
+                budget -= frequencies.size();
+                double closeness = (double) term.text().length() / expansion.getKey().length();
+                double idf = bm25.idf(documentCount, frequencies.size());
+                frequencies.forEach((id, frequency) -> {
+                    double weight = closeness * idf * bm25.saturation(frequency, lengths.get(id), averageLength);
+                    best.merge(id, weight, Math::max);
+                });
+                if (budget <= 0) {
+                    break;
+                }
+            }
+            best.forEach((id, weight) -> scores.merge(id, boost * weight, Double::sum));
+        }
+    }
+
+    private Collection<Long> matchingIds(KnowledgeTokenizer.QueryTerm term) {
+        List<Map.Entry<String, Postings>> expanded = expand(term);
+        if (expanded.size() == 1) {
+            return expanded.get(0).getValue().ids();
+        }
+        Set<Long> ids = new HashSet<>();
+        for (Map.Entry<String, Postings> expansion : expanded) {
+            expansion.getValue().forEach((id, frequency) -> ids.add(id));
+        }
+        return ids;
+    }
+
+    // 查询词对应的索引词及其倒排项，返回可修改的列表
+    private List<Map.Entry<String, Postings>> expand(KnowledgeTokenizer.QueryTerm term) {
+        String text = term.text();
+        switch (term.match()) {
+            case EXACT -> {
+                Postings frequencies = postings.get(text);
+                return frequencies != null ? new ArrayList<>(List.of(Map.entry(text, frequencies))) : new ArrayList<>();
+            }
+            case PREFIX -> {
+                return withPrefix(text);
+            }
+            case SUFFIX -> {
+                return withSuffix(text);
+            }
+            default -> {
+                // 单个汉字只会出现在单字词和二元组的开头或结尾，前缀加后缀就是全部包含它的词
+                if (!scanInfix || (text.length() == 1 && KnowledgeTokenizer.isCjk(text.charAt(0)))) {
+                    List<Map.Entry<String, Postings>> expanded = withPrefix(text);
+                    for (Map.Entry<String, Postings> entry : withSuffix(text)) {
+                        if (!entry.getKey().startsWith(text)) {
+                            expanded.add(entry);
+                        }
+                    }
+                    return expanded;
+                }
+                List<Map.Entry<String, Postings>> expanded = new ArrayList<>();
+                for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+                    if (entry.getKey().contains(text)) {
+                        expanded.add(entry);
+                    }
+                }
+                return expanded;
+            }
+        }
+    }
+
+    private List<Map.Entry<String, Postings>> withPrefix(String text) {
+        return new ArrayList<>(postings.subMap(text, true, text + Character.MAX_VALUE, true).entrySet());
+    }
+
+    private List<Map.Entry<String, Postings>> withSuffix(String text) {
+        String reversed = reverse(text);
+        List<Map.Entry<String, Postings>> expanded = new ArrayList<>();
+        for (String key : reversedTerms.subMap(reversed, true, reversed + Character.MAX_VALUE, true).values()) {
+            expanded.add(Map.entry(key, postings.get(key)));
+        }
+        return expanded;
+    }
+
+    private static String reverse(String term) {
+        return new StringBuilder(term).reverse().toString();
+    }
+
+    @FunctionalInterface
+    private interface PostingConsumer {
+        void accept(long id, int frequency);
+    }
+
+    // 一个词的倒排项（知识条目 id -> 词频）。从快照恢复的倒排项只引用映射中的编码，遍历时逐条解码，
+    // 第一次修改时才解码到 HashMap；未修改的倒排项再次写快照时原样复制编码
+    private static final class Postings {
+
+        private Map<Long, Integer> frequencies;
+        private ByteBuffer encoded;
+        private final int encodedCount;
+
+        Postings() {
+            this.frequencies = new HashMap<>();
+            this.encodedCount = 0;
+        }
+
+        Postings(int count, ByteBuffer encoded) {
+            this.encoded = encoded;
+            this.encodedCount = count;
+        }
+
+        int size() {
+            return frequencies != null ? frequencies.size() : encodedCount;
+        }
+
+        void forEach(PostingConsumer action) {
+            if (frequencies != null) {
+                frequencies.forEach(action::accept);
+                return;
+            }
+            IndexSnapshot.Reader in = IndexSnapshot.Reader.over(encoded);
+            long id = 0;
+            for (int i = 0; i < encodedCount; i++) {
+                id += in.readVarLong();
+                action.accept(id, in.readVarInt());
+            }
+        }
+
+        Set<Long> ids() {
+            if (frequencies != null) {
+                return frequencies.keySet();
+            }
+            Set<Long> ids = new HashSet<>(encodedCount * 4 / 3 + 1);
+            forEach((id, frequency) -> ids.add(id));
+            return ids;
+        }
+
+        Map<Long, Integer> mutable() {
+            if (frequencies == null) {
+                Map<Long, Integer> decoded = new HashMap<>(encodedCount * 4 / 3 + 1);
+                forEach(decoded::put);
+                frequencies = decoded;
+                encoded = null;
+            }
+            return frequencies;
+        }
+
+        void writeTo(IndexSnapshot.Writer out) throws IOException {
+            if (frequencies == null) {
+                out.writeVarInt(encodedCount);
+                out.writeBytes(encoded);
+                return;
+            }
+            out.writeVarInt(frequencies.size());
+            out.writeBytes(ByteBuffer.wrap(IndexSnapshot.encode(data -> writeEntries(data, frequencies))));
+        }
+    }
+}
@@ -0,0 +1,621 @@
+package com.example.knowledge.index;
+
+import com.example.common.text.QuestionNormalizer;
+import com.example.knowledge.dto.ScoredKnowledge;
+import com.example.knowledge.entity.Knowledge;
+import com.example.knowledge.mapper.KnowledgeMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// 知识库内存倒排索引，替代 LIKE '%q%' 全表扫描。
+// 启动时全量构建，增删改时由 KnowledgeService 增量维护。其他实例的修改通过定期追平同步：
+// 按 update_time 读取水位线之后修改的知识、按全部 id 找出已删除的知识；全量重建间隔较长，用于重新计算 idf 和清理向量图。
+// 全量构建后和停机时写入磁盘快照（见 IndexSnapshot），重启时加载快照，再用同样的方式追平，不必全量读取每条知识的答案；
+// 加载时答案原文和倒排项不复制到堆上，仍需逐条读取知识条目、词典和向量图，耗时与知识条数成正比。
+// 检索按 BM25 相关性排序取前 K 条；模糊匹配用索引缩小候选范围后按原文校验，与 LIKE 的子串语义（不区分大小写）一致。
+// 相似问题检索使用问题的本地 n-gram 向量和 HNSW 图，见 NgramEmbedder、HnswGraph。
+// 精确匹配按 QuestionNormalizer 规范化后的问题查哈希表
+@Slf4j
+@Component
+public class KnowledgeIndex {
+
+    // 得分相同时 id 大（较新）的条目排在前面
+    private static final Comparator<Map.Entry<Long, Double>> BY_SCORE = Map.Entry.<Long, Double>comparingByValue()
+            .thenComparing(Map.Entry.comparingByKey());
+
+    private final KnowledgeMapper knowledgeMapper;
+    private final boolean enabled;
+    private final Duration refreshInterval;
+    private final Duration rebuildInterval;
+    private final Bm25 bm25;
+    private final double questionBoost;
+    private final double answerBoost;
+    private final int dimensions;
+    private final int maxConnections;
+    private final int efConstruction;
+    private final int efSearch;
+    private final boolean snapshotEnabled;
+    private final Path snapshotPath;
+    private final Duration catchUpOverlap;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Segment segment;
+    // 全量重建期间发生的修改，重建完成后重放；不在重建时为 null
+    private List<Runnable> pendingMutations;
+    private volatile boolean ready;
+
+    private ScheduledExecutorService refresher;
+
+    public KnowledgeIndex(KnowledgeMapper knowledgeMapper,
+                          @Value("${knowledge.index.enabled:true}") boolean enabled,
+                          @Value("${knowledge.index.refresh-interval:10s}") Duration refreshInterval,
+                          @Value("${knowledge.index.rebuild-interval:24h}") Duration rebuildInterval,
+                          @Value("${knowledge.search.bm25.k1:1.2}") double k1,
+                          @Value("${knowledge.search.bm25.b:0.75}") double b,
+                          @Value("${knowledge.search.boost.question:2.0}") double questionBoost,
+                          @Value("${knowledge.search.boost.answer:1.0}") double answerBoost,
+                          @Value("${knowledge.similar.dimensions:4096}") int dimensions,
+                          @Value("${knowledge.similar.hnsw.m:16}") int maxConnections,
+                          @Value("${knowledge.similar.hnsw.ef-construction:100}") int efConstruction,
+                          @Value("${knowledge.similar.hnsw.ef-search:64}") int efSearch,
+                          @Value("${knowledge.index.snapshot.enabled:true}") boolean snapshotEnabled,
+                          @Value("${knowledge.index.snapshot.path:data/knowledge-index.snapshot}") Path snapshotPath,
+                          @Value("${knowledge.index.snapshot.catch-up-overlap:5s}") Duration catchUpOverlap) {
+        this.knowledgeMapper = knowledgeMapper;
+        this.enabled = enabled;
+        this.refreshInterval = refreshInterval;
+        this.rebuildInterval = rebuildInterval;
+        this.bm25 = new Bm25(k1, b);
+        this.questionBoost = questionBoost;
+        this.answerBoost = answerBoost;
+        this.dimensions = dimensions;
+        this.maxConnections = maxConnections;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.snapshotEnabled = snapshotEnabled;
+        this.snapshotPath = snapshotPath;
+        this.catchUpOverlap = catchUpOverlap;
+        this.segment = newSegment();
+    }
+
+    private Segment newSegment() {
+        return new Segment(new InvertedIndex(true), new InvertedIndex(false), new NgramEmbedder(dimensions),
+                new HnswGraph(dimensions, maxConnections, efConstruction, System.nanoTime()));
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("知识库内存索引未启用，检索直接查询数据库");
+            return;
+        }
+        if (!snapshotEnabled || !restore()) {
+            rebuild();
+        }
+        // 追平和全量重建在同一个线程上执行，不会同时进行
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "knowledge-index-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        schedule(this::catchUp, refreshInterval);
+        schedule(this::rebuild, rebuildInterval);
+    }
+
+    private void schedule(Runnable task, Duration interval) {
+        if (!interval.isZero() && !interval.isNegative()) {
+            long millis = interval.toMillis();
+            refresher.scheduleWithFixedDelay(task, millis, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // 停机时写一次快照，重启后只需追平停机期间的修改
+    @PreDestroy
+    public void shutdown() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+        if (ready) {
+            writeSnapshot();
+        }
+    }
+
+    // 索引构建完成前返回 false，调用方应回退到数据库查询
+    public boolean isReady() {
+        return ready;
+    }
+
+    // 从数据库全量加载并替换当前索引；失败时保留旧索引
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            pendingMutations = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long start = System.nanoTime();
+        Segment rebuilt = newSegment();
+        try {
+            rebuilt.addAll(knowledgeMapper.findAll());
+        } catch (Exception e) {
+            log.error("构建知识库索引失败: {}", e.getMessage(), e);
+            lock.writeLock().lock();
+            try {
+                pendingMutations = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            segment = rebuilt;
+            pendingMutations.forEach(Runnable::run);
+            pendingMutations = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("知识库索引构建完成: {} 条, 问题词 {} 个, 答案词 {} 个, 耗时 {} ms",
+                rebuilt.size(), rebuilt.questions.termCount(), rebuilt.answers.termCount(),
+                (System.nanoTime() - start) / 1_000_000);
+        log.info("知识库相似问题向量图: {} 个节点, 精确匹配问题 {} 个",
+                rebuilt.vectors.size(), rebuilt.exact.size());
+        writeSnapshot();
+    }
+
+    // 加载磁盘快照并从数据库追平；快照不存在、不可用或追平失败时返回 false，由调用方全量构建
+    private boolean restore() {
+        long start = System.nanoTime();
+        Segment restored;
+        LocalDateTime watermark;
+        try {
+            IndexSnapshot.Reader in = IndexSnapshot.open(snapshotPath, dimensions);
+            if (in == null) {
+                log.info("没有可用的知识库索引快照: {}", snapshotPath.toAbsolutePath());
+                return false;
+            }
+            watermark = in.header().watermark();
+            restored = Segment.readFrom(in, dimensions, maxConnections, efConstruction);
+        } catch (Exception e) {
+            log.warn("加载知识库索引快照失败，改为全量构建: {}", e.getMessage());
+            return false;
+        }
+        long loaded = System.nanoTime();
+
+        Changes changes;
+        int applied;
+        try {
+            changes = loadChanges(restored.documents.keySet(), watermark);
+            applied = changes.applyTo(restored);
+        } catch (Exception e) {
+            log.warn("知识库索引快照追平失败，改为全量构建: {}", e.getMessage());
+            return false;
+        }
+
+        lock.writeLock().lock();
+        try {
+            segment = restored;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("从快照恢复知识库索引: {} 条, 快照水位线 {}, 追平修改 {} 条、删除 {} 条, 加载 {} ms, 追平 {} ms",
+                restored.size(), watermark, applied - changes.removed().size(), changes.removed().size(),
+                (loaded - start) / 1_000_000, (System.nanoTime() - loaded) / 1_000_000);
+        if (applied > 0) {
+            writeSnapshot();
+        }
+        return true;
+    }
+
+    // 增量同步其他实例的修改：读取当前索引水位线之后修改的知识，持写锁应用差异；
+    // 应用后条数与数据库 COUNT(*) 不一致时说明有知识被删除，再读取全部 id 找出已删除的知识。
+    // 数据库查询不持锁；本实例在查询期间写入的更新的数据不会被旧数据覆盖
+    public void catchUp() {
+        if (!ready) {
+            rebuild();
+            return;
+        }
+        long start = System.nanoTime();
+        LocalDateTime watermark;
+        lock.readLock().lock();
+        try {
+            watermark = segment.watermark();
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        int updated;
+        int deleted = 0;
+        try {
+            List<Knowledge> changed = watermark == null
+                    ? knowledgeMapper.findAll()
+                    : knowledgeMapper.findUpdatedSince(watermark.minus(catchUpOverlap));
+            long total = knowledgeMapper.countAll();
+            updated = apply(new Changes(changed, List.of()));
+            List<Long> knownIds;
+            lock.readLock().lock();
+            try {
+                knownIds = segment.size() != total ? new ArrayList<>(segment.documents.keySet()) : null;
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (knownIds != null) {
+                Set<Long> ids = new HashSet<>(knowledgeMapper.findAllIds());
+                deleted = apply(new Changes(List.of(), knownIds.stream().filter(id -> !ids.contains(id)).toList()));
+            }
+        } catch (Exception e) {
+            log.warn("追平知识库索引失败，下次再试: {}", e.getMessage());
+            return;
+        }
+        if (updated > 0 || deleted > 0) {
+            log.info("知识库索引已追平: 修改 {} 条, 删除 {} 条, 耗时 {} ms",
+                    updated, deleted, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    private int apply(Changes changes) {
+        lock.writeLock().lock();
+        try {
+            return changes.applyTo(segment);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 从数据库读取 watermark（减去重叠时间）之后修改过的知识，以及 knownIds 中已被删除的 id；
+    // watermark 为 null 时读取全部知识
+    private Changes loadChanges(Collection<Long> knownIds, LocalDateTime watermark) {
+        // 先取全部 id 再取修改过的知识：两次查询之间新增的知识也会被读到
+        Set<Long> ids = new HashSet<>(knowledgeMapper.findAllIds());
+        List<Knowledge> changed = watermark == null
+                ? knowledgeMapper.findAll()
+                : knowledgeMapper.findUpdatedSince(watermark.minus(catchUpOverlap));
+        List<Long> removed = knownIds.stream().filter(id -> !ids.contains(id)).toList();
+        return new Changes(changed, removed);
+    }
+
+    // 持有读锁把当前索引序列化到内存，释放锁后再写文件，增删改只等待序列化；失败只记录日志，下次全量构建后再写
+    private void writeSnapshot() {
+        if (!snapshotEnabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        byte[] content;
+        lock.readLock().lock();
+        try {
+            Segment current = segment;
+            content = IndexSnapshot.serialize(new IndexSnapshot.Header(dimensions, current.watermark()), current::writeTo);
+        } catch (IOException e) {
+            log.warn("序列化知识库索引快照失败: {}", e.getMessage());
+            return;
+        } finally {
+            lock.readLock().unlock();
+        }
+        long serialized = System.nanoTime();
+        try {
+            IndexSnapshot.write(snapshotPath, content);
+        } catch (IOException e) {
+            log.warn("写入知识库索引快照失败: {}", e.getMessage());
+            return;
+        }
+        log.info("知识库索引快照已写入: {}, {} 字节, 序列化 {} ms, 写文件 {} ms", snapshotPath.toAbsolutePath(), content.length,
+                (serialized - start) / 1_000_000, (System.nanoTime() - serialized) / 1_000_000);
+    }
+
+    // 新增或更新一条知识
+    public void put(Knowledge knowledge) {
+        if (knowledge == null || knowledge.getId() == null) {
+            return;
+        }
+        mutate(current -> current.add(knowledge));
+    }
+
+    public void remove(Long id) {
+        if (id == null) {
+            return;
+        }
+        mutate(current -> current.remove(id));
+    }
+
+    private void mutate(Consumer<Segment> mutation) {
+        lock.writeLock().lock();
+        try {
+            mutation.accept(segment);
+            if (pendingMutations != null) {
+                // 重建读取的数据可能早于这次修改，重建完成后在新索引上再执行一次
+                pendingMutations.add(() -> mutation.accept(segment));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // BM25 相关性检索：问题、答案两个字段分别计算得分并按权重相加，
+    // 用容量为 limit 的小顶堆选出得分最高的 limit 条，按得分从高到低返回
+    public List<ScoredKnowledge> rank(String query, int limit) {
+        List<KnowledgeTokenizer.QueryTerm> terms = KnowledgeTokenizer.queryTerms(query);
+        if (terms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            Map<Long, Double> scores = new HashMap<>();
+            int documentCount = segment.size();
+            segment.questions.score(terms, documentCount, bm25, questionBoost, scores);
+            segment.answers.score(terms, documentCount, bm25, answerBoost, scores);
+
+            PriorityQueue<Map.Entry<Long, Double>> heap = new PriorityQueue<>(Math.min(limit, scores.size()) + 1, BY_SCORE);
+            for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+                if (heap.size() < limit) {
+                    heap.add(entry);
+                } else if (BY_SCORE.compare(entry, heap.peek()) > 0) {
+                    heap.poll();
+                    heap.add(entry);
+                }
+            }
+            List<ScoredKnowledge> results = new ArrayList<>(heap.size());
+            while (!heap.isEmpty()) {
+                Map.Entry<Long, Double> entry = heap.poll();
+                results.add(ScoredKnowledge.of(segment.documents.get(entry.getKey()), entry.getValue()));
+            }
+            Collections.reverse(results);
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 规范化后问题相同的知识，有多条时取 id 最小的一条
+    public Knowledge findByExactQuestion(String question) {
+        String key = QuestionNormalizer.normalize(question);
+        if (key.isEmpty()) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            TreeSet<Long> ids = segment.exact.get(key);
+            return ids == null ? null : segment.documents.get(ids.first());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 与 question 向量余弦相似度不低于 threshold 的问题，按相似度从高到低最多 limit 条
+    public List<ScoredKnowledge> findSimilar(String question, int limit, double threshold) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            SparseVector vector = segment.embedder.embed(question);
+            if (vector == null) {
+                return List.of();
+            }
+            List<ScoredKnowledge> results = new ArrayList<>(limit);
+            for (HnswGraph.Neighbor neighbor : segment.vectors.search(vector, limit, efSearch)) {
+                if (neighbor.similarity() < threshold) {
+                    break;
+                }
+                results.add(ScoredKnowledge.of(segment.documents.get(neighbor.id()), neighbor.similarity()));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 问题包含 question 的知识中问题最短的一条，与 KnowledgeMapper.findByFuzzyQuestion 一致
+    public Knowledge findByFuzzyQuestion(String question) {
+        lock.readLock().lock();
+        try {
+            Set<Long> candidates = segment.questions.candidates(KnowledgeTokenizer.queryTerms(question));
+            Collection<Knowledge> scope = candidates == null
+                    ? segment.documents.values()
+                    : candidates.stream().map(segment.documents::get).toList();
+            Knowledge best = null;
+            int bestLength = Integer.MAX_VALUE;
+            for (Knowledge knowledge : scope) {
+                if (!containsIgnoreCase(knowledge.getQuestion(), question)) {
+                    continue;
+                }
+                int length = knowledge.getQuestion().codePointCount(0, knowledge.getQuestion().length());
+                if (length < bestLength || (length == bestLength && knowledge.getId() < best.getId())) {
+                    best = knowledge;
+                    bestLength = length;
+                }
+            }
+            return best;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static boolean containsIgnoreCase(String text, String query) {
+        if (text == null || query == null) {
+            return false;
+        }
+        int length = query.length();
+        if (length == 0) {
+            return true;
+        }
+        for (int i = 0, last = text.length() - length; i <= last; i++) {
+            if (text.regionMatches(true, i, query, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 追平时从数据库读到的差异
+    private record Changes(List<Knowledge> changed, List<Long> removed) {
+
+        // 应用到 target，返回实际变化的条数。水位线重叠范围内读到的未修改知识只更新条目本身，
+        // 索引中已有更新版本（update_time 更晚）的知识跳过
+        int applyTo(Segment target) {
+            List<Knowledge> reindex = new ArrayList<>();
+            for (Knowledge knowledge : changed) {
+                Knowledge current = target.documents.get(knowledge.getId());
+                if (current == null) {
+                    reindex.add(knowledge);
+                } else if (current.getUpdateTime() != null && knowledge.getUpdateTime() != null
+                        && current.getUpdateTime().isAfter(knowledge.getUpdateTime())) {
+                    continue;
+                } else if (Objects.equals(current.getQuestion(), knowledge.getQuestion())
+                        && Objects.equals(current.getAnswer(), knowledge.getAnswer())) {
+                    target.documents.put(knowledge.getId(), knowledge);
+                } else {
+                    reindex.add(knowledge);
+                }
+            }
+            int removedCount = 0;
+            for (Long id : removed) {
+                if (target.documents.containsKey(id)) {
+                    target.remove(id);
+                    removedCount++;
+                }
+            }
+            target.addAll(reindex);
+            return reindex.size() + removedCount;
+        }
+    }
+
+    // 一份完整的索引：原始条目、问题和答案两个字段的倒排表、规范化问题的哈希表，以及问题向量的 HNSW 图。
+    // 答案字段较长、词典较大，检索时不扫描整个词典做包含匹配；模糊匹配只用问题字段，不受影响
+    private static final class Segment {
+
+        final Map<Long, Knowledge> documents = new HashMap<>();
+        final InvertedIndex questions;
+        final InvertedIndex answers;
+        final Map<String, TreeSet<Long>> exact = new HashMap<>();
+        final NgramEmbedder embedder;
+        final HnswGraph vectors;
+
+        Segment(InvertedIndex questions, InvertedIndex answers, NgramEmbedder embedder, HnswGraph vectors) {
+            this.questions = questions;
+            this.answers = answers;
+            this.embedder = embedder;
+            this.vectors = vectors;
+        }
+
+        // 快照格式：知识条目（id、问题、答案、创建和更新时间），问题、答案的倒排表，向量的 idf 统计和 HNSW 图。
+        // 精确匹配的哈希表由问题重新计算。读取时答案和倒排项只引用映射中的位置，见 MappedKnowledge、InvertedIndex
+        void writeTo(IndexSnapshot.Writer out) throws IOException {
+            out.writeVarInt(documents.size());
+            for (Knowledge knowledge : documents.values()) {
+                out.writeVarLong(knowledge.getId());
+                out.writeString(knowledge.getQuestion());
+                out.writeString(knowledge.getAnswer());
+                out.writeTime(knowledge.getCreateTime());
+                out.writeTime(knowledge.getUpdateTime());
+            }
+            questions.writeTo(out);
+            answers.writeTo(out);
+            embedder.writeTo(out);
+            vectors.writeTo(out);
+        }
+
+        static Segment readFrom(IndexSnapshot.Reader in, int dimensions, int maxConnections, int efConstruction) {
+            List<Knowledge> knowledgeList = new ArrayList<>();
+            for (int i = 0, count = in.readVarInt(); i < count; i++) {
+                knowledgeList.add(new MappedKnowledge(in.readVarLong(), in.readString(), in.sliceString(), in.readTime(), in.readTime()));
+            }
+            Segment segment = new Segment(InvertedIndex.readFrom(in, true), InvertedIndex.readFrom(in, false), NgramEmbedder.readFrom(in),
+                    HnswGraph.readFrom(in, dimensions, maxConnections, efConstruction, System.nanoTime()));
+            for (Knowledge knowledge : knowledgeList) {
+                segment.documents.put(knowledge.getId(), knowledge);
+                segment.indexExact(knowledge);
+            }
+            return segment;
+        }
+
+        // 快照水位线：各条知识 update_time 的最大值
+        LocalDateTime watermark() {
+            LocalDateTime watermark = null;
+            for (Knowledge knowledge : documents.values()) {
+                LocalDateTime updateTime = knowledge.getUpdateTime();
+                if (updateTime != null && (watermark == null || updateTime.isAfter(watermark))) {
+                    watermark = updateTime;
+                }
+            }
+            return watermark;
+        }
+
+        void add(Knowledge knowledge) {
+            addAll(List.of(knowledge));
+        }
+
+        // 先统计全部问题的 idf 再计算向量，全量构建时每条向量使用同一份 idf
+        void addAll(List<Knowledge> knowledgeList) {
+            for (Knowledge knowledge : knowledgeList) {
+                remove(knowledge.getId());
+                documents.put(knowledge.getId(), knowledge);
+                questions.add(knowledge.getId(), knowledge.getQuestion());
+                answers.add(knowledge.getId(), knowledge.getAnswer());
+                indexExact(knowledge);
+                embedder.observe(knowledge.getQuestion());
+            }
+            for (Knowledge knowledge : knowledgeList) {
+                SparseVector vector = embedder.embed(knowledge.getQuestion());
+                if (vector != null) {
+                    vectors.insert(knowledge.getId(), vector);
+                }
+            }
+        }
+
+        private void indexExact(Knowledge knowledge) {
+            String key = QuestionNormalizer.normalize(knowledge.getQuestion());
+            if (!key.isEmpty()) {
+                exact.computeIfAbsent(key, k -> new TreeSet<>()).add(knowledge.getId());
+            }
+        }
+
+        void remove(Long id) {
+            Knowledge previous = documents.remove(id);
+            if (previous != null) {
+                questions.remove(id, previous.getQuestion());
+                answers.remove(id, previous.getAnswer());
+                String key = QuestionNormalizer.normalize(previous.getQuestion());
+                TreeSet<Long> ids = exact.get(key);
+                if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                    exact.remove(key);
+                }
+                embedder.forget(previous.getQuestion());
+                vectors.remove(id);
+            }
+        }
+
+        int size() {
+            return documents.size();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.knowledge.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+// 知识库文本分词：中日韩文字按连续段切成字符二元组（只有一个字的段保留单字），
+// 拉丁字母和数字按词切分，其余字符作为分隔符。统一转为小写，与 MySQL 默认排序规则下 LIKE 不区分大小写一致
+final class KnowledgeTokenizer {
+
+    // 查询词与索引词的匹配方式。查询串是文档的子串，位于查询两端的拉丁词可能只是文档中某个词的一部分
+    enum Match {
+        EXACT,   // 两侧都有分隔符的词、二元组
+        PREFIX,  // 位于查询末尾的词：文档中的词以它开头
+        SUFFIX,  // 位于查询开头的词：文档中的词以它结尾
+        INFIX    // 整个查询只有一个词，或单个汉字：文档中的词包含它
+    }
+
+    record QueryTerm(String text, Match match) {
+    }
+
+    private KnowledgeTokenizer() {
+    }
+
+    // 索引用：依次输出文本中的词，同一个词可能输出多次
+    static void forEachTerm(String text, Consumer<String> consumer) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int length = lower.length();
+        int i = 0;
+        while (i < length) {
+            char c = lower.charAt(i);
+            if (isCjk(c)) {
+                int end = i + 1;
+                while (end < length && isCjk(lower.charAt(end))) {
+                    end++;
+                }
+                if (end - i == 1) {
+                    consumer.accept(String.valueOf(c));
+                } else {
+                    for (int j = i; j + 1 < end; j++) {
+                        consumer.accept(lower.substring(j, j + 2));
+                    }
+                }
+                i = end;
+            } else if (isWord(c)) {
+                int end = i + 1;
+                while (end < length && isWord(lower.charAt(end))) {
+                    end++;
+                }
+                consumer.accept(lower.substring(i, end));
+                i = end;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    // 查询用：按与索引相同的规则切分，并根据词在查询中的位置确定匹配方式
+    static List<QueryTerm> queryTerms(String query) {
+        List<QueryTerm> terms = new ArrayList<>();
+        if (query == null || query.isEmpty()) {
+            return terms;
+        }
+        String lower = query.toLowerCase(Locale.ROOT);
+        int length = lower.length();
+        int i = 0;
+        while (i < length) {
+            char c = lower.charAt(i);
+            if (isCjk(c)) {
+                int end = i + 1;
+                while (end < length && isCjk(lower.charAt(end))) {
+                    end++;
+                }
+                if (end - i == 1) {
+                    // 单个汉字在文档中可能处于任意二元组里
+                    terms.add(new QueryTerm(String.valueOf(c), Match.INFIX));
+                } else {
+                    for (int j = i; j + 1 < end; j++) {
+                        terms.add(new QueryTerm(lower.substring(j, j + 2), Match.EXACT));
+                    }
+                }
+                i = end;
+            } else if (isWord(c)) {
+                int end = i + 1;
+                while (end < length && isWord(lower.charAt(end))) {
+                    end++;
+                }
+                boolean openLeft = i == 0;
+                boolean openRight = end == length;
+                Match match = openLeft && openRight ? Match.INFIX
+                        : openLeft ? Match.SUFFIX
+                        : openRight ? Match.PREFIX
+                        : Match.EXACT;
+                terms.add(new QueryTerm(lower.substring(i, end), match));
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        return terms;
+    }
+
+    static boolean isCjk(char c) {
+        if (c < 0x2E80) {
+            return false;
+        }
+        Character.UnicodeScript script = Character.UnicodeScript.of(c);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    static boolean isWord(char c) {
+        return Character.isLetterOrDigit(c) && !isCjk(c);
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.knowledge.index;
+
+import com.example.knowledge.entity.Knowledge;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+// 从快照恢复的知识：答案原文留在映射的快照文件中，读取时才解码，不常驻堆内存。
+// 设置答案后改用堆上的值
+final class MappedKnowledge extends Knowledge {
+
+    private ByteBuffer mappedAnswer;
+
+    MappedKnowledge(Long id, String question, ByteBuffer answer, LocalDateTime createTime, LocalDateTime updateTime) {
+        super(id, question, null, createTime, updateTime);
+        this.mappedAnswer = answer;
+    }
+
+    @Override
+    public String getAnswer() {
+        ByteBuffer answer = mappedAnswer;
+        return answer == null ? super.getAnswer() : StandardCharsets.UTF_8.decode(answer.duplicate()).toString();
+    }
+
+    @Override
+    public void setAnswer(String answer) {
+        mappedAnswer = null;
+        super.setAnswer(answer);
+    }
+}
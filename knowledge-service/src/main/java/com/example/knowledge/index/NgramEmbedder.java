@@ -0,0 +1,138 @@
+package com.example.knowledge.index;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+// 本地文本向量：字符 n-gram 哈希 + TF-IDF，不依赖外部模型服务。
+// 文本规范化（转小写，只保留字母、数字和汉字）后取 2、3 元字符组，哈希到固定维度并带随机符号，
+// 权重为 (1 + ln tf) * idf，最后做 L2 归一化得到稀疏向量，余弦相似度即点积。
+// idf 按维度统计文档频率并随增删更新；已入图的向量在下次全量重建时按最新的 idf 重算。非线程安全
+final class NgramEmbedder {
+
+    private final int dimensions;
+    private final int[] documentFrequency;
+    private int documentCount;
+
+    NgramEmbedder(int dimensions) {
+        if (Integer.bitCount(dimensions) != 1) {
+            throw new IllegalArgumentException("向量维度必须是 2 的幂: " + dimensions);
+        }
+        this.dimensions = dimensions;
+        this.documentFrequency = new int[dimensions];
+    }
+
+    void writeTo(IndexSnapshot.Writer out) throws IOException {
+        out.writeVarInt(dimensions);
+        out.writeVarInt(documentCount);
+        for (int frequency : documentFrequency) {
+            out.writeVarInt(frequency);
+        }
+    }
+
+    static NgramEmbedder readFrom(IndexSnapshot.Reader in) {
+        NgramEmbedder embedder = new NgramEmbedder(in.readVarInt());
+        embedder.documentCount = in.readVarInt();
+        for (int i = 0; i < embedder.dimensions; i++) {
+            embedder.documentFrequency[i] = in.readVarInt();
+        }
+        return embedder;
+    }
+
+    // 统计一篇文档的维度出现情况，用于 idf
+    void observe(String text) {
+        for (int bucket : buckets(text)) {
+            documentFrequency[bucket]++;
+        }
+        documentCount++;
+    }
+
+    void forget(String text) {
+        for (int bucket : buckets(text)) {
+            documentFrequency[bucket]--;
+        }
+        documentCount--;
+    }
+
+    // 文本没有可用字符时返回 null
+    SparseVector embed(String text) {
+        Map<Integer, Integer> frequencies = new HashMap<>();
+        forEachGram(normalize(text), hash -> frequencies.merge(hash, 1, Integer::sum));
+        TreeMap<Integer, Double> weights = new TreeMap<>();
+        for (Map.Entry<Integer, Integer> entry : frequencies.entrySet()) {
+            int hash = entry.getKey();
+            int bucket = hash & (dimensions - 1);
+            double idf = Math.log((documentCount + 1.0) / (Math.max(0, documentFrequency[bucket]) + 1.0)) + 1.0;
+            double weight = (1 + Math.log(entry.getValue())) * idf;
+            weights.merge(bucket, hash < 0 ? -weight : weight, Double::sum);
+        }
+        double norm = 0;
+        for (double weight : weights.values()) {
+            norm += weight * weight;
+        }
+        if (norm == 0) {
+            return null;
+        }
+        double scale = 1 / Math.sqrt(norm);
+        int[] indices = new int[weights.size()];
+        float[] values = new float[weights.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Double> entry : weights.entrySet()) {
+            indices[i] = entry.getKey();
+            values[i++] = (float) (entry.getValue() * scale);
+        }
+        return new SparseVector(indices, values);
+    }
+
+    private Set<Integer> buckets(String text) {
+        Set<Integer> buckets = new HashSet<>();
+        forEachGram(normalize(text), hash -> buckets.add(hash & (dimensions - 1)));
+        return buckets;
+    }
+
+    // 对每个 2、3 元字符组输出一个 32 位哈希；文本只有一个字符时输出该字符
+    private static void forEachGram(String text, IntConsumer consumer) {
+        int length = text.length();
+        if (length == 1) {
+            consumer.accept(mix(31 + text.charAt(0)));
+            return;
+        }
+        for (int n = 2; n <= 3; n++) {
+            for (int i = 0; i + n <= length; i++) {
+                int hash = n;
+                for (int j = i; j < i + n; j++) {
+                    hash = hash * 31 + text.charAt(j);
+                }
+                consumer.accept(mix(hash));
+            }
+        }
+    }
+
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder normalized = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+
+    // MurmurHash3 的 fmix32，打散低位，最高位用作符号
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.knowledge.index;
+
+// 稀疏向量：下标升序、无重复，值已做 L2 归一化。
+// 一个问题只有几十个非零维，点积按非零维计算，与向量维度无关
+record SparseVector(int[] indices, float[] values) {
+
+    double dot(SparseVector other) {
+        int[] otherIndices = other.indices;
+        float[] otherValues = other.values;
+        double sum = 0;
+        for (int i = 0, j = 0; i < indices.length && j < otherIndices.length; ) {
+            if (indices[i] == otherIndices[j]) {
+                sum += values[i++] * otherValues[j++];
+            } else if (indices[i] < otherIndices[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return sum;
+    }
+
+    // dense 为同一维度的稠密向量，用于一次查询中与大量节点比较
+    double dot(float[] dense) {
+        double sum = 0;
+        for (int i = 0; i < indices.length; i++) {
+            sum += values[i] * dense[indices[i]];
+        }
+        return sum;
+    }
+
+    float[] toDense(int dimensions) {
+        float[] dense = new float[dimensions];
+        for (int i = 0; i < indices.length; i++) {
+            dense[indices[i]] = values[i];
+        }
+        return dense;
+    }
+}
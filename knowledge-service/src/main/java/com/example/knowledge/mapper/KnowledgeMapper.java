@@ -4,6 +4,7 @@ package com.example.knowledge.mapper;
 import com.example.knowledge.entity.Knowledge;
 import org.apache.ibatis.annotations.*;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Mapper
@@ -36,6 +37,13 @@ public interface KnowledgeMapper {
     @Select("SELECT COUNT(*) FROM knowledge")
     long countAll();
 
+    // 索引快照追平使用：快照之后修改过的知识，以及全部 id（用于找出已删除的知识）
+    @Select("SELECT * FROM knowledge WHERE update_time >= #{since}")
+    List<Knowledge> findUpdatedSince(LocalDateTime since);
+
+    @Select("SELECT id FROM knowledge")
+    List<Long> findAllIds();
+
     // 搜索 - 在question和answer字段中搜索
     @Select("SELECT * FROM knowledge WHERE question LIKE CONCAT('%', #{query}, '%') " +
             "OR answer LIKE CONCAT('%', #{query}, '%') ORDER BY update_time DESC")
@@ -2,10 +2,13 @@
 package com.example.knowledge.service;
 
 import com.example.knowledge.entity.Knowledge;
+import com.example.knowledge.index.KnowledgeIndex;
 import com.example.knowledge.mapper.KnowledgeMapper;
 import com.example.knowledge.dto.PageResult;
+import com.example.knowledge.dto.ScoredKnowledge;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
@@ -17,19 +20,32 @@ import java.util.List;
 public class KnowledgeService {
 
     private final KnowledgeMapper knowledgeMapper;
+    private final KnowledgeIndex knowledgeIndex;
 
+    // 检索接口单次返回的最大条数
+    @Value("${knowledge.search.max-limit:100}")
+    private int searchMaxLimit;
+
+    // 相似问题检索的默认相似度阈值（余弦相似度）
+    @Value("${knowledge.similar.threshold:0.8}")
+    private double similarThreshold;
+
+    // 写入数据库后按主键读回（带上数据库生成的时间字段）再更新内存索引
     public Knowledge createKnowledge(Knowledge knowledge) {
         knowledgeMapper.insert(knowledge);
+        knowledgeIndex.put(knowledgeMapper.findById(knowledge.getId()));
         return knowledge;
     }
 
     public Knowledge updateKnowledge(Knowledge knowledge) {
         knowledgeMapper.update(knowledge);
+        knowledgeIndex.put(knowledgeMapper.findById(knowledge.getId()));
         return knowledge;
     }
 
     public void deleteKnowledge(Long id) {
         knowledgeMapper.delete(id);
+        knowledgeIndex.remove(id);
     }
 
     public Knowledge getKnowledgeById(Long id) {
@@ -54,14 +70,18 @@ public class KnowledgeService {
             return "请输入您的问题。";
         }
 
-        // 1. 精确匹配
-        Knowledge exactMatch = knowledgeMapper.findByExactQuestion(question);
+        // 1. 精确匹配，索引就绪时查内存哈希表
+        Knowledge exactMatch = knowledgeIndex.isReady()
+                ? knowledgeIndex.findByExactQuestion(question)
+                : knowledgeMapper.findByExactQuestion(question);
         if (exactMatch != null) {
             return exactMatch.getAnswer(); // 使用 getAnswer()
         }
 
-        // 2. 模糊匹配
-        Knowledge fuzzyMatch = knowledgeMapper.findByFuzzyQuestion(question);
+        // 2. 模糊匹配，索引就绪时不查询数据库
+        Knowledge fuzzyMatch = knowledgeIndex.isReady()
+                ? knowledgeIndex.findByFuzzyQuestion(question)
+                : knowledgeMapper.findByFuzzyQuestion(question);
         if (fuzzyMatch != null) {
             return fuzzyMatch.getAnswer(); // 使用 getAnswer()
         }
@@ -70,15 +90,36 @@ public class KnowledgeService {
         return "抱歉，我没有找到相关答案。您可以尝试用不同的方式提问，或者联系管理员添加相关问题。";
     }
 
-    public List<Knowledge> searchKnowledge(String query) {
-        return knowledgeMapper.search(query);
+    // 相关性检索，最多返回 limit 条；索引未就绪时回退到数据库子串查询，按更新时间倒序截取
+    public List<ScoredKnowledge> searchKnowledge(String query, int limit) {
+        int boundedLimit = Math.max(1, Math.min(limit, searchMaxLimit));
+        if (knowledgeIndex.isReady()) {
+            return knowledgeIndex.rank(query, boundedLimit);
+        }
+        return knowledgeMapper.search(query).stream()
+                .limit(boundedLimit)
+                .map(knowledge -> ScoredKnowledge.of(knowledge, null))
+                .toList();
+    }
+
+    // 相似问题检索，threshold 为空时使用默认阈值；索引未就绪时返回空列表
+    public List<ScoredKnowledge> findSimilar(String question, int limit, Double threshold) {
+        if (!knowledgeIndex.isReady()) {
+            log.debug("知识库索引尚未就绪，跳过相似问题检索: {}", question);
+            return List.of();
+        }
+        int boundedLimit = Math.max(1, Math.min(limit, searchMaxLimit));
+        return knowledgeIndex.findSimilar(question, boundedLimit, threshold != null ? threshold : similarThreshold);
     }
 
     // ★★★ 新增：精确查询方法 - 供 QA 服务调用 ★★★
+    // 索引就绪后按规范化问题查内存哈希表，构建期间回退到数据库
     public Knowledge findByExactQuestion(String question) {
         try {
             log.info("精确查询问题: {}", question);
-            Knowledge result = knowledgeMapper.findByExactQuestion(question);
+            Knowledge result = knowledgeIndex.isReady()
+                    ? knowledgeIndex.findByExactQuestion(question)
+                    : knowledgeMapper.findByExactQuestion(question);
             if (result != null) {
                 log.info("找到精确匹配: 问题={}, 答案长度={}", result.getQuestion(), result.getAnswer().length());
             } else {
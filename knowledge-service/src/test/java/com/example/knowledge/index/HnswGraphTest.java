@@ -0,0 +1,141 @@
+package com.example.knowledge.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// 近似检索的召回率以暴力点积排序为基准；删除的节点不能再出现在结果中
+class HnswGraphTest {
+
+    private static final int DIMENSIONS = 1024;
+    private static final int K = 10;
+
+    @Test
+    void recallAgainstBruteForce() {
+        Random random = new Random(7);
+        Map<Long, SparseVector> vectors = randomVectors(random, 2000);
+        HnswGraph graph = new HnswGraph(DIMENSIONS, 16, 100, 42);
+        vectors.forEach(graph::insert);
+
+        assertThat(graph.size()).isEqualTo(vectors.size());
+        assertThat(recall(graph, vectors, queries(random, vectors), Set.of())).isGreaterThanOrEqualTo(0.9);
+    }
+
+    @Test
+    void removedNodesAreNeverReturned() {
+        Random random = new Random(11);
+        Map<Long, SparseVector> vectors = randomVectors(random, 2000);
+        HnswGraph graph = new HnswGraph(DIMENSIONS, 16, 100, 42);
+        vectors.forEach(graph::insert);
+
+        Set<Long> removed = new HashSet<>();
+        for (long id : vectors.keySet()) {
+            if (id % 2 == 0) {
+                graph.remove(id);
+                removed.add(id);
+            }
+        }
+        assertThat(graph.size()).isEqualTo(vectors.size() - removed.size());
+
+        List<SparseVector> queries = queries(random, vectors);
+        for (SparseVector query : queries) {
+            for (HnswGraph.Neighbor neighbor : graph.search(query, K, 64)) {
+                assertThat(removed).doesNotContain(neighbor.id());
+            }
+        }
+        assertThat(recall(graph, vectors, queries, removed)).isGreaterThanOrEqualTo(0.9);
+    }
+
+    @Test
+    void emptyAfterRemovingEverything() {
+        HnswGraph graph = new HnswGraph(DIMENSIONS, 16, 100, 42);
+        Map<Long, SparseVector> vectors = randomVectors(new Random(3), 50);
+        vectors.forEach(graph::insert);
+        vectors.keySet().forEach(graph::remove);
+
+        assertThat(graph.size()).isZero();
+        assertThat(graph.search(vectors.get(1L), K, 64)).isEmpty();
+    }
+
+    private static double recall(HnswGraph graph, Map<Long, SparseVector> vectors,
+                                 List<SparseVector> queries, Set<Long> removed) {
+        int hits = 0;
+        int total = 0;
+        for (SparseVector query : queries) {
+            Set<Long> expected = new HashSet<>(bruteForce(vectors, query, removed));
+            for (HnswGraph.Neighbor neighbor : graph.search(query, K, 64)) {
+                if (expected.contains(neighbor.id())) {
+                    hits++;
+                }
+            }
+            total += expected.size();
+        }
+        return (double) hits / total;
+    }
+
+    private static List<Long> bruteForce(Map<Long, SparseVector> vectors, SparseVector query, Set<Long> removed) {
+        return vectors.entrySet().stream()
+                .filter(entry -> !removed.contains(entry.getKey()))
+                .sorted(Comparator.comparingDouble((Map.Entry<Long, SparseVector> entry) -> -entry.getValue().dot(query))
+                        .thenComparing(Map.Entry::getKey))
+                .limit(K)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    // 查询取自已有向量的扰动，与真实场景中相近问题的分布一致
+    private static List<SparseVector> queries(Random random, Map<Long, SparseVector> vectors) {
+        List<SparseVector> queries = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            SparseVector base = vectors.get(1L + random.nextInt(vectors.size()));
+            TreeMap<Integer, Float> values = new TreeMap<>();
+            for (int j = 0; j < base.indices().length; j++) {
+                if (random.nextInt(4) != 0) {
+                    values.put(base.indices()[j], base.values()[j]);
+                }
+            }
+            for (int j = 0; j < 4; j++) {
+                values.put(random.nextInt(DIMENSIONS), random.nextFloat());
+            }
+            queries.add(normalized(values));
+        }
+        return queries;
+    }
+
+    // 每个向量 8~24 个非零维，维度集中在前一部分，使不同向量之间有足够的重叠
+    private static Map<Long, SparseVector> randomVectors(Random random, int count) {
+        Map<Long, SparseVector> vectors = new LinkedHashMap<>();
+        for (long id = 1; id <= count; id++) {
+            TreeMap<Integer, Float> values = new TreeMap<>();
+            int nonZeros = 8 + random.nextInt(17);
+            while (values.size() < nonZeros) {
+                int index = (int) (Math.abs(random.nextGaussian()) * DIMENSIONS / 4) % DIMENSIONS;
+                values.put(index, 0.1f + random.nextFloat());
+            }
+            vectors.put(id, normalized(values));
+        }
+        return vectors;
+    }
+
+    private static SparseVector normalized(TreeMap<Integer, Float> values) {
+        double norm = Math.sqrt(values.values().stream().mapToDouble(v -> v * v).sum());
+        int[] indices = new int[values.size()];
+        float[] normalized = new float[values.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Float> entry : values.entrySet()) {
+            indices[i] = entry.getKey();
+            normalized[i++] = (float) (entry.getValue() / norm);
+        }
+        return new SparseVector(indices, normalized);
+    }
+}
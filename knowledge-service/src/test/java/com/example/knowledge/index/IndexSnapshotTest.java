@@ -0,0 +1,183 @@
+package com.example.knowledge.index;
+
+import com.example.knowledge.dto.ScoredKnowledge;
+import com.example.knowledge.entity.Knowledge;
+import com.example.knowledge.mapper.KnowledgeMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IndexSnapshotTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2026, 1, 1, 0, 0, 0, 123_000_000);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void primitivesRoundTrip() throws IOException {
+        Path path = directory.resolve("primitives.snapshot");
+        IndexSnapshot.write(path, new IndexSnapshot.Header(64, T0), out -> {
+            out.writeVarInt(0);
+            out.writeVarInt(300);
+            out.writeVarInt(-1);
+            out.writeVarLong(Long.MAX_VALUE);
+            out.writeFloat(0.25f);
+            out.writeString(null);
+            out.writeString("");
+            out.writeString("如何重置密码？");
+            out.writeTime(null);
+            out.writeTime(T0);
+        });
+
+        IndexSnapshot.Reader in = IndexSnapshot.open(path, 64);
+
+        assertThat(in).isNotNull();
+        assertThat(in.header()).isEqualTo(new IndexSnapshot.Header(64, T0));
+        assertThat(in.readVarInt()).isZero();
+        assertThat(in.readVarInt()).isEqualTo(300);
+        assertThat(in.readVarInt()).isEqualTo(-1);
+        assertThat(in.readVarLong()).isEqualTo(Long.MAX_VALUE);
+        assertThat(in.readFloat()).isEqualTo(0.25f);
+        assertThat(in.readString()).isNull();
+        assertThat(in.readString()).isEmpty();
+        assertThat(in.readString()).isEqualTo("如何重置密码？");
+        assertThat(in.readTime()).isNull();
+        assertThat(in.readTime()).isEqualTo(T0);
+    }
+
+    @Test
+    void missingOrIncompatibleSnapshotIsIgnored() throws IOException {
+        Path path = directory.resolve("other.snapshot");
+        assertThat(IndexSnapshot.open(path, 64)).isNull();
+
+        IndexSnapshot.write(path, new IndexSnapshot.Header(64, null), out -> out.writeVarInt(1));
+        assertThat(IndexSnapshot.open(path, 128)).isNull();
+    }
+
+    @Test
+    void corruptChecksumIsRejected() throws IOException {
+        Path path = directory.resolve("corrupt.snapshot");
+        IndexSnapshot.write(path, new IndexSnapshot.Header(64, T0), out -> out.writeString("answer"));
+        flipByte(path, 20);
+
+        assertThatThrownBy(() -> IndexSnapshot.open(path, 64)).isInstanceOf(IOException.class);
+    }
+
+    // 从快照恢复的索引与全量构建的索引检索结果一致，恢复时不读取全部知识
+    @Test
+    void restoredIndexMatchesFreshBuild() {
+        Path path = directory.resolve("knowledge.snapshot");
+        List<Knowledge> documents = documents();
+        KnowledgeMapper mapper = mapper(documents);
+
+        KnowledgeIndex built = index(mapper, path);
+        built.init();
+        assertThat(path).exists();
+
+        KnowledgeIndex restored = index(mapper, path);
+        restored.init();
+
+        verify(mapper, times(1)).findAll();
+        for (String query : List.of("退款", "重置密码", "invoice", "订单 发货")) {
+            assertThat(ids(restored.rank(query, 10))).as(query).isEqualTo(ids(built.rank(query, 10)));
+        }
+        assertThat(restored.findByExactQuestion("问题5 如何退款")).isNotNull();
+    }
+
+    // 恢复后的倒排项和答案仍引用映射的快照，修改后与全量构建的结果一致，再次写出的快照也可以恢复
+    @Test
+    void restoredIndexCanBeModifiedAndSnapshottedAgain() {
+        Path path = directory.resolve("knowledge.snapshot");
+        List<Knowledge> documents = documents();
+        index(mapper(documents), path).init();
+
+        KnowledgeIndex restored = index(mapper(documents), path);
+        restored.init();
+        assertThat(restored.findByExactQuestion("问题5 如何退款").getAnswer()).isEqualTo("答案5 重置密码");
+        Knowledge edited = new Knowledge(7L, "问题7 订单什么时候发货", "答案7 退款到账时间", T0, T0.plusHours(1));
+        restored.put(edited);
+        restored.remove(10L);
+        restored.shutdown();
+
+        List<Knowledge> expectedDocuments = new ArrayList<>(documents.stream()
+                .filter(knowledge -> knowledge.getId() != 7L && knowledge.getId() != 10L).toList());
+        expectedDocuments.add(edited);
+        KnowledgeIndex expected = index(mapper(expectedDocuments), directory.resolve("expected.snapshot"));
+        expected.init();
+        KnowledgeIndex reloaded = index(mapper(expectedDocuments), path);
+        reloaded.init();
+
+        for (String query : List.of("退款", "重置密码", "到账", "订单 发货")) {
+            assertThat(ids(restored.rank(query, 10))).as(query).isEqualTo(ids(expected.rank(query, 10)));
+            assertThat(ids(reloaded.rank(query, 10))).as(query).isEqualTo(ids(expected.rank(query, 10)));
+        }
+        assertThat(reloaded.findByExactQuestion("问题7 订单什么时候发货").getAnswer()).isEqualTo("答案7 退款到账时间");
+    }
+
+    @Test
+    void corruptSnapshotFallsBackToFullBuild() throws IOException {
+        Path path = directory.resolve("knowledge.snapshot");
+        List<Knowledge> documents = documents();
+        index(mapper(documents), path).init();
+        flipByte(path, (int) Files.size(path) / 2);
+
+        KnowledgeMapper mapper = mapper(documents);
+        KnowledgeIndex index = index(mapper, path);
+        index.init();
+
+        verify(mapper, times(1)).findAll();
+        verify(mapper, never()).findUpdatedSince(any());
+        assertThat(index.isReady()).isTrue();
+        assertThat(index.findByExactQuestion("问题5 如何退款")).isNotNull();
+    }
+
+    private static KnowledgeIndex index(KnowledgeMapper mapper, Path path) {
+        return new KnowledgeIndex(mapper, true, Duration.ZERO, Duration.ZERO, 1.2, 0.75, 2.0, 1.0,
+                4096, 16, 100, 64, true, path, Duration.ofSeconds(5));
+    }
+
+    private static KnowledgeMapper mapper(List<Knowledge> documents) {
+        KnowledgeMapper mapper = mock(KnowledgeMapper.class);
+        when(mapper.findAll()).thenReturn(documents);
+        when(mapper.findAllIds()).thenReturn(documents.stream().map(Knowledge::getId).toList());
+        when(mapper.findUpdatedSince(any())).thenReturn(List.of());
+        return mapper;
+    }
+
+    private static List<Knowledge> documents() {
+        String[] topics = {"如何退款", "重置密码", "开具发票 invoice", "订单什么时候发货", "会员积分"};
+        List<Knowledge> documents = new ArrayList<>();
+        for (long id = 1; id <= 50; id++) {
+            documents.add(new Knowledge(id, "问题" + id + " " + topics[(int) (id % topics.length)],
+                    "答案" + id + " " + topics[(int) ((id + 1) % topics.length)], T0, T0.plusMinutes(id)));
+        }
+        return documents;
+    }
+
+    private static List<Long> ids(List<ScoredKnowledge> results) {
+        return results.stream().map(ScoredKnowledge::getId).toList();
+    }
+
+    private static void flipByte(Path path, int position) throws IOException {
+        byte[] content = Files.readAllBytes(path);
+        content[position] ^= 0x5A;
+        Files.write(path, content);
+    }
+}
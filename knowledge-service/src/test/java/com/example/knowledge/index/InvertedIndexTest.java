@@ -0,0 +1,110 @@
+package com.example.knowledge.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// 候选集必须覆盖所有按子串（不区分大小写）包含查询串的条目，否则模糊匹配会漏掉结果
+class InvertedIndexTest {
+
+    private static final String[] WORDS = {
+            "password", "pass", "reset", "Refund", "order", "orders", "ship", "shipping", "VAT", "invoice", "a1", "x9y"
+    };
+    private static final String CJK = "如何重置密码退款订单发货发票会员积分物流";
+
+    @Test
+    void candidatesCoverBruteForceSubstringMatches() {
+        Random random = new Random(42);
+        Map<Long, String> documents = new HashMap<>();
+        InvertedIndex index = new InvertedIndex();
+        for (long id = 1; id <= 500; id++) {
+            String text = randomText(random);
+            documents.put(id, text);
+            index.add(id, text);
+        }
+
+        List<String> queries = new ArrayList<>();
+        for (String text : documents.values()) {
+            int from = random.nextInt(text.length());
+            int to = from + 1 + random.nextInt(Math.min(8, text.length() - from));
+            queries.add(text.substring(from, to));
+        }
+        for (int i = 0; i < 200; i++) {
+            queries.add(randomText(random));
+        }
+
+        for (String query : queries) {
+            Set<Long> expected = new TreeSet<>();
+            documents.forEach((id, text) -> {
+                if (KnowledgeIndex.containsIgnoreCase(text, query)) {
+                    expected.add(id);
+                }
+            });
+            Set<Long> candidates = index.candidates(KnowledgeTokenizer.queryTerms(query));
+            if (candidates == null) {
+                continue;
+            }
+            assertThat(candidates).as("query [%s]", query).containsAll(expected);
+        }
+    }
+
+    @Test
+    void removedDocumentsAreNoLongerCandidates() {
+        InvertedIndex index = new InvertedIndex();
+        index.add(1L, "如何重置密码");
+        index.add(2L, "reset password");
+        index.remove(1L, "如何重置密码");
+
+        assertThat(index.candidates(KnowledgeTokenizer.queryTerms("重置密码"))).isEmpty();
+        assertThat(index.candidates(KnowledgeTokenizer.queryTerms("pass"))).containsExactly(2L);
+    }
+
+    // 后缀匹配走反转词典，增删后保持同步；不扫描词典的字段上，包含匹配只按前缀和后缀查找
+    @Test
+    void suffixLookupFollowsRemovesAndInfixScanCanBeSkipped() {
+        InvertedIndex scanned = new InvertedIndex(true);
+        InvertedIndex unscanned = new InvertedIndex(false);
+        for (InvertedIndex index : List.of(scanned, unscanned)) {
+            index.add(1L, "password reset");
+            index.add(2L, "bypass");
+            index.add(3L, "passage");
+            index.add(4L, "退款到账");
+        }
+
+        assertThat(scanned.candidates(KnowledgeTokenizer.queryTerms("word res"))).containsExactly(1L);
+        assertThat(scanned.candidates(KnowledgeTokenizer.queryTerms("ASS "))).containsExactly(2L);
+        assertThat(scanned.candidates(KnowledgeTokenizer.queryTerms("ass"))).containsExactlyInAnyOrder(1L, 2L, 3L);
+        assertThat(unscanned.candidates(KnowledgeTokenizer.queryTerms("ass"))).containsExactly(2L);
+        assertThat(unscanned.candidates(KnowledgeTokenizer.queryTerms("到"))).containsExactly(4L);
+
+        scanned.remove(2L, "bypass");
+        assertThat(scanned.candidates(KnowledgeTokenizer.queryTerms("ASS "))).isEmpty();
+        assertThat(scanned.candidates(KnowledgeTokenizer.queryTerms("word res"))).containsExactly(1L);
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        int parts = 1 + random.nextInt(4);
+        for (int i = 0; i < parts; i++) {
+            if (i > 0) {
+                text.append(random.nextBoolean() ? " " : "");
+            }
+            if (random.nextBoolean()) {
+                text.append(WORDS[random.nextInt(WORDS.length)]);
+            } else {
+                for (int j = 0, length = 1 + random.nextInt(4); j < length; j++) {
+                    text.append(CJK.charAt(random.nextInt(CJK.length())));
+                }
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.knowledge.index;
+
+import com.example.knowledge.dto.ScoredKnowledge;
+import com.example.knowledge.entity.Knowledge;
+import com.example.knowledge.mapper.KnowledgeMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// rank 用小顶堆取前 K 条，结果应与对全部得分完整排序后取前 K 条一致
+class KnowledgeIndexRankTest {
+
+    private static final double QUESTION_BOOST = 2.0;
+    private static final double ANSWER_BOOST = 1.0;
+    private static final String[] WORDS = {
+            "如何", "重置", "密码", "退款", "订单", "发货", "发票", "会员", "积分", "物流",
+            "reset", "password", "refund", "order", "shipping", "invoice"
+    };
+
+    @Test
+    void topKMatchesFullSort() {
+        Random random = new Random(7);
+        List<Knowledge> documents = new ArrayList<>();
+        for (long id = 1; id <= 300; id++) {
+            documents.add(knowledge(id, randomText(random, 4), randomText(random, 12)));
+        }
+        KnowledgeIndex index = buildIndex(documents);
+
+        InvertedIndex questions = new InvertedIndex();
+        InvertedIndex answers = new InvertedIndex(false);
+        for (Knowledge knowledge : documents) {
+            questions.add(knowledge.getId(), knowledge.getQuestion());
+            answers.add(knowledge.getId(), knowledge.getAnswer());
+        }
+        Bm25 bm25 = new Bm25(1.2, 0.75);
+
+        for (int i = 0; i < 50; i++) {
+            String query = randomText(random, 1 + random.nextInt(3));
+            List<KnowledgeTokenizer.QueryTerm> terms = KnowledgeTokenizer.queryTerms(query);
+            Map<Long, Double> scores = new HashMap<>();
+            questions.score(terms, documents.size(), bm25, QUESTION_BOOST, scores);
+            answers.score(terms, documents.size(), bm25, ANSWER_BOOST, scores);
+            List<Long> fullSort = scores.entrySet().stream()
+                    .sorted(Map.Entry.<Long, Double>comparingByValue().thenComparing(Map.Entry.comparingByKey()).reversed())
+                    .map(Map.Entry::getKey)
+                    .toList();
+
+            for (int k : new int[]{1, 5, 20, 1000}) {
+                List<Long> topK = index.rank(query, k).stream().map(ScoredKnowledge::getId).toList();
+                assertThat(topK).as("query [%s], k=%d", query, k)
+                        .containsExactlyElementsOf(fullSort.subList(0, Math.min(k, fullSort.size())));
+            }
+        }
+    }
+
+    @Test
+    void scoresAreDescending() {
+        Random random = new Random(11);
+        List<Knowledge> documents = new ArrayList<>();
+        for (long id = 1; id <= 100; id++) {
+            documents.add(knowledge(id, randomText(random, 3), randomText(random, 8)));
+        }
+        List<ScoredKnowledge> results = buildIndex(documents).rank("退款 订单", 10);
+
+        assertThat(results).hasSizeLessThanOrEqualTo(10)
+                .isSortedAccordingTo(Comparator.comparing(ScoredKnowledge::getScore).reversed());
+    }
+
+    // 包含查询词的更长的词很多时，与查询词完全相同的词仍然排在最前
+    @Test
+    void exactTermOutranksManyLongerExpansions() {
+        List<Knowledge> documents = new ArrayList<>();
+        for (long id = 1; id <= 80; id++) {
+            documents.add(knowledge(id, String.format("a%02dxxxpass filler", id), "filler"));
+        }
+        documents.add(knowledge(100L, "pass", "filler"));
+
+        List<ScoredKnowledge> results = buildIndex(documents).rank("pass", 3);
+
+        assertThat(results).isNotEmpty();
+        assertThat(results.get(0).getId()).isEqualTo(100L);
+    }
+
+    static KnowledgeIndex buildIndex(List<Knowledge> documents) {
+        KnowledgeMapper mapper = mock(KnowledgeMapper.class);
+        when(mapper.findAll()).thenReturn(documents);
+        KnowledgeIndex index = new KnowledgeIndex(mapper, true, Duration.ZERO, Duration.ZERO, 1.2, 0.75,
+                QUESTION_BOOST, ANSWER_BOOST, 4096, 16, 100, 64, false, Path.of("unused"), Duration.ofSeconds(5));
+        index.init();
+        return index;
+    }
+
+    static Knowledge knowledge(long id, String question, String answer) {
+        Knowledge knowledge = new Knowledge();
+        knowledge.setId(id);
+        knowledge.setQuestion(question);
+        knowledge.setAnswer(answer);
+        return knowledge;
+    }
+
+    private static String randomText(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.qa.cache;
+
+import com.example.common.text.QuestionNormalizer;
+import com.example.qa.entity.Answer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.CompletableFuture;
+
+// answerCache 的统一入口：以规范化问题作为 key，精确未命中时再查近似重复问题
+@Slf4j
+@Component
+public class AnswerCache {
+
+    // 缓存名称，与原 @Cacheable(value = "answerCache") 保持一致
+    public static final String CACHE_NAME = "answerCache";
+
+    private final CacheManager cacheManager;
+    private final NearDuplicateIndex nearDuplicateIndex;
+    private final boolean nearDuplicateEnabled;
+
+    private final Counter exactHits;
+    private final Counter nearHits;
+    private final Counter misses;
+
+    public AnswerCache(CacheManager cacheManager,
+                       MeterRegistry meterRegistry,
+                       @Value("${qa.cache.near-duplicate.enabled:true}") boolean nearDuplicateEnabled,
+                       @Value("${qa.cache.near-duplicate.min-similarity:0.75}") double minSimilarity,
+                       @Value("${qa.cache.near-duplicate.min-length:6}") int minLength,
+                       @Value("${qa.cache.near-duplicate.max-entries:100000}") long maxEntries) {
+        this.cacheManager = cacheManager;
+        this.nearDuplicateEnabled = nearDuplicateEnabled;
+        this.nearDuplicateIndex = new NearDuplicateIndex(minSimilarity, minLength, maxEntries);
+
+        this.exactHits = lookupCounter(meterRegistry, "exact");
+        this.nearHits = lookupCounter(meterRegistry, "near");
+        this.misses = lookupCounter(meterRegistry, "miss");
+        Gauge.builder("qa.answer.cache.near-duplicate.size", nearDuplicateIndex, NearDuplicateIndex::size)
+                .description("近似重复索引中的问题数")
+                .register(meterRegistry);
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("qa.answer.cache.lookups")
+                .description("答案缓存查询次数，按命中方式区分")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    public static String keyOf(String question) {
+        return QuestionNormalizer.normalize(question);
+    }
+
+    // 异步查询：先按规范化 key 精确查询，再尝试近似重复问题
+    public Mono<Answer> lookup(String question) {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        if (cache == null) {
+            return Mono.empty();
+        }
+        String key = keyOf(question);
+        return retrieve(cache, key)
+                .doOnNext(answer -> {
+                    exactHits.increment();
+                    indexKey(key);
+                    log.info("从缓存获取到答案: {}", question);
+                })
+                .switchIfEmpty(Mono.defer(() -> {
+                    String similarKey = nearDuplicateEnabled ? nearDuplicateIndex.findSimilar(key) : null;
+                    if (similarKey == null) {
+                        return Mono.empty();
+                    }
+                    return retrieve(cache, similarKey)
+                            .doOnNext(answer -> {
+                                nearHits.increment();
+                                log.info("从缓存获取到近似问题的答案: [{}] -> [{}]", question, similarKey);
+                            });
+                }))
+                .doOnSuccess(answer -> {
+                    if (answer == null) {
+                        misses.increment();
+                        log.debug("缓存中未找到问题: {}", question);
+                    }
+                })
+                .onErrorResume(e -> {
+                    log.debug("查询缓存失败: {}", e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    // 写入缓存放到弹性线程池执行，不阻塞响应
+    public void put(String question, Answer answer) {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        if (cache == null) {
+            return;
+        }
+        String key = keyOf(question);
+        Answer shared = shared(answer);
+        Mono.fromRunnable(() -> {
+                    cache.put(key, shared);
+                    indexKey(key);
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, e -> log.warn("写入缓存失败: {}", e.getMessage()));
+    }
+
+    // 预热使用：问题已在缓存中时只回填 L1 和近似重复索引，返回 true；不计入命中率指标
+    public Mono<Boolean> preload(String question) {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        if (cache == null) {
+            return Mono.just(false);
+        }
+        String key = keyOf(question);
+        return retrieve(cache, key)
+                .doOnNext(answer -> indexKey(key))
+                .hasElement();
+    }
+
+    // 预热使用：仅在缓存中没有该问题时写入，返回是否写入。
+    // putIfAbsent 不会覆盖其他实例已经缓存的答案，也不会让它们的 L1 失效
+    public Mono<Boolean> warm(String question, Answer answer) {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        if (cache == null) {
+            return Mono.just(false);
+        }
+        String key = keyOf(question);
+        return preload(question)
+                .flatMap(present -> present
+                        ? Mono.just(false)
+                        : Mono.fromCallable(() -> cache.putIfAbsent(key, shared(answer)) == null)
+                                .subscribeOn(Schedulers.boundedElastic()))
+                .doOnNext(written -> indexKey(key));
+    }
+
+    // 缓存条目在用户之间共享，不保存提问用户
+    private static Answer shared(Answer answer) {
+        return answer.getUserId() == null ? answer : new Answer(answer.getAnswer(), answer.getQuestion(), null);
+    }
+
+    private void indexKey(String key) {
+        if (nearDuplicateEnabled) {
+            nearDuplicateIndex.add(key);
+        }
+    }
+
+    // L1 命中直接返回，L2（Redis）基于 Lettuce 的 retrieve 不占用线程
+    private Mono<Answer> retrieve(Cache cache, String key) {
+        return Mono.defer(() -> {
+                    CompletableFuture<?> future = cache.retrieve(key);
+                    return future != null ? Mono.fromFuture(future) : Mono.empty();
+                })
+                .map(value -> value instanceof Cache.ValueWrapper wrapper ? wrapper.get() : value)
+                .ofType(Answer.class);
+    }
+}
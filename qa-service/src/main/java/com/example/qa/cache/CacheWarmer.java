@@ -0,0 +1,214 @@
+package com.example.qa.cache;
+
+import com.example.common.response.ApiResponse;
+import com.example.knowledge.dto.PageResult;
+import com.example.knowledge.entity.Knowledge;
+import com.example.qa.client.ReactiveHistoryClient;
+import com.example.qa.client.ReactiveKnowledgeClient;
+import com.example.qa.config.DeepSeekConnectionWarmer;
+import com.example.qa.entity.Answer;
+import com.example.qa.entity.PopularQuestion;
+import com.example.qa.metrics.QaMetrics;
+import com.example.qa.service.DeepSeekService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 答案缓存预热：启动时（注册到 Nacos 之前）和之后定时执行。
+// 1. 遍历知识库全部问答，缓存中没有的直接写入，不调用 DeepSeek；
+// 2. 取 history-service 统计的热门问题，已缓存的只回填 L1，未缓存的走知识库精确匹配 -> DeepSeek 并写入缓存。
+// 两步都按 parallelism 限制并发，DeepSeek 调用同样经过并发限制器和熔断器
+@Slf4j
+@Component
+public class CacheWarmer implements SmartLifecycle {
+
+    private static final String ENDPOINT = "warm-up";
+
+    private final ReactiveKnowledgeClient reactiveKnowledgeClient;
+    private final ReactiveHistoryClient reactiveHistoryClient;
+    private final AnswerCache answerCache;
+    private final DeepSeekService deepSeekService;
+
+    private final boolean enabled;
+    private final int parallelism;
+    private final Duration startupTimeout;
+    private final Duration interval;
+    private final int knowledgePageSize;
+    private final int popularLimit;
+    private final int popularDays;
+    private final boolean popularUseLlm;
+
+    private final AtomicBoolean warming = new AtomicBoolean();
+    private volatile Disposable schedule;
+    private volatile boolean running;
+
+    public CacheWarmer(ReactiveKnowledgeClient reactiveKnowledgeClient,
+                       ReactiveHistoryClient reactiveHistoryClient,
+                       AnswerCache answerCache,
+                       DeepSeekService deepSeekService,
+                       @Value("${qa.cache.warm-up.enabled:true}") boolean enabled,
+                       @Value("${qa.cache.warm-up.parallelism:4}") int parallelism,
+                       @Value("${qa.cache.warm-up.startup-timeout:60s}") Duration startupTimeout,
+                       @Value("${qa.cache.warm-up.interval:30m}") Duration interval,
+                       @Value("${qa.cache.warm-up.knowledge-page-size:200}") int knowledgePageSize,
+                       @Value("${qa.cache.warm-up.popular.limit:200}") int popularLimit,
+                       @Value("${qa.cache.warm-up.popular.days:7}") int popularDays,
+                       @Value("${qa.cache.warm-up.popular.use-llm:true}") boolean popularUseLlm) {
+        this.reactiveKnowledgeClient = reactiveKnowledgeClient;
+        this.reactiveHistoryClient = reactiveHistoryClient;
+        this.answerCache = answerCache;
+        this.deepSeekService = deepSeekService;
+        this.enabled = enabled;
+        this.parallelism = Math.max(1, parallelism);
+        this.startupTimeout = startupTimeout;
+        this.interval = interval;
+        this.knowledgePageSize = knowledgePageSize;
+        this.popularLimit = popularLimit;
+        this.popularDays = popularDays;
+        this.popularUseLlm = popularUseLlm;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (!enabled) {
+            return;
+        }
+        // 最多等待 startupTimeout，超时后预热继续在后台进行，不阻塞启动
+        CompletableFuture<Void> initial = warmUp().toFuture();
+        try {
+            initial.get(startupTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("缓存预热超过 {} 未完成，继续在后台进行", startupTimeout);
+        } catch (ExecutionException e) {
+            log.warn("缓存预热失败: {}", e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (!interval.isZero() && !interval.isNegative()) {
+            schedule = Flux.interval(interval, interval)
+                    .onBackpressureDrop()
+                    .concatMap(tick -> warmUp(), 1)
+                    .subscribe(null, e -> log.error("定时缓存预热任务异常终止: {}", e.getMessage(), e));
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        Disposable current = schedule;
+        if (current != null) {
+            current.dispose();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // 在 DeepSeek 连接预热之后、Web 服务器启动之前执行
+    @Override
+    public int getPhase() {
+        return DeepSeekConnectionWarmer.PHASE + 1;
+    }
+
+    // 同一时间只执行一次预热，上一次未结束时跳过
+    private Mono<Void> warmUp() {
+        return Mono.defer(() -> {
+                    if (!warming.compareAndSet(false, true)) {
+                        log.info("上一次缓存预热尚未结束，跳过本次");
+                        return Mono.empty();
+                    }
+                    long start = System.nanoTime();
+                    return warmKnowledge()
+                            .zipWhen(knowledge -> warmPopularQuestions())
+                            .doOnNext(result -> log.info("缓存预热完成：知识库问答 {} 条，新写入 {} 条；热门问题 {} 个，新写入 {} 个；耗时 {} ms",
+                                    result.getT1().total(), result.getT1().written(),
+                                    result.getT2().total(), result.getT2().written(),
+                                    (System.nanoTime() - start) / 1_000_000))
+                            .doFinally(signal -> warming.set(false))
+                            .then();
+                })
+                .contextWrite(QaMetrics.endpoint(ENDPOINT));
+    }
+
+    private Mono<Tally> warmKnowledge() {
+        return knowledgePages()
+                .flatMapIterable(entries -> entries)
+                .filter(knowledge -> StringUtils.hasText(knowledge.getQuestion()) && StringUtils.hasText(knowledge.getAnswer()))
+                .flatMap(knowledge -> answerCache.warm(knowledge.getQuestion(),
+                                        new Answer(knowledge.getAnswer(), knowledge.getQuestion(), null))
+                                .onErrorResume(e -> {
+                                    log.debug("预热知识库问答失败: {}, {}", knowledge.getQuestion(), e.getMessage());
+                                    return Mono.just(false);
+                                }),
+                        parallelism)
+                .reduce(Tally.EMPTY, Tally::add)
+                .onErrorResume(e -> {
+                    log.warn("读取知识库失败，跳过知识库预热: {}", e.getMessage());
+                    return Mono.just(Tally.EMPTY);
+                });
+    }
+
+    // 依次拉取 /knowledge/all 的各页，直到取完 total 条
+    private Flux<List<Knowledge>> knowledgePages() {
+        return knowledgePage(1)
+                .expand(page -> (long) page.getPage() * page.getSize() < page.getTotal()
+                        ? knowledgePage(page.getPage() + 1)
+                        : Mono.empty())
+                .map(PageResult::getData);
+    }
+
+    private Mono<PageResult<Knowledge>> knowledgePage(int page) {
+        return reactiveKnowledgeClient.getAllKnowledge(page, knowledgePageSize)
+                .mapNotNull(ApiResponse::getData)
+                .filter(result -> result.getData() != null && !result.getData().isEmpty());
+    }
+
+    private Mono<Tally> warmPopularQuestions() {
+        return reactiveHistoryClient.getPopularQuestions(popularLimit, popularDays)
+                .mapNotNull(ApiResponse::getData)
+                .flatMapIterable(questions -> questions)
+                .map(PopularQuestion::getQuestion)
+                .filter(StringUtils::hasText)
+                .flatMap(question -> answerCache.preload(question)
+                                .flatMap(present -> present
+                                        ? Mono.just(false)
+                                        : deepSeekService.warmAnswer(question, popularUseLlm).hasElement())
+                                .onErrorResume(e -> {
+                                    log.debug("预热热门问题失败: {}, {}", question, e.getMessage());
+                                    return Mono.just(false);
+                                }),
+                        parallelism)
+                .reduce(Tally.EMPTY, Tally::add)
+                .onErrorResume(e -> {
+                    log.warn("获取热门问题失败，跳过热门问题预热: {}", e.getMessage());
+                    return Mono.just(Tally.EMPTY);
+                });
+    }
+
+    // 处理条数与新写入缓存的条数
+    private record Tally(long total, long written) {
+
+        static final Tally EMPTY = new Tally(0, 0);
+
+        Tally add(boolean wrote) {
+            return new Tally(total + 1, wrote ? written + 1 : written);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.qa.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+// 两级缓存：L1 为进程内 Caffeine（W-TinyLFU 淘汰），L2 为 Redis。
+// 读取先查 L1，未命中再查 L2 并回填 L1；写入和删除同时作用于两级，并通知其他实例清理各自的 L1
+@Slf4j
+public class LayeredCache implements Cache {
+
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<Object, Object> local;
+    private final Cache remote;
+    private final LayeredCacheManager manager;
+
+    LayeredCache(String name,
+                 com.github.benmanes.caffeine.cache.Cache<Object, Object> local,
+                 Cache remote,
+                 LayeredCacheManager manager) {
+        this.name = name;
+        this.local = local;
+        this.remote = remote;
+        this.manager = manager;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remote.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        Object value = local.getIfPresent(key);
+        if (value != null) {
+            return new SimpleValueWrapper(value);
+        }
+        ValueWrapper wrapper = remote.get(key);
+        if (wrapper != null && wrapper.get() != null) {
+            local.put(key, wrapper.get());
+        }
+        return wrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("缓存值类型不匹配: 期望 " + type.getName() + ", 实际 " + value.getClass().getName());
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        Object value = local.getIfPresent(key);
+        if (value != null) {
+            return (T) value;
+        }
+        T loaded = remote.get(key, valueLoader);
+        if (loaded != null) {
+            local.put(key, loaded);
+        }
+        return loaded;
+    }
+
+    @Override
+    public CompletableFuture<?> retrieve(Object key) {
+        Object value = local.getIfPresent(key);
+        if (value != null) {
+            return CompletableFuture.completedFuture(value);
+        }
+        CompletableFuture<?> future = remote.retrieve(key);
+        if (future == null) {
+            return null;
+        }
+        return future.thenApply(result -> {
+            Object remoteValue = result instanceof ValueWrapper wrapper ? wrapper.get() : result;
+            if (remoteValue != null) {
+                local.put(key, remoteValue);
+            }
+            return remoteValue;
+        });
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> retrieve(Object key, Supplier<CompletableFuture<T>> valueLoader) {
+        Object value = local.getIfPresent(key);
+        if (value != null) {
+            return CompletableFuture.completedFuture((T) value);
+        }
+        return remote.retrieve(key, valueLoader).thenApply(result -> {
+            if (result != null) {
+                local.put(key, result);
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        remote.put(key, value);
+        if (value != null) {
+            local.put(key, value);
+        }
+        manager.publishEvict(name, key);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = remote.putIfAbsent(key, value);
+        if (existing == null && value != null) {
+            local.put(key, value);
+            manager.publishEvict(name, key);
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        remote.evict(key);
+        local.invalidate(key);
+        manager.publishEvict(name, key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean present = remote.evictIfPresent(key);
+        local.invalidate(key);
+        manager.publishEvict(name, key);
+        return present;
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+        local.invalidateAll();
+        manager.publishClear(name);
+    }
+
+    @Override
+    public boolean invalidate() {
+        boolean invalidated = remote.invalidate();
+        local.invalidateAll();
+        manager.publishClear(name);
+        return invalidated;
+    }
+
+    // 仅清理本实例的 L1，由其他实例发来的失效消息触发
+    void evictLocal(Object key) {
+        local.invalidate(key);
+    }
+
+    void clearLocal() {
+        local.invalidateAll();
+    }
+}
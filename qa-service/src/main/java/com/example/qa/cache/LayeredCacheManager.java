@@ -0,0 +1,134 @@
+package com.example.qa.cache;
+
+import com.example.qa.entity.Answer;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 两级缓存管理器：包装 Redis 缓存管理器，为每个缓存加一层有界的进程内 L1，
+// 并通过 Redis pub/sub 在实例间传播失效消息
+@Slf4j
+public class LayeredCacheManager implements CacheManager, MessageListener {
+
+    public static final String INVALIDATION_CHANNEL = "qa:cache:invalidation";
+
+    // 消息格式：实例ID \t 缓存名 \t 操作 \t key
+    private static final String OP_EVICT = "evict";
+    private static final String OP_CLEAR = "clear";
+
+    private final CacheManager remoteCacheManager;
+    private final StringRedisTemplate redisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final long maxWeightBytes;
+    private final Duration localTtl;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final Map<String, LayeredCache> caches = new ConcurrentHashMap<>();
+
+    public LayeredCacheManager(CacheManager remoteCacheManager,
+                               StringRedisTemplate redisTemplate,
+                               MeterRegistry meterRegistry,
+                               long maxWeightBytes,
+                               Duration localTtl) {
+        this.remoteCacheManager = remoteCacheManager;
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.maxWeightBytes = maxWeightBytes;
+        this.localTtl = localTtl;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    private LayeredCache createCache(String name) {
+        Cache remote = remoteCacheManager.getCache(name);
+        if (remote == null) {
+            throw new IllegalStateException("无法创建 L2 缓存: " + name);
+        }
+        // 按估算的内存占用限制容量，热点问答在 L1 中常驻，冷数据由 W-TinyLFU 淘汰
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> local = Caffeine.newBuilder()
+                .maximumWeight(maxWeightBytes)
+                .weigher(LayeredCacheManager::estimateWeight)
+                .expireAfterWrite(localTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, local, name + ".l1");
+        log.info("创建两级缓存: {}, L1 容量上限 {} 字节, L1 过期时间 {}", name, maxWeightBytes, localTtl);
+        return new LayeredCache(name, local, remote, this);
+    }
+
+    // 粗略估算缓存条目的内存占用（字节）
+    private static int estimateWeight(Object key, Object value) {
+        int weight = 64 + sizeOf(key);
+        if (value instanceof Answer answer) {
+            weight += 32 + sizeOf(answer.getAnswer()) + sizeOf(answer.getQuestion());
+        } else if (value instanceof CharSequence text) {
+            weight += text.length() * 2;
+        } else {
+            weight += 256;
+        }
+        return weight;
+    }
+
+    private static int sizeOf(Object text) {
+        return text instanceof CharSequence sequence ? 40 + sequence.length() * 2 : 16;
+    }
+
+    void publishEvict(String cacheName, Object key) {
+        publish(cacheName, OP_EVICT, String.valueOf(key));
+    }
+
+    void publishClear(String cacheName) {
+        publish(cacheName, OP_CLEAR, "");
+    }
+
+    private void publish(String cacheName, String op, String key) {
+        try {
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, String.join("\t", instanceId, cacheName, op, key));
+        } catch (Exception e) {
+            // 失效消息丢失时依赖 L1 过期时间兜底
+            log.warn("发布缓存失效消息失败: cache={}, key={}, error={}", cacheName, key, e.getMessage());
+        }
+    }
+
+    // 接收其他实例的失效消息，只清理本地 L1
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\t", 4);
+        if (parts.length < 4 || instanceId.equals(parts[0])) {
+            return;
+        }
+        LayeredCache cache = caches.get(parts[1]);
+        if (cache == null) {
+            return;
+        }
+        if (OP_CLEAR.equals(parts[2])) {
+            cache.clearLocal();
+            log.debug("收到缓存清空消息: {}", parts[1]);
+        } else {
+            cache.evictLocal(parts[3]);
+            log.debug("收到缓存失效消息: cache={}, key={}", parts[1], parts[3]);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.qa.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 近似重复问题索引：以字符二元组为特征做 MinHash 签名（32 个哈希），
+// 按 8 段 x 4 行做 LSH 分桶取候选，再用二元组 Jaccard 相似度精确复核。
+// 客服问题普遍只有十几个字，SimHash 在特征这么少时指纹抖动太大，MinHash 直接逼近 Jaccard，更稳定
+@Slf4j
+public class NearDuplicateIndex {
+
+    private static final int BANDS = 8;
+    private static final int ROWS = 4;
+    private static final long[] SEEDS = new long[BANDS * ROWS];
+
+    static {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < SEEDS.length; i++) {
+            seed = mix64(seed + i);
+            SEEDS[i] = seed;
+        }
+    }
+
+    private final double minSimilarity;
+    private final int minLength;
+
+    // 规范化问题 -> 分桶 key，容量有界，被淘汰时同步清理分桶
+    private final Cache<String, long[]> entries;
+    private final Map<Long, Set<String>> buckets = new ConcurrentHashMap<>();
+
+    public NearDuplicateIndex(double minSimilarity, int minLength, long maxEntries) {
+        this.minSimilarity = minSimilarity;
+        this.minLength = minLength;
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .removalListener((String key, long[] bandKeys, RemovalCause cause) -> {
+                    if (key != null && bandKeys != null && cause != RemovalCause.REPLACED) {
+                        removeFromBuckets(key, bandKeys);
+                    }
+                })
+                .build();
+    }
+
+    // 登记一个已缓存的规范化问题
+    public void add(String normalized) {
+        if (normalized.length() < minLength || entries.getIfPresent(normalized) != null) {
+            return;
+        }
+        long[] bandKeys = bandKeys(shingles(normalized));
+        entries.put(normalized, bandKeys);
+        for (long bandKey : bandKeys) {
+            buckets.computeIfAbsent(bandKey, k -> ConcurrentHashMap.newKeySet()).add(normalized);
+        }
+    }
+
+    // 查找与给定问题最相近的已登记问题，没有达到相似度阈值的返回 null
+    public String findSimilar(String normalized) {
+        if (normalized.length() < minLength) {
+            return null;
+        }
+        Set<Integer> queryShingles = shingles(normalized);
+        Set<String> candidates = new HashSet<>();
+        for (long bandKey : bandKeys(queryShingles)) {
+            Set<String> bucket = buckets.get(bandKey);
+            if (bucket != null) {
+                candidates.addAll(bucket);
+            }
+        }
+        candidates.remove(normalized);
+
+        String best = null;
+        double bestSimilarity = minSimilarity;
+        for (String candidate : candidates) {
+            double similarity = jaccard(queryShingles, shingles(candidate));
+            if (similarity >= bestSimilarity) {
+                bestSimilarity = similarity;
+                best = candidate;
+            }
+        }
+        if (best != null) {
+            log.debug("近似问题命中: [{}] -> [{}], 相似度 {}", normalized, best, bestSimilarity);
+        }
+        return best;
+    }
+
+    public long size() {
+        return entries.estimatedSize();
+    }
+
+    private void removeFromBuckets(String normalized, long[] bandKeys) {
+        for (long bandKey : bandKeys) {
+            Set<String> bucket = buckets.get(bandKey);
+            if (bucket != null) {
+                bucket.remove(normalized);
+                if (bucket.isEmpty()) {
+                    buckets.remove(bandKey, bucket);
+                }
+            }
+        }
+    }
+
+    // 计算 MinHash 签名并按段折叠成分桶 key，段序号混入 key 避免不同段互相碰撞
+    private static long[] bandKeys(Set<Integer> shingles) {
+        long[] bandKeys = new long[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            long bandKey = band;
+            for (int row = 0; row < ROWS; row++) {
+                long seed = SEEDS[band * ROWS + row];
+                long min = Long.MAX_VALUE;
+                for (int shingle : shingles) {
+                    min = Math.min(min, mix64(shingle ^ seed));
+                }
+                bandKey = mix64(bandKey * 31 + min);
+            }
+            bandKeys[band] = bandKey;
+        }
+        return bandKeys;
+    }
+
+    // 相邻两个字符组成一个特征，单字符文本退化为单字特征
+    private static Set<Integer> shingles(String text) {
+        Set<Integer> result = new HashSet<>();
+        if (text.length() == 1) {
+            result.add((int) text.charAt(0));
+            return result;
+        }
+        for (int i = 0; i + 1 < text.length(); i++) {
+            result.add((text.charAt(i) << 16) | text.charAt(i + 1));
+        }
+        return result;
+    }
+
+    private static double jaccard(Set<Integer> a, Set<Integer> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        int intersection = 0;
+        for (Integer item : a) {
+            if (b.contains(item)) {
+                intersection++;
+            }
+        }
+        return (double) intersection / (a.size() + b.size() - intersection);
+    }
+
+    // SplitMix64 最终混合函数
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
@@ -0,0 +1,30 @@
+// qa-service/src/main/java/com/example/qa/client/ReactiveHistoryClient.java
+package com.example.qa.client;
+
+import com.example.common.response.ApiResponse;
+import com.example.qa.entity.Answer;
+import com.example.qa.entity.PopularQuestion;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.service.annotation.GetExchange;
+import org.springframework.web.service.annotation.HttpExchange;
+import org.springframework.web.service.annotation.PostExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+// 非阻塞版本的历史记录客户端（实例由 ServiceClientConfig 创建）
+@HttpExchange("/history")
+public interface ReactiveHistoryClient {
+
+    @PostExchange("/save")
+    Mono<ApiResponse<Void>> saveHistory(@RequestBody Answer answer);
+
+    // 批量保存，由 HistoryWriteBehindQueue 调用
+    @PostExchange("/batch")
+    Mono<ApiResponse<Integer>> saveHistoryBatch(@RequestBody List<Answer> answers);
+
+    // 最近 days 天内提问次数最多的问题，由 CacheWarmer 调用
+    @GetExchange("/popular")
+    Mono<ApiResponse<List<PopularQuestion>>> getPopularQuestions(@RequestParam int limit, @RequestParam int days);
+}
@@ -0,0 +1,35 @@
+// qa-service/src/main/java/com/example/qa/client/ReactiveKnowledgeClient.java
+package com.example.qa.client;
+
+import com.example.common.response.ApiResponse;
+import com.example.knowledge.dto.PageResult;
+import com.example.knowledge.dto.ScoredKnowledge;
+import com.example.knowledge.entity.Knowledge;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.service.annotation.GetExchange;
+import org.springframework.web.service.annotation.HttpExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+// 非阻塞版本的知识库客户端，供响应式问答链路使用（实例由 ServiceClientConfig 创建）
+@HttpExchange("/knowledge")
+public interface ReactiveKnowledgeClient {
+
+    // 精确匹配问题
+    @GetExchange("/exact")
+    Mono<ApiResponse<Knowledge>> findByQuestion(@RequestParam String question);
+
+    // 搜索知识库，与 knowledge-service 的 GET /knowledge/search 保持一致，按相关性返回前 limit 条
+    @GetExchange("/search")
+    Mono<ApiResponse<List<ScoredKnowledge>>> searchKnowledge(@RequestParam String query, @RequestParam int limit);
+
+    // 相似问题检索，返回问题向量相似度不低于 threshold 的前 limit 条，score 为相似度
+    @GetExchange("/similar")
+    Mono<ApiResponse<List<ScoredKnowledge>>> findSimilar(@RequestParam String question, @RequestParam int limit,
+                                                         @RequestParam double threshold);
+
+    // 分页获取全部问答，由 CacheWarmer 遍历精确匹配集合
+    @GetExchange("/all")
+    Mono<ApiResponse<PageResult<Knowledge>>> getAllKnowledge(@RequestParam int page, @RequestParam int size);
+}
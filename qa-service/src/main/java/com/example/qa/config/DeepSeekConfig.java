@@ -1,9 +1,14 @@
 package com.example.qa.config;
 
+import io.netty.channel.ChannelOption;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 import java.time.Duration;
 
@@ -16,10 +21,43 @@ public class DeepSeekConfig {
     @Value("${deepseek.api.url}")
     private String baseUrl;
 
+    // DeepSeek 专用连接池，不与其他 WebClient 共享；开启后连接池指标以 reactor.netty.connection.provider.* 上报
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider deepSeekConnectionProvider(
+            @Value("${deepseek.http.max-connections:200}") int maxConnections,
+            @Value("${deepseek.http.pending-acquire-max-count:500}") int pendingAcquireMaxCount,
+            @Value("${deepseek.http.pending-acquire-timeout:5s}") Duration pendingAcquireTimeout,
+            @Value("${deepseek.http.max-idle-time:50s}") Duration maxIdleTime,
+            @Value("${deepseek.http.max-life-time:10m}") Duration maxLifeTime,
+            @Value("${deepseek.http.evict-interval:30s}") Duration evictInterval) {
+        return ConnectionProvider.builder("deepseek")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(evictInterval)
+                // 优先复用最近使用过的连接，空闲连接更容易被及时回收
+                .lifo()
+                .metrics(true)
+                .build();
+    }
+
     @Bean
-    public WebClient webClient() {
+    public WebClient webClient(ConnectionProvider deepSeekConnectionProvider,
+                               @Value("${deepseek.http.connect-timeout:5s}") Duration connectTimeout,
+                               @Value("${deepseek.http.http2:true}") boolean http2) {
+        HttpClient httpClient = HttpClient.create(deepSeekConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true);
+        // HTTP/2 需要 TLS + ALPN 协商，服务端不支持时回退到 HTTP/1.1；明文地址（如本地替身）只用 HTTP/1.1
+        if (http2 && baseUrl.startsWith("https://")) {
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure();
+        }
+
         return WebClient.builder()
                 .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
                 .defaultHeader("Content-Type", "application/json")
                 .defaultHeader("User-Agent", "qa-service/1.0")
                 .codecs(configurer -> {
@@ -27,4 +65,4 @@ public class DeepSeekConfig {
                 })
                 .build();
     }
-}
\ No newline at end of file
+}
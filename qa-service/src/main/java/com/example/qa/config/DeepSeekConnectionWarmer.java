@@ -0,0 +1,114 @@
+package com.example.qa.config;
+
+import io.netty.handler.codec.http.HttpVersion;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClientRequest;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+// 启动预热：在 Web 服务器启动（随后注册到 Nacos）之前，并发向 DeepSeek 发起几个轻量请求，
+// 提前完成 DNS、TCP 和 TLS 握手，让连接留在池中，第一批真实请求不必再建连。
+// 先发一个请求确认协商到的协议：HTTP/2 下所有请求复用同一条连接的多个流，并发请求不会打开更多连接，只预热这一条；
+// HTTP/1.1 下再并发发起 connections 个请求，每个请求各占一条连接。预热失败只记录日志，不影响启动
+@Slf4j
+@Component
+public class DeepSeekConnectionWarmer implements SmartLifecycle {
+
+    // 早于 Web 服务器的启动阶段（SmartLifecycle.DEFAULT_PHASE - 2048），Nacos 在服务器启动后才注册实例
+    public static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+    private final WebClient webClient;
+    private final boolean enabled;
+    private final int connections;
+    private final String path;
+    private final Duration timeout;
+
+    @Value("${deepseek.api.key}")
+    private String apiKey;
+
+    private volatile boolean running;
+
+    public DeepSeekConnectionWarmer(WebClient webClient,
+                                    @Value("${deepseek.http.warm-up.enabled:true}") boolean enabled,
+                                    @Value("${deepseek.http.warm-up.connections:4}") int connections,
+                                    @Value("${deepseek.http.warm-up.path:/models}") String path,
+                                    @Value("${deepseek.http.warm-up.timeout:10s}") Duration timeout) {
+        this.webClient = webClient;
+        this.enabled = enabled;
+        this.connections = connections;
+        this.path = path;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (!enabled || connections <= 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        AtomicReference<HttpVersion> protocol = new AtomicReference<>();
+        // 第一个请求建立的连接空闲后回到池中，随后的并发请求中有一个会复用它，总数仍为 connections
+        Long opened = request(protocol)
+                .map(status -> 1L)
+                .defaultIfEmpty(0L)
+                .flatMap(first -> isHttp2(protocol.get())
+                        ? Mono.just(first)
+                        : Flux.range(0, connections).flatMap(i -> request(protocol), connections).count())
+                .timeout(timeout)
+                .onErrorReturn(0L)
+                .block();
+        if (isHttp2(protocol.get())) {
+            log.info("DeepSeek 连接预热完成，协商为 HTTP/2，并发请求复用同一条连接，只预热 1 条，成功 {}/1，耗时 {} ms",
+                    opened, (System.nanoTime() - start) / 1_000_000);
+        } else {
+            log.info("DeepSeek 连接预热完成，协议 {}，成功 {}/{}，耗时 {} ms", protocol.get(), opened, connections,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    // 任何 HTTP 响应都说明连接已建立；protocol 记录发送请求时连接上协商到的协议
+    private Mono<HttpStatusCode> request(AtomicReference<HttpVersion> protocol) {
+        return webClient.get()
+                .uri(path)
+                .header("Authorization", "Bearer " + apiKey)
+                .httpRequest(request -> {
+                    if (request.getNativeRequest() instanceof HttpClientRequest nativeRequest) {
+                        protocol.set(nativeRequest.version());
+                    }
+                })
+                .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode()))
+                .doOnNext(status -> log.debug("DeepSeek 预热请求返回: {}", status))
+                .onErrorResume(e -> {
+                    log.warn("DeepSeek 连接预热失败: {}", e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private static boolean isHttp2(HttpVersion version) {
+        return version != null && version.majorVersion() == 2;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+}
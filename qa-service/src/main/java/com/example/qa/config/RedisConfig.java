@@ -1,11 +1,18 @@
 package com.example.qa.config;
 
+import com.example.qa.cache.LayeredCacheManager;
+import com.example.qa.session.ConversationSessionStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
@@ -16,8 +23,18 @@ import java.time.Duration;
 @EnableCaching
 public class RedisConfig {
 
+    // L1 进程内缓存的容量上限（按估算字节数）
+    @Value("${qa.cache.l1.max-weight-bytes:67108864}")
+    private long localMaxWeightBytes;
+
+    // L1 过期时间，短于 Redis 的 1 小时，失效消息丢失时作为兜底
+    @Value("${qa.cache.l1.expire-after-write:10m}")
+    private Duration localTtl;
+
     @Bean
-    public RedisCacheManager cacheManager(RedisConnectionFactory connectionFactory) {
+    public LayeredCacheManager cacheManager(RedisConnectionFactory connectionFactory,
+                                            StringRedisTemplate stringRedisTemplate,
+                                            MeterRegistry meterRegistry) {
         RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
                 .entryTtl(Duration.ofHours(1))
                 .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer()))
@@ -25,9 +42,26 @@ public class RedisConfig {
                 .disableCachingNullValues();
 
         // Redis automatically uses LFU for eviction when maxmemory is reached and policy is volatile-lfu
-        return RedisCacheManager.builder(connectionFactory)
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(connectionFactory)
                 .cacheDefaults(config)
                 .transactionAware() // 支持事务，但对于查询缓存不是必需的
                 .build();
+        redisCacheManager.initializeCaches();
+
+        // L1（Caffeine）+ L2（Redis）两级缓存
+        return new LayeredCacheManager(redisCacheManager, stringRedisTemplate, meterRegistry,
+                localMaxWeightBytes, localTtl);
+    }
+
+    // 订阅缓存失效频道，其他实例写入或删除缓存时清理本地 L1；会话近缓存同理
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                            LayeredCacheManager cacheManager,
+                                                                            ConversationSessionStore sessionStore) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(cacheManager, new ChannelTopic(LayeredCacheManager.INVALIDATION_CHANNEL));
+        container.addMessageListener(sessionStore, new ChannelTopic(ConversationSessionStore.INVALIDATION_CHANNEL));
+        return container;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,41 @@
+package com.example.qa.config;
+
+import com.example.qa.client.ReactiveHistoryClient;
+import com.example.qa.client.ReactiveKnowledgeClient;
+import org.springframework.cloud.client.loadbalancer.reactive.LoadBalancedExchangeFilterFunction;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.support.WebClientAdapter;
+import org.springframework.web.service.invoker.HttpServiceProxyFactory;
+
+// 基于 WebClient + 负载均衡的响应式服务间调用客户端，
+// 与 Feign 客户端调用相同的服务名，但不会占用请求线程
+@Configuration
+public class ServiceClientConfig {
+
+    @Bean
+    public ReactiveKnowledgeClient reactiveKnowledgeClient(WebClient.Builder builder,
+                                                           LoadBalancedExchangeFilterFunction loadBalancer) {
+        return createClient(builder, loadBalancer, "http://knowledge-service", ReactiveKnowledgeClient.class);
+    }
+
+    @Bean
+    public ReactiveHistoryClient reactiveHistoryClient(WebClient.Builder builder,
+                                                       LoadBalancedExchangeFilterFunction loadBalancer) {
+        return createClient(builder, loadBalancer, "http://history-service", ReactiveHistoryClient.class);
+    }
+
+    private <T> T createClient(WebClient.Builder builder,
+                               LoadBalancedExchangeFilterFunction loadBalancer,
+                               String baseUrl,
+                               Class<T> clientType) {
+        WebClient webClient = builder.clone()
+                .baseUrl(baseUrl)
+                .filter(loadBalancer)
+                .build();
+        return HttpServiceProxyFactory.builderFor(WebClientAdapter.create(webClient))
+                .build()
+                .createClient(clientType);
+    }
+}
@@ -2,16 +2,21 @@
 package com.example.qa.controller;
 
 import com.example.common.response.ApiResponse;
-import com.example.qa.client.HistoryServiceClient;
-import com.example.qa.client.KnowledgeServiceClient;
 import com.example.qa.entity.Answer;
 import com.example.qa.entity.Question;
+import com.example.qa.history.HistoryWriteBehindQueue;
+import com.example.qa.llm.ChatDelta;
+import com.example.qa.llm.SseFrames;
+import com.example.qa.llm.StreamAnswerAggregator;
+import com.example.qa.metrics.QaMetrics;
 import com.example.qa.service.DeepSeekService;
+import com.example.qa.session.ConversationSessionStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.HashMap;
 import java.util.List;
@@ -24,12 +29,11 @@ import java.util.Map;
 public class QaController {
 
     private final DeepSeekService deepSeekService;
-    private final KnowledgeServiceClient knowledgeServiceClient;
-    private final HistoryServiceClient historyServiceClient;
+    private final HistoryWriteBehindQueue historyWriteBehindQueue;
 
-    // 修改后的聊天接口 - 支持多轮对话
+    // 修改后的聊天接口 - 支持多轮对话，响应式返回，不占用 Servlet 线程等待 DeepSeek
     @PostMapping("/message")
-    public Map<String, Object> chatMessage(@RequestBody Map<String, Object> request) {
+    public Mono<Map<String, Object>> chatMessage(@RequestBody Map<String, Object> request) {
         Map<String, Object> response = new HashMap<>();
 
         try {
@@ -44,8 +48,12 @@ public class QaController {
                 history = (List<Map<String, String>>) request.get("history");
             }
 
-            log.info("解析出的问题: [{}], 用户ID对象: [{}], 历史对话数量: {}",
-                    questionText, userIdObj, history != null ? history.size() : 0);
+            // 会话 id：客户端只需带上会话 id，历史由服务端会话存储维护
+            Object sessionIdObj = request.get("sessionId");
+            String sessionId = sessionIdObj != null ? sessionIdObj.toString() : null;
+
+            log.info("解析出的问题: [{}], 用户ID对象: [{}], 会话ID: [{}], 历史对话数量: {}",
+                    questionText, userIdObj, sessionId, history != null ? history.size() : 0);
 
             if (questionText == null || questionText.trim().isEmpty()) {
                 log.warn("问题内容为空，使用默认问题");
@@ -62,59 +70,58 @@ public class QaController {
 
             log.info("最终处理的问题: [{}], 用户ID: [{}]", questionText, userId);
 
-            try {
-                log.info("开始调用 DeepSeek 服务...");
-                Answer answer;
-
-                // 根据是否有历史对话选择不同的方法
-                if (history == null || history.isEmpty()) {
-                    log.info("无历史对话，使用普通方法（支持Redis缓存）");
-                    answer = deepSeekService.getAnswer(questionText, userId, List.of());
-                } else {
-                    log.info("存在历史对话，使用多轮对话方法");
-                    answer = deepSeekService.getAnswerWithHistory(questionText, userId, history);
-                }
+            final String finalQuestion = questionText;
+            final Long finalUserId = userId;
 
-                log.info("DeepSeek 服务返回: {}", answer);
+            log.info("开始调用 DeepSeek 服务...");
+            Mono<Answer> answerMono;
 
-                String finalAnswer;
-                if (answer != null && answer.getAnswer() != null && !answer.getAnswer().trim().isEmpty()) {
-                    finalAnswer = answer.getAnswer();
-                    log.info("使用 DeepSeek 回答: {}", finalAnswer);
-                } else {
-                    finalAnswer = "感谢您的提问：" + questionText + "。这是一个测试回答。";
-                    log.info("DeepSeek 返回空结果，使用备用回答: {}", finalAnswer);
+            // 请求体自带历史时沿用原有多轮对话方法（兼容旧客户端），否则使用服务端会话
+            if (history != null && !history.isEmpty()) {
+                log.info("存在历史对话，使用多轮对话方法");
+                answerMono = deepSeekService.getAnswerWithHistoryAsync(finalQuestion, finalUserId, history);
+            } else {
+                if (!ConversationSessionStore.isValidId(sessionId)) {
+                    sessionId = ConversationSessionStore.newSessionId();
+                    log.info("未提供有效会话ID，创建新会话: {}", sessionId);
                 }
+                response.put("sessionId", sessionId);
+                answerMono = deepSeekService.getAnswerInSessionAsync(finalQuestion, finalUserId, sessionId);
+            }
 
-                response.put("message", finalAnswer);
-                response.put("success", true);
-
-                // 尝试保存历史记录（异步，不影响响应）
-                try {
-                    if (answer != null) {
-                        answer.setQuestion(questionText);
-                        answer.setAnswer(finalAnswer);
-                        historyServiceClient.saveHistory(answer);
-                        log.info("历史记录保存成功");
-                    }
-                } catch (Exception e) {
-                    log.warn("保存历史记录失败: {}", e.getMessage());
-                }
+            return answerMono
+                    .map(answer -> {
+                        log.info("DeepSeek 服务返回: {}", answer);
+
+                        String finalAnswer;
+                        if (answer.getAnswer() != null && !answer.getAnswer().trim().isEmpty()) {
+                            finalAnswer = answer.getAnswer();
+                            log.info("使用 DeepSeek 回答: {}", finalAnswer);
+                        } else {
+                            finalAnswer = "感谢您的提问：" + finalQuestion + "。这是一个测试回答。";
+                            log.info("DeepSeek 返回空结果，使用备用回答: {}", finalAnswer);
+                        }
 
-                log.info("聊天接口成功返回: {}", response);
-                return response;
+                        response.put("message", finalAnswer);
+                        response.put("success", true);
 
-            } catch (Exception e) {
-                log.error("调用 DeepSeek 服务失败: {}", e.getMessage(), e);
+                        // 保存历史记录进入异步写入队列，不影响响应；用户以本次请求为准，缓存中的答案不带用户
+                        historyWriteBehindQueue.submit(new Answer(finalAnswer, finalQuestion, finalUserId));
+                        return response;
+                    })
+                    .doOnNext(result -> log.info("聊天接口成功返回: {}", result))
+                    .contextWrite(QaMetrics.endpoint("/qa/message"))
+                    .onErrorResume(e -> {
+                        log.error("调用 DeepSeek 服务失败: {}", e.getMessage(), e);
 
-                String fallbackAnswer = "您好！感谢您的提问：" + questionText + "。由于服务暂时繁忙，这是一个临时回答。请稍后再试。";
+                        String fallbackAnswer = "您好！感谢您的提问：" + finalQuestion + "。由于服务暂时繁忙，这是一个临时回答。请稍后再试。";
 
-                response.put("message", fallbackAnswer);
-                response.put("success", true);
+                        response.put("message", fallbackAnswer);
+                        response.put("success", true);
 
-                log.info("使用备用回答: {}", fallbackAnswer);
-                return response;
-            }
+                        log.info("使用备用回答: {}", fallbackAnswer);
+                        return Mono.just(response);
+                    });
 
         } catch (Exception e) {
             log.error("聊天接口处理错误: {}", e.getMessage(), e);
@@ -123,97 +130,72 @@ public class QaController {
             response.put("success", false);
             response.put("error", e.getMessage());
 
-            return response;
+            return Mono.just(response);
         }
     }
 
-    // 原有的 ask 接口保持不变
+    // ask 接口 - 响应式返回，知识库检索与 DeepSeek 调用按 qa.ask.orchestration 串行或并行编排，历史记录异步写入
     @PostMapping("/ask")
-    public ApiResponse<Answer> ask(@RequestBody Question question) {
-        try {
-            log.info("收到问题: {}, 用户ID: {}", question.getContent(), question.getUserId());
-
-            List<String> context = List.of();
-
-            try {
-                log.info("尝试调用知识库服务...");
-                ApiResponse<List<String>> knowledgeResponse = knowledgeServiceClient.searchKnowledge(question.getContent());
-
-                if (knowledgeResponse != null && knowledgeResponse.getData() != null) {
-                    context = knowledgeResponse.getData();
-                    log.info("知识库返回 {} 条相关信息", context.size());
-                } else {
-                    log.warn("知识库服务返回空结果");
-                }
-            } catch (Exception e) {
-                log.warn("知识库服务调用失败，使用空上下文继续处理: {}", e.getMessage());
-            }
-
-            Answer answer = deepSeekService.getAnswer(question.getContent(), question.getUserId(), context);
-
-            if (answer.getQuestion() == null || answer.getQuestion().trim().isEmpty()) {
-                answer.setQuestion(question.getContent());
-            }
-            if (answer.getAnswer() == null || answer.getAnswer().trim().isEmpty()) {
-                answer.setAnswer("抱歉，暂时无法提供回答。");
-            }
-
-            try {
-                log.info("保存历史记录: question={}, answer={}", answer.getQuestion(), answer.getAnswer());
-                historyServiceClient.saveHistory(answer);
-                log.info("历史记录保存成功");
-            } catch (Exception e) {
-                log.warn("保存历史记录失败，但不影响回答: {}", e.getMessage());
-            }
-
-            return ApiResponse.success(answer);
-
-        } catch (Exception e) {
-            log.error("处理问题时发生错误: {}", e.getMessage(), e);
-
-            Answer fallbackAnswer = new Answer(
-                    "抱歉，服务暂时不可用。请稍后再试。",
-                    question.getContent(),
-                    question.getUserId()
-            );
-
-            return ApiResponse.success(fallbackAnswer);
-        }
+    public Mono<ApiResponse<Answer>> ask(@RequestBody Question question) {
+        log.info("收到问题: {}, 用户ID: {}", question.getContent(), question.getUserId());
+
+        return deepSeekService.askAsync(question.getContent(), question.getUserId(), deepSeekService.searchContext(question.getContent()))
+                .map(cached -> {
+                    // 缓存按规范化问题和近似问题命中，可能是其他用户提出的另一个问题，只取答案内容
+                    Answer answer = new Answer(cached.getAnswer(), question.getContent(), question.getUserId());
+                    if (answer.getAnswer() == null || answer.getAnswer().trim().isEmpty()) {
+                        answer.setAnswer("抱歉，暂时无法提供回答。");
+                    }
+                    return answer;
+                })
+                .map(answer -> {
+                    log.info("保存历史记录: question={}, answer={}", answer.getQuestion(), answer.getAnswer());
+                    historyWriteBehindQueue.submit(answer);
+                    return ApiResponse.success(answer);
+                })
+                .contextWrite(QaMetrics.endpoint("/qa/ask"))
+                .onErrorResume(e -> {
+                    log.error("处理问题时发生错误: {}", e.getMessage(), e);
+
+                    Answer fallbackAnswer = new Answer(
+                            "抱歉，服务暂时不可用。请稍后再试。",
+                            question.getContent(),
+                            question.getUserId()
+                    );
+
+                    return Mono.just(ApiResponse.success(fallbackAnswer));
+                });
     }
 
+    // 流式接口：上游 SSE 只订阅一次，同时写给客户端和历史聚合
     @PostMapping(value = "/ask/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public Flux<String> askStream(@RequestBody Question question) {
-        try {
-            List<String> context = List.of();
-
-            try {
-                ApiResponse<List<String>> knowledgeResponse = knowledgeServiceClient.searchKnowledge(question.getContent());
-                if (knowledgeResponse != null && knowledgeResponse.getData() != null) {
-                    context = knowledgeResponse.getData();
-                }
-            } catch (Exception e) {
-                log.warn("流式接口知识库服务调用失败: {}", e.getMessage());
-            }
-
-            Flux<String> answerStream = deepSeekService.getAnswerStream(question.getContent(), question.getUserId(), context);
+        return deepSeekService.searchContext(question.getContent())
+                .flatMapMany(context -> deepSeekService.getAnswerStream(question.getContent(), question.getUserId(), context))
+                .transform(deltas -> teeToHistory(deltas, question))
+                .map(SseFrames::of)
+                .concatWith(Flux.just(SseFrames.DONE))
+                .contextWrite(QaMetrics.endpoint("/qa/ask/stream"))
+                .onErrorResume(e -> {
+                    log.error("处理流式问题时发生错误: {}", e.getMessage(), e);
+                    return Flux.just(SseFrames.error("服务暂时不可用，请稍后再试"));
+                });
+    }
 
-            answerStream.reduce("", (acc, part) -> acc + part)
-                    .doOnNext(fullAnswer -> {
-                        try {
-                            Answer answer = new Answer(fullAnswer, question.getContent(), question.getUserId());
-                            historyServiceClient.saveHistory(answer);
-                            log.info("流式回答历史记录保存成功");
-                        } catch (Exception e) {
-                            log.warn("保存流式回答历史记录失败: {}", e.getMessage());
+    // 在唯一的订阅上旁路聚合增量 content，流正常结束时保存一次历史记录
+    private Flux<ChatDelta> teeToHistory(Flux<ChatDelta> deltas, Question question) {
+        return Flux.defer(() -> {
+            StreamAnswerAggregator aggregator = new StreamAnswerAggregator();
+            return deltas
+                    .doOnNext(aggregator::accept)
+                    .doOnComplete(() -> {
+                        if (aggregator.isFailed() || aggregator.isEmpty()) {
+                            log.warn("流式回答失败或为空，不保存历史记录");
+                            return;
                         }
-                    })
-                    .subscribe();
-
-            return answerStream;
-
-        } catch (Exception e) {
-            log.error("处理流式问题时发生错误: {}", e.getMessage(), e);
-            return Flux.just("data: {\"error\": \"服务暂时不可用，请稍后再试\"}\n\n");
-        }
+                        Answer answer = new Answer(aggregator.content(), question.getContent(), question.getUserId());
+                        historyWriteBehindQueue.submit(answer);
+                    });
+        });
     }
-}
\ No newline at end of file
+}
@@ -1,16 +1,27 @@
 package com.example.qa.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 @JsonIgnoreProperties(ignoreUnknown = true)  // 忽略未知字段，解决Redis缓存兼容性问题
 public class Answer {
     private String answer;      // 答案内容
     private String question;    // 问题内容
     private Long userId;        // 用户ID
+
+    // 降级或兜底生成的答案，只在本进程内使用，不序列化、不写入会话
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private transient boolean degraded;
+
+    public Answer(String answer, String question, Long userId) {
+        this.answer = answer;
+        this.question = question;
+        this.userId = userId;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package com.example.qa.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// history-service 统计的热门问题
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class PopularQuestion {
+    private String question;    // 问题原文
+    private long count;         // 统计窗口内的提问次数
+}
@@ -0,0 +1,469 @@
+package com.example.qa.history;
+
+import com.example.qa.client.ReactiveHistoryClient;
+import com.example.qa.entity.Answer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 历史记录异步写入队列：请求线程只做一次 offer，后台按条数或时间批量调用 /history/batch。
+// 队列有界，满时按 OverflowPolicy 丢弃或溢出到本地文件；刷写失败的批次重试后同样进入溢出文件。
+// 批次被 history-service 拒绝（4xx）时二分拆批找出问题记录，单条记录被拒绝超过 maxRowAttempts 次写入死信文件，不再回放。
+// 写溢出文件、回放都在刷写线程上执行，请求线程和 Netty 线程只把记录放进内存中的待溢出队列
+@Component
+@Slf4j
+public class HistoryWriteBehindQueue {
+
+    private final ReactiveHistoryClient reactiveHistoryClient;
+    private final ObjectMapper objectMapper;
+    private final BlockingQueue<Answer> queue;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final OverflowPolicy overflowPolicy;
+    private final Path spillFile;
+    // 回放中的溢出文件及已回放到的字节位置，按批读取，重启后从记录的位置继续
+    private final Path replayFile;
+    private final Path replayOffsetFile;
+    private final Path deadLetterFile;
+    private final int maxRowAttempts;
+    private final int capacity;
+    private final Duration shutdownTimeout;
+
+    // 达到批量大小时唤醒刷写，多次唤醒合并为一次
+    private final Sinks.Many<Boolean> flushSignal = Sinks.many().multicast().directBestEffort();
+    private final Scheduler flushScheduler = Schedulers.newSingle("history-write-behind");
+    private final Object spillLock = new Object();
+    private final AtomicLong spilledRecords = new AtomicLong();
+    // 等待刷写线程写入溢出文件的记录，容量与队列相同，再满时丢弃
+    private final Queue<Answer> pendingSpill = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingSpillSize = new AtomicInteger();
+    private final AtomicBoolean spillScheduled = new AtomicBoolean();
+    // 单条记录被拒绝的次数，跨回放累计；按值比较，同一条记录回放后仍能对应上
+    private final Cache<Answer, Integer> rowFailures;
+
+    private final Counter enqueued;
+    private final Counter droppedNewest;
+    private final Counter droppedOldest;
+    private final Counter spilled;
+    private final Counter flushedRecords;
+    private final Counter failedBatches;
+    private final Counter deadLettered;
+    private final DistributionSummary batchSizes;
+
+    private Disposable flusher;
+
+    public HistoryWriteBehindQueue(ReactiveHistoryClient reactiveHistoryClient,
+                                   ObjectMapper objectMapper,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${qa.history.write-behind.capacity:10000}") int capacity,
+                                   @Value("${qa.history.write-behind.batch-size:200}") int batchSize,
+                                   @Value("${qa.history.write-behind.flush-interval:1s}") Duration flushInterval,
+                                   @Value("${qa.history.write-behind.overflow-policy:SPILL}") OverflowPolicy overflowPolicy,
+                                   @Value("${qa.history.write-behind.spill-file:data/history-spill.jsonl}") String spillFile,
+                                   @Value("${qa.history.write-behind.dead-letter-file:data/history-dead-letter.jsonl}") String deadLetterFile,
+                                   @Value("${qa.history.write-behind.max-row-attempts:5}") int maxRowAttempts,
+                                   @Value("${qa.history.write-behind.shutdown-timeout:10s}") Duration shutdownTimeout) {
+        this.reactiveHistoryClient = reactiveHistoryClient;
+        this.objectMapper = objectMapper;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.overflowPolicy = overflowPolicy;
+        this.spillFile = Paths.get(spillFile);
+        this.replayFile = this.spillFile.resolveSibling(this.spillFile.getFileName() + ".replay");
+        this.replayOffsetFile = this.spillFile.resolveSibling(this.spillFile.getFileName() + ".replay.offset");
+        this.deadLetterFile = Paths.get(deadLetterFile);
+        this.maxRowAttempts = maxRowAttempts;
+        this.capacity = capacity;
+        this.shutdownTimeout = shutdownTimeout;
+        this.rowFailures = Caffeine.newBuilder().maximumSize(capacity).build();
+
+        Gauge.builder("qa.history.queue.depth", queue, BlockingQueue::size)
+                .description("历史记录写入队列当前长度")
+                .register(meterRegistry);
+        Gauge.builder("qa.history.queue.capacity", queue, q -> q.size() + q.remainingCapacity())
+                .register(meterRegistry);
+        Gauge.builder("qa.history.queue.spilled.pending", spilledRecords, AtomicLong::get)
+                .description("溢出文件中等待回放的记录数")
+                .register(meterRegistry);
+        this.enqueued = Counter.builder("qa.history.queue.enqueued").register(meterRegistry);
+        this.droppedNewest = Counter.builder("qa.history.queue.dropped").tag("policy", "drop-newest").register(meterRegistry);
+        this.droppedOldest = Counter.builder("qa.history.queue.dropped").tag("policy", "drop-oldest").register(meterRegistry);
+        this.spilled = Counter.builder("qa.history.queue.spilled").register(meterRegistry);
+        this.flushedRecords = Counter.builder("qa.history.flush.records").register(meterRegistry);
+        this.failedBatches = Counter.builder("qa.history.flush.failures").register(meterRegistry);
+        this.deadLettered = Counter.builder("qa.history.dead.letter")
+                .description("多次被拒绝后写入死信文件的历史记录数")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("qa.history.flush.batch.size").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        spilledRecords.set(countLines(spillFile, 0) + countLines(replayFile, readReplayOffset()));
+        flusher = Flux.merge(Flux.interval(flushInterval, flushInterval, flushScheduler), flushSignal.asFlux())
+                .onBackpressureDrop()
+                .publishOn(flushScheduler, 1)
+                .concatMap(tick -> drain(), 1)
+                .subscribe(null, e -> log.error("历史记录刷写任务异常终止: {}", e.getMessage(), e));
+        log.info("历史记录异步写入队列已启动，容量: {}, 批量: {}, 间隔: {}, 溢出策略: {}",
+                queue.remainingCapacity(), batchSize, flushInterval, overflowPolicy);
+    }
+
+    // 提交一条历史记录，不阻塞调用线程
+    public void submit(Answer answer) {
+        if (queue.offer(answer)) {
+            enqueued.increment();
+        } else {
+            handleOverflow(answer);
+        }
+        if (queue.size() >= batchSize) {
+            flushSignal.tryEmitNext(Boolean.TRUE);
+        }
+    }
+
+    private void handleOverflow(Answer answer) {
+        switch (overflowPolicy) {
+            case DROP_NEWEST -> {
+                droppedNewest.increment();
+                log.warn("历史记录队列已满，丢弃新记录: {}", answer.getQuestion());
+            }
+            case DROP_OLDEST -> {
+                Answer evicted = queue.poll();
+                if (evicted != null) {
+                    droppedOldest.increment();
+                }
+                if (queue.offer(answer)) {
+                    enqueued.increment();
+                } else {
+                    droppedNewest.increment();
+                }
+            }
+            case SPILL -> spillLater(List.of(answer));
+        }
+    }
+
+    // 交给刷写线程写溢出文件；待写记录超过容量时丢弃
+    private void spillLater(List<Answer> answers) {
+        for (Answer answer : answers) {
+            if (pendingSpillSize.incrementAndGet() > capacity) {
+                pendingSpillSize.decrementAndGet();
+                droppedNewest.increment();
+                log.warn("历史记录待溢出队列已满，丢弃记录: {}", answer.getQuestion());
+            } else {
+                pendingSpill.offer(answer);
+            }
+        }
+        if (spillScheduled.compareAndSet(false, true)) {
+            try {
+                flushScheduler.schedule(this::spillPending);
+            } catch (RejectedExecutionException e) {
+                // 停机后刷写线程已关闭，直接在当前线程写入
+                spillPending();
+            }
+        }
+    }
+
+    private void spillPending() {
+        spillScheduled.set(false);
+        List<Answer> batch = new ArrayList<>();
+        for (Answer answer = pendingSpill.poll(); answer != null; answer = pendingSpill.poll()) {
+            batch.add(answer);
+        }
+        pendingSpillSize.addAndGet(-batch.size());
+        if (!batch.isEmpty()) {
+            spill(batch);
+        }
+    }
+
+    // 一次刷写：清空当前队列（按批），然后在队列空闲时回放溢出文件。
+    // 最后一批的响应在 Netty 线程上完成，回放切回刷写线程执行
+    private Mono<Void> drain() {
+        return flushQueued().then(Mono.defer(this::replaySpilled).subscribeOn(flushScheduler));
+    }
+
+    // 按 batchSize 取出队列中的记录依次刷写，直到队列为空
+    private Mono<Void> flushQueued() {
+        return Flux.<List<Answer>>generate(sink -> {
+                    List<Answer> batch = new ArrayList<>(batchSize);
+                    queue.drainTo(batch, batchSize);
+                    if (batch.isEmpty()) {
+                        sink.complete();
+                    } else {
+                        sink.next(batch);
+                    }
+                })
+                .concatMap(this::flush, 1)
+                .then();
+    }
+
+    // 暂时性失败（连接失败、5xx、408、429）重试后整批转入溢出文件；
+    // 被拒绝（其余 4xx）时重试无用，拆成两半分别写入，直到定位到单条记录
+    private Mono<Void> flush(List<Answer> batch) {
+        return reactiveHistoryClient.saveHistoryBatch(batch)
+                .retryWhen(Retry.backoff(2, Duration.ofMillis(200)).filter(e -> !isRejected(e)))
+                .doOnSuccess(result -> {
+                    flushedRecords.increment(batch.size());
+                    batchSizes.record(batch.size());
+                    if (rowFailures.estimatedSize() > 0) {
+                        rowFailures.invalidateAll(batch);
+                    }
+                    log.debug("批量保存历史记录成功: {} 条", batch.size());
+                })
+                .then()
+                .onErrorResume(e -> {
+                    failedBatches.increment();
+                    if (!isRejected(e)) {
+                        log.warn("批量保存历史记录失败，{} 条记录转入溢出文件: {}", batch.size(), e.getMessage());
+                        spillLater(batch);
+                        return Mono.empty();
+                    }
+                    if (batch.size() > 1) {
+                        log.warn("批量保存历史记录被拒绝，拆分 {} 条记录重试: {}", batch.size(), e.getMessage());
+                        int middle = batch.size() / 2;
+                        return Flux.just(batch.subList(0, middle), batch.subList(middle, batch.size()))
+                                .concatMap(this::flush, 1)
+                                .then();
+                    }
+                    return rejectRow(batch.get(0), e);
+                });
+    }
+
+    // 单条记录被拒绝：未达到上限时转入溢出文件稍后回放，达到上限写入死信文件
+    private Mono<Void> rejectRow(Answer answer, Throwable error) {
+        int attempts = rowFailures.asMap().merge(answer, 1, Integer::sum);
+        if (attempts < maxRowAttempts) {
+            log.warn("历史记录被拒绝（第 {} 次），转入溢出文件: {}, {}", attempts, answer.getQuestion(), error.getMessage());
+            spillLater(List.of(answer));
+            return Mono.empty();
+        }
+        rowFailures.invalidate(answer);
+        deadLettered.increment();
+        log.error("历史记录连续 {} 次被拒绝，写入死信文件: {}, {}", attempts, answer.getQuestion(), error.getMessage());
+        return Mono.<Void>fromRunnable(() -> deadLetter(answer)).subscribeOn(flushScheduler);
+    }
+
+    // 4xx（408、429 除外）表示请求本身被拒绝，原样重试不会成功
+    private static boolean isRejected(Throwable error) {
+        if (!(error instanceof WebClientResponseException response)) {
+            return false;
+        }
+        int status = response.getStatusCode().value();
+        return response.getStatusCode().is4xxClientError() && status != 408 && status != 429;
+    }
+
+    // 队列低于半满时，从溢出文件按行读回队列，读到队列半满为止，不把整个文件读入内存。
+    // 溢出文件先改名为回放文件，回放期间新的溢出写入新文件；回放位置写入 offset 文件
+    private Mono<Void> replaySpilled() {
+        if (spilledRecords.get() == 0 || queue.size() > queue.remainingCapacity()) {
+            return Mono.empty();
+        }
+        synchronized (spillLock) {
+            try {
+                if (!Files.exists(replayFile)) {
+                    if (!Files.exists(spillFile)) {
+                        spilledRecords.set(0);
+                        return Mono.empty();
+                    }
+                    Files.move(spillFile, replayFile, StandardCopyOption.REPLACE_EXISTING);
+                    writeReplayOffset(0);
+                }
+                long offset = readReplayOffset();
+                int restored = 0;
+                int skipped = 0;
+                boolean finished = false;
+                try (FileChannel channel = FileChannel.open(replayFile, StandardOpenOption.READ);
+                     BufferedReader reader = new BufferedReader(Channels.newReader(channel.position(offset), StandardCharsets.UTF_8))) {
+                    while (queue.size() <= queue.remainingCapacity()) {
+                        String line = reader.readLine();
+                        if (line == null) {
+                            finished = true;
+                            break;
+                        }
+                        long next = offset + line.getBytes(StandardCharsets.UTF_8).length + 1;
+                        if (!line.isBlank()) {
+                            Answer answer;
+                            try {
+                                answer = objectMapper.readValue(line, Answer.class);
+                            } catch (JsonProcessingException e) {
+                                // 写入中途进程退出留下的残行等，跳过，否则每次回放都停在这一行
+                                log.warn("跳过无法解析的历史记录溢出行，位置: {}, 原因: {}", offset, e.getOriginalMessage());
+                                skipped++;
+                                offset = next;
+                                continue;
+                            }
+                            if (!queue.offer(answer)) {
+                                // 并发提交的记录已占满队列，位置停在这一行，下次从这里继续
+                                break;
+                            }
+                            restored++;
+                        }
+                        offset = next;
+                    }
+                }
+                if (finished) {
+                    Files.delete(replayFile);
+                    Files.deleteIfExists(replayOffsetFile);
+                } else {
+                    writeReplayOffset(offset);
+                }
+                spilledRecords.addAndGet(-(restored + skipped));
+                log.info("从溢出文件回放历史记录: {} 条，跳过无法解析的行: {} 条", restored, skipped);
+            } catch (IOException e) {
+                log.error("读取历史记录溢出文件失败: {}", e.getMessage());
+            }
+        }
+        return Mono.empty();
+    }
+
+    private long readReplayOffset() {
+        try {
+            return Files.exists(replayOffsetFile) ? Long.parseLong(Files.readString(replayOffsetFile).trim()) : 0;
+        } catch (IOException | NumberFormatException e) {
+            log.warn("读取历史记录回放位置失败，从头回放: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    private void writeReplayOffset(long offset) throws IOException {
+        Files.writeString(replayOffsetFile, Long.toString(offset));
+    }
+
+    private void spill(List<Answer> answers) {
+        synchronized (spillLock) {
+            try {
+                append(spillFile, answers);
+                spilled.increment(answers.size());
+                spilledRecords.addAndGet(answers.size());
+            } catch (IOException e) {
+                droppedNewest.increment(answers.size());
+                log.error("写入历史记录溢出文件失败，丢弃 {} 条记录: {}", answers.size(), e.getMessage());
+            }
+        }
+    }
+
+    // 死信文件只追加不回放，格式与溢出文件相同，排查后可手工导入
+    private void deadLetter(Answer answer) {
+        try {
+            append(deadLetterFile, List.of(answer));
+        } catch (IOException e) {
+            log.error("写入历史记录死信文件失败，丢弃记录: {}, {}", answer.getQuestion(), e.getMessage());
+        }
+    }
+
+    private void append(Path file, List<Answer> answers) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        boolean terminate = endsWithPartialLine(file);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (terminate) {
+                // 上次写入中途退出留下的残行先补上换行，新记录不与它拼成一行
+                writer.write('\n');
+            }
+            for (Answer answer : answers) {
+                // 固定使用 \n，回放按 UTF-8 字节数 + 1 计算位置
+                writer.write(objectMapper.writeValueAsString(answer));
+                writer.write('\n');
+            }
+        }
+    }
+
+    private static boolean endsWithPartialLine(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return false;
+            }
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, size - 1);
+            return last.get(0) != '\n';
+        }
+    }
+
+    private long countLines(Path file, long offset) {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             BufferedReader reader = new BufferedReader(Channels.newReader(channel.position(offset), StandardCharsets.UTF_8))) {
+            return reader.lines().filter(line -> !line.isBlank()).count();
+        } catch (IOException e) {
+            log.warn("读取历史记录溢出文件失败: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    // 停机时尽量写完队列中剩余的记录，超时未写完的转入溢出文件，下次启动回放
+    @PreDestroy
+    public void stop() {
+        if (flusher != null) {
+            flusher.dispose();
+        }
+        try {
+            flushQueued().block(shutdownTimeout);
+        } catch (RuntimeException e) {
+            log.warn("停机刷写历史记录超时: {}", e.getMessage());
+        }
+        // 等正在写溢出文件的任务执行完再关闭；直接 dispose 会中断写入，这批记录会丢失
+        try {
+            flushScheduler.disposeGracefully().block(shutdownTimeout);
+        } catch (RuntimeException e) {
+            log.warn("等待历史记录溢出写入完成超时: {}", e.getMessage());
+            flushScheduler.dispose();
+        }
+        spillPending();
+        List<Answer> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            spill(remaining);
+        }
+    }
+}
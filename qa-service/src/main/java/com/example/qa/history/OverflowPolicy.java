@@ -0,0 +1,11 @@
+package com.example.qa.history;
+
+// 历史记录写入队列满时的处理策略
+public enum OverflowPolicy {
+    // 丢弃新提交的记录
+    DROP_NEWEST,
+    // 丢弃队列中最早的记录，为新记录腾出位置
+    DROP_OLDEST,
+    // 追加到本地溢出文件，队列空闲时再读回
+    SPILL
+}
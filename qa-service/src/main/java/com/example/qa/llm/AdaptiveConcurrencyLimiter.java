@@ -0,0 +1,239 @@
+package com.example.qa.llm;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// DeepSeek 调用的自适应并发限制（AIMD）：
+// 调用成功且耗时低于阈值时限制值加 1/limit，出错或超过阈值时乘以 backoffRatio。
+// 超过限制的请求进入有界等待队列，队列满或排队超时直接抛出 LimitExceededException。
+@Slf4j
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+    private final int maxQueue;
+    private final Duration maxWait;
+
+    private final Object lock = new Object();
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private double limit;
+    private int inflight;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Timer queueTime;
+    private final Counter rejectedQueueFull;
+    private final Counter rejectedTimeout;
+
+    public AdaptiveConcurrencyLimiter(MeterRegistry meterRegistry,
+                                      @Value("${qa.llm.limiter.initial-limit:20}") int initialLimit,
+                                      @Value("${qa.llm.limiter.min-limit:2}") int minLimit,
+                                      @Value("${qa.llm.limiter.max-limit:200}") int maxLimit,
+                                      @Value("${qa.llm.limiter.backoff-ratio:0.9}") double backoffRatio,
+                                      @Value("${qa.llm.limiter.latency-threshold:20s}") Duration latencyThreshold,
+                                      @Value("${qa.llm.limiter.max-queue:50}") int maxQueue,
+                                      @Value("${qa.llm.limiter.max-wait:2s}") Duration maxWait) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.maxQueue = maxQueue;
+        this.maxWait = maxWait;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+
+        Gauge.builder("qa.llm.limiter.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("当前并发限制值")
+                .register(meterRegistry);
+        Gauge.builder("qa.llm.limiter.inflight", this, AdaptiveConcurrencyLimiter::getInflight)
+                .description("正在进行的上游调用数")
+                .register(meterRegistry);
+        Gauge.builder("qa.llm.limiter.queued", queued, AtomicInteger::get)
+                .description("等待许可的请求数")
+                .register(meterRegistry);
+        this.queueTime = Timer.builder("qa.llm.limiter.queue.time")
+                .description("获取许可的等待时间")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejectedQueueFull = Counter.builder("qa.llm.limiter.rejected").tag("reason", "queue-full").register(meterRegistry);
+        this.rejectedTimeout = Counter.builder("qa.llm.limiter.rejected").tag("reason", "timeout").register(meterRegistry);
+    }
+
+    // 非流式调用：以整个调用耗时作为延迟样本
+    public <T> Mono<T> execute(Supplier<Mono<T>> call) {
+        return Mono.usingWhen(acquire(),
+                permit -> call.get()
+                        .doOnSuccess(value -> permit.onSuccess())
+                        .doOnError(permit::onError),
+                permit -> Mono.fromRunnable(permit::release),
+                (permit, error) -> Mono.fromRunnable(permit::release),
+                permit -> Mono.fromRunnable(permit::release));
+    }
+
+    // 流式调用：以首个元素到达的耗时作为延迟样本，许可一直持有到流结束
+    public <T> Flux<T> executeMany(Supplier<Flux<T>> call) {
+        return Flux.usingWhen(acquire(),
+                permit -> call.get()
+                        .doOnNext(value -> permit.onSuccess())
+                        .doOnComplete(permit::onSuccess)
+                        .doOnError(permit::onError),
+                permit -> Mono.fromRunnable(permit::release),
+                (permit, error) -> Mono.fromRunnable(permit::release),
+                permit -> Mono.fromRunnable(permit::release));
+    }
+
+    private Mono<Permit> acquire() {
+        return Mono.<Permit>create(sink -> {
+                    Permit permit;
+                    Waiter waiter = null;
+                    synchronized (lock) {
+                        if (inflight < (int) limit) {
+                            inflight++;
+                            permit = new Permit(System.nanoTime());
+                        } else if (waiters.size() < maxQueue) {
+                            permit = null;
+                            waiter = new Waiter(sink, System.nanoTime());
+                            waiters.addLast(waiter);
+                            queued.incrementAndGet();
+                        } else {
+                            permit = null;
+                        }
+                    }
+                    if (permit != null) {
+                        queueTime.record(0, TimeUnit.NANOSECONDS);
+                        sink.success(permit);
+                    } else if (waiter != null) {
+                        Waiter registered = waiter;
+                        Disposable timeout = Schedulers.parallel().schedule(() -> {
+                            if (abandon(registered)) {
+                                rejectedTimeout.increment();
+                                sink.error(new LimitExceededException("等待 DeepSeek 并发许可超时"));
+                            }
+                        }, maxWait.toMillis(), TimeUnit.MILLISECONDS);
+                        sink.onCancel(() -> abandon(registered));
+                        sink.onDispose(timeout);
+                    } else {
+                        rejectedQueueFull.increment();
+                        sink.error(new LimitExceededException("DeepSeek 并发已达上限，等待队列已满"));
+                    }
+                })
+                // 许可交付时下游恰好取消，被丢弃的许可需要归还
+                .doOnDiscard(Permit.class, Permit::release);
+    }
+
+    // 等待者主动放弃（取消或超时），返回是否由本次调用移出队列
+    private boolean abandon(Waiter waiter) {
+        if (!waiter.claimed.compareAndSet(false, true)) {
+            return false;
+        }
+        synchronized (lock) {
+            waiters.remove(waiter);
+        }
+        queued.decrementAndGet();
+        return true;
+    }
+
+    // 释放许可后把空出的名额交给队首的等待者
+    private void release() {
+        while (true) {
+            Waiter next;
+            synchronized (lock) {
+                inflight--;
+                if (inflight >= (int) limit || waiters.isEmpty()) {
+                    return;
+                }
+                next = waiters.pollFirst();
+                inflight++;
+            }
+            if (next.claimed.compareAndSet(false, true)) {
+                queued.decrementAndGet();
+                long now = System.nanoTime();
+                queueTime.record(now - next.enqueuedAt, TimeUnit.NANOSECONDS);
+                next.sink.success(new Permit(now));
+                return;
+            }
+            // 该等待者已超时或取消，名额继续交给下一个
+        }
+    }
+
+    private void onSample(long latencyNanos, boolean dropped) {
+        synchronized (lock) {
+            double previous = limit;
+            if (dropped || latencyNanos > latencyThresholdNanos) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else if (inflight * 2 >= (int) limit) {
+                // 只有在接近限制时才增长，避免低负载下限制值无意义地膨胀
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            if ((int) previous != (int) limit) {
+                log.debug("DeepSeek 并发限制调整: {} -> {}", (int) previous, (int) limit);
+            }
+        }
+    }
+
+    public int getLimit() {
+        synchronized (lock) {
+            return (int) limit;
+        }
+    }
+
+    public int getInflight() {
+        synchronized (lock) {
+            return inflight;
+        }
+    }
+
+    private record Waiter(MonoSink<Permit> sink, long enqueuedAt, AtomicBoolean claimed) {
+        Waiter(MonoSink<Permit> sink, long enqueuedAt) {
+            this(sink, enqueuedAt, new AtomicBoolean());
+        }
+    }
+
+    // 一次调用持有的许可，延迟样本只记录一次，release 可重复调用
+    private final class Permit {
+        private final long startedAt;
+        private final AtomicBoolean sampled = new AtomicBoolean();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long startedAt) {
+            this.startedAt = startedAt;
+        }
+
+        void onSuccess() {
+            if (sampled.compareAndSet(false, true)) {
+                onSample(System.nanoTime() - startedAt, false);
+            }
+        }
+
+        void onError(Throwable error) {
+            if (sampled.compareAndSet(false, true)) {
+                onSample(System.nanoTime() - startedAt, true);
+            }
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                AdaptiveConcurrencyLimiter.this.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.qa.llm;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// chat/completions 请求与响应的编解码，全服务共用一个实例。
+// 字段名、角色、model 以及固定的系统提示词预先转义为 SerializedString，编码时直接写入字节；
+// 解码只读取 choices[0] 的 content、finish_reason 和 usage，不构建 Map
+@Component
+public class ChatCompletionCodec {
+
+    public static final String DEFAULT_SYSTEM_PROMPT = "You are a helpful AI customer service assistant.";
+    public static final String HISTORY_SYSTEM_PROMPT = "You are a helpful AI customer service assistant. "
+            + "Please provide helpful and accurate responses based on the conversation history and the current question.";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final SerializedString MODEL = new SerializedString("model");
+    private static final SerializedString MESSAGES = new SerializedString("messages");
+    private static final SerializedString ROLE = new SerializedString("role");
+    private static final SerializedString CONTENT = new SerializedString("content");
+    private static final SerializedString MAX_TOKENS = new SerializedString("max_tokens");
+    private static final SerializedString TEMPERATURE = new SerializedString("temperature");
+    private static final SerializedString STREAM = new SerializedString("stream");
+    private static final SerializedString STREAM_OPTIONS = new SerializedString("stream_options");
+    private static final SerializedString INCLUDE_USAGE = new SerializedString("include_usage");
+
+    private static final SerializedString ROLE_SYSTEM = new SerializedString(ChatMessage.SYSTEM);
+    private static final SerializedString ROLE_USER = new SerializedString(ChatMessage.USER);
+    private static final SerializedString ROLE_ASSISTANT = new SerializedString(ChatMessage.ASSISTANT);
+
+    // 常量内容按引用匹配，只有直接使用上面常量的消息会走预序列化路径
+    private static final Map<String, SerializedString> CONSTANT_CONTENTS = new IdentityHashMap<>();
+
+    static {
+        CONSTANT_CONTENTS.put(DEFAULT_SYSTEM_PROMPT, new SerializedString(DEFAULT_SYSTEM_PROMPT));
+        CONSTANT_CONTENTS.put(HISTORY_SYSTEM_PROMPT, new SerializedString(HISTORY_SYSTEM_PROMPT));
+    }
+
+    private final SerializedString modelValue;
+
+    public ChatCompletionCodec(@Value("${deepseek.model}") String model) {
+        this.modelValue = new SerializedString(model);
+    }
+
+    public byte[] encode(ChatCompletionRequest request) {
+        ByteArrayBuilder out = new ByteArrayBuilder(estimateSize(request));
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeFieldName(MODEL);
+            generator.writeString(modelValue);
+
+            generator.writeFieldName(MESSAGES);
+            generator.writeStartArray();
+            for (ChatMessage message : request.messages()) {
+                generator.writeStartObject();
+                generator.writeFieldName(ROLE);
+                writeRole(generator, message.role());
+                generator.writeFieldName(CONTENT);
+                SerializedString constant = CONSTANT_CONTENTS.get(message.content());
+                if (constant != null) {
+                    generator.writeString(constant);
+                } else {
+                    generator.writeString(message.content());
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+
+            generator.writeFieldName(MAX_TOKENS);
+            generator.writeNumber(request.maxTokens());
+            if (request.temperature() != null) {
+                generator.writeFieldName(TEMPERATURE);
+                generator.writeNumber(request.temperature());
+            }
+            if (request.stream()) {
+                generator.writeFieldName(STREAM);
+                generator.writeBoolean(true);
+                generator.writeFieldName(STREAM_OPTIONS);
+                generator.writeStartObject();
+                generator.writeFieldName(INCLUDE_USAGE);
+                generator.writeBoolean(true);
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            // 写入内存缓冲不会出现 IO 错误
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    // 解析非流式响应；choices 为空时 content 为 null
+    public ChatCompletionResponse decode(byte[] body) throws IOException {
+        String content = null;
+        String finishReason = null;
+        TokenUsage usage = null;
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("响应不是 JSON 对象");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                    if (parser.nextToken() == JsonToken.START_OBJECT) {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String choiceField = parser.currentName();
+                            JsonToken choiceValue = parser.nextToken();
+                            if ("message".equals(choiceField) && choiceValue == JsonToken.START_OBJECT) {
+                                content = readContent(parser);
+                            } else if ("finish_reason".equals(choiceField) && choiceValue == JsonToken.VALUE_STRING) {
+                                finishReason = parser.getText();
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                        SseDeltaDecoder.skipRemainingElements(parser);
+                    }
+                } else if ("usage".equals(field) && value == JsonToken.START_OBJECT) {
+                    usage = TokenUsage.read(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new ChatCompletionResponse(content, finishReason, usage);
+    }
+
+    private static String readContent(JsonParser parser) throws IOException {
+        String content = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("content".equals(field) && value == JsonToken.VALUE_STRING) {
+                content = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return content;
+    }
+
+    private static void writeRole(JsonGenerator generator, String role) throws IOException {
+        switch (role) {
+            case ChatMessage.SYSTEM -> generator.writeString(ROLE_SYSTEM);
+            case ChatMessage.USER -> generator.writeString(ROLE_USER);
+            case ChatMessage.ASSISTANT -> generator.writeString(ROLE_ASSISTANT);
+            default -> generator.writeString(role);
+        }
+    }
+
+    // 预估请求体大小，避免缓冲区多次扩容；中文按 UTF-8 三字节计
+    private static int estimateSize(ChatCompletionRequest request) {
+        int size = 128;
+        for (ChatMessage message : request.messages()) {
+            size += 32 + (message.content() != null ? message.content().length() * 3 : 0);
+        }
+        return size;
+    }
+}
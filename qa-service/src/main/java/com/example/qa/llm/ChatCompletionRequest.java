@@ -0,0 +1,21 @@
+package com.example.qa.llm;
+
+import java.util.List;
+
+// chat/completions 请求；model 由 ChatCompletionCodec 统一写入。temperature 为 null 时不发送，使用上游默认值
+// messages 复制为不可变列表，编码前调用方修改原列表不会影响请求
+public record ChatCompletionRequest(List<ChatMessage> messages, int maxTokens, Double temperature, boolean stream) {
+
+    public ChatCompletionRequest {
+        messages = List.copyOf(messages);
+    }
+
+    public static ChatCompletionRequest blocking(List<ChatMessage> messages, int maxTokens, Double temperature) {
+        return new ChatCompletionRequest(messages, maxTokens, temperature, false);
+    }
+
+    // 流式请求会要求上游在最后一个数据包中返回 usage
+    public static ChatCompletionRequest streaming(List<ChatMessage> messages, int maxTokens) {
+        return new ChatCompletionRequest(messages, maxTokens, null, true);
+    }
+}
@@ -0,0 +1,5 @@
+package com.example.qa.llm;
+
+// 非流式 chat/completions 响应中用到的部分：choices[0].message.content、finish_reason 与 usage
+public record ChatCompletionResponse(String content, String finishReason, TokenUsage usage) {
+}
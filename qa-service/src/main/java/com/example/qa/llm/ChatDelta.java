@@ -0,0 +1,22 @@
+package com.example.qa.llm;
+
+// 流式回答中的一个增量：content 为本次增量文本，finishReason 仅在最后一个增量出现，
+// error 不为空表示上游或本服务返回了错误，usage 仅在上游的最后一个数据包中出现
+public record ChatDelta(String content, String finishReason, String error, TokenUsage usage) {
+
+    public static ChatDelta content(String content) {
+        return new ChatDelta(content, null, null, null);
+    }
+
+    public static ChatDelta error(String message) {
+        return new ChatDelta(null, null, message, null);
+    }
+
+    public boolean hasContent() {
+        return content != null && !content.isEmpty();
+    }
+
+    public boolean isError() {
+        return error != null;
+    }
+}
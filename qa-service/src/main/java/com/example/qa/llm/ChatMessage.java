@@ -0,0 +1,17 @@
+package com.example.qa.llm;
+
+// chat/completions 请求中的一条消息
+public record ChatMessage(String role, String content) {
+
+    public static final String SYSTEM = "system";
+    public static final String USER = "user";
+    public static final String ASSISTANT = "assistant";
+
+    public static ChatMessage system(String content) {
+        return new ChatMessage(SYSTEM, content);
+    }
+
+    public static ChatMessage user(String content) {
+        return new ChatMessage(USER, content);
+    }
+}
@@ -0,0 +1,284 @@
+package com.example.qa.llm;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// DeepSeek 调用熔断器：CLOSED -> OPEN -> HALF_OPEN -> CLOSED。
+// 最近 windowSize 次调用中失败率或慢调用率超过阈值时打开，打开期间直接抛出 CircuitOpenException；
+// 等待 openDuration 后进入半开状态，放行少量试探调用，全部成功则关闭，任何失败重新打开。
+// 并发限制拒绝（LimitExceededException）、调用方取消和请求本身的错误（4xx，408、429 除外）不计入统计。
+@Slf4j
+@Component
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final byte SUCCESS = 0;
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int halfOpenCalls;
+
+    private final Object lock = new Object();
+    // 环形滑动窗口，记录最近 windowSize 次调用的结果
+    private final byte[] window;
+    private int windowPosition;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    // 每次状态切换加一，旧状态下发起的调用结束时不再影响新状态
+    private long generation;
+    private long openedAt;
+    private int halfOpenInFlight;
+    private int halfOpenSucceeded;
+
+    private final Counter rejected;
+    private final Map<State, Counter> transitions = new EnumMap<>(State.class);
+    private final AtomicLong stateCode = new AtomicLong();
+
+    public CircuitBreaker(MeterRegistry meterRegistry,
+                          @Value("${qa.llm.circuit-breaker.window-size:50}") int windowSize,
+                          @Value("${qa.llm.circuit-breaker.minimum-calls:10}") int minimumCalls,
+                          @Value("${qa.llm.circuit-breaker.failure-rate-threshold:0.5}") double failureRateThreshold,
+                          @Value("${qa.llm.circuit-breaker.slow-call-rate-threshold:0.8}") double slowCallRateThreshold,
+                          @Value("${qa.llm.circuit-breaker.slow-call-duration:20s}") Duration slowCallDuration,
+                          @Value("${qa.llm.circuit-breaker.open-duration:30s}") Duration openDuration,
+                          @Value("${qa.llm.circuit-breaker.half-open-calls:3}") int halfOpenCalls) {
+        this.windowSize = windowSize;
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = slowCallDuration.toNanos();
+        this.openNanos = openDuration.toNanos();
+        this.halfOpenCalls = halfOpenCalls;
+        this.window = new byte[windowSize];
+
+        Gauge.builder("qa.llm.circuit.state", stateCode, AtomicLong::get)
+                .description("熔断器状态：0 关闭，1 半开，2 打开")
+                .register(meterRegistry);
+        Gauge.builder("qa.llm.circuit.failure.rate", this, breaker -> breaker.rate(FAILURE))
+                .register(meterRegistry);
+        Gauge.builder("qa.llm.circuit.slow.rate", this, breaker -> breaker.rate(SLOW))
+                .register(meterRegistry);
+        this.rejected = Counter.builder("qa.llm.circuit.rejected")
+                .description("熔断器打开期间被直接拒绝的调用数")
+                .register(meterRegistry);
+        for (State target : State.values()) {
+            transitions.put(target, Counter.builder("qa.llm.circuit.transitions")
+                    .tag("to", target.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    // 非流式调用：以整个调用耗时判断慢调用
+    public <T> Mono<T> execute(Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            long acquired = tryAcquire();
+            if (acquired < 0) {
+                return Mono.error(new CircuitOpenException("DeepSeek 熔断器已打开"));
+            }
+            long start = System.nanoTime();
+            AtomicBoolean done = new AtomicBoolean();
+            return call.get()
+                    .doOnSuccess(value -> {
+                        if (done.compareAndSet(false, true)) {
+                            onResult(acquired, System.nanoTime() - start, null);
+                        }
+                    })
+                    .doOnError(error -> {
+                        if (done.compareAndSet(false, true)) {
+                            onResult(acquired, System.nanoTime() - start, error);
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (done.compareAndSet(false, true)) {
+                            onIgnored(acquired);
+                        }
+                    });
+        });
+    }
+
+    // 流式调用：以首个元素的耗时判断慢调用，流结束时才记录结果，中途出错计为失败
+    public <T> Flux<T> executeMany(Supplier<Flux<T>> call) {
+        return Flux.defer(() -> {
+            long acquired = tryAcquire();
+            if (acquired < 0) {
+                return Flux.error(new CircuitOpenException("DeepSeek 熔断器已打开"));
+            }
+            long start = System.nanoTime();
+            AtomicLong firstElementNanos = new AtomicLong(-1);
+            AtomicBoolean done = new AtomicBoolean();
+            return call.get()
+                    .doOnNext(value -> firstElementNanos.compareAndSet(-1, System.nanoTime() - start))
+                    .doOnComplete(() -> {
+                        if (done.compareAndSet(false, true)) {
+                            long latency = firstElementNanos.get();
+                            onResult(acquired, latency >= 0 ? latency : System.nanoTime() - start, null);
+                        }
+                    })
+                    .doOnError(error -> {
+                        if (done.compareAndSet(false, true)) {
+                            onResult(acquired, System.nanoTime() - start, error);
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (done.compareAndSet(false, true)) {
+                            onIgnored(acquired);
+                        }
+                    });
+        });
+    }
+
+    public State getState() {
+        synchronized (lock) {
+            return state;
+        }
+    }
+
+    // 返回本次调用所属的状态代数，被拒绝时返回 -1
+    private long tryAcquire() {
+        synchronized (lock) {
+            if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+                transitionTo(State.HALF_OPEN);
+            }
+            switch (state) {
+                case CLOSED:
+                    return generation;
+                case HALF_OPEN:
+                    if (halfOpenInFlight + halfOpenSucceeded < halfOpenCalls) {
+                        halfOpenInFlight++;
+                        return generation;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        rejected.increment();
+        return -1;
+    }
+
+    private void onResult(long callGeneration, long latencyNanos, Throwable error) {
+        if (error instanceof LimitExceededException || isClientError(error)) {
+            onIgnored(callGeneration);
+            return;
+        }
+        byte outcome = error != null ? FAILURE : latencyNanos > slowCallNanos ? SLOW : SUCCESS;
+        synchronized (lock) {
+            if (callGeneration != generation) {
+                return;
+            }
+            if (state == State.HALF_OPEN) {
+                halfOpenInFlight--;
+                if (outcome != SUCCESS) {
+                    log.warn("DeepSeek 熔断器半开试探失败，重新打开");
+                    transitionTo(State.OPEN);
+                } else if (++halfOpenSucceeded >= halfOpenCalls) {
+                    log.info("DeepSeek 熔断器试探调用全部成功，关闭熔断器");
+                    transitionTo(State.CLOSED);
+                }
+                return;
+            }
+            if (state != State.CLOSED) {
+                return;
+            }
+            record(outcome);
+            if (recorded >= minimumCalls) {
+                double failureRate = (double) failures / recorded;
+                double slowRate = (double) slowCalls / recorded;
+                if (failureRate >= failureRateThreshold || slowRate >= slowCallRateThreshold) {
+                    log.warn("DeepSeek 熔断器打开，失败率: {}, 慢调用率: {}", failureRate, slowRate);
+                    transitionTo(State.OPEN);
+                }
+            }
+        }
+    }
+
+    // 请求参数、鉴权或长度不合法时上游是健康的，不应据此熔断；超时（408）和限流（429）仍算上游失败
+    private static boolean isClientError(Throwable error) {
+        if (!(error instanceof WebClientResponseException e) || !e.getStatusCode().is4xxClientError()) {
+            return false;
+        }
+        int status = e.getStatusCode().value();
+        return status != 408 && status != 429;
+    }
+
+    // 不计入统计的结束（取消、被并发限制拒绝或请求本身的错误），只归还半开试探名额
+    private void onIgnored(long callGeneration) {
+        synchronized (lock) {
+            if (callGeneration == generation && state == State.HALF_OPEN) {
+                halfOpenInFlight--;
+            }
+        }
+    }
+
+    private void record(byte outcome) {
+        if (recorded == windowSize) {
+            byte evicted = window[windowPosition];
+            if (evicted == FAILURE) {
+                failures--;
+            } else if (evicted == SLOW) {
+                slowCalls--;
+            }
+        } else {
+            recorded++;
+        }
+        window[windowPosition] = outcome;
+        windowPosition = (windowPosition + 1) % windowSize;
+        if (outcome == FAILURE) {
+            failures++;
+        } else if (outcome == SLOW) {
+            slowCalls++;
+        }
+    }
+
+    private void transitionTo(State target) {
+        state = target;
+        generation++;
+        halfOpenInFlight = 0;
+        halfOpenSucceeded = 0;
+        if (target == State.OPEN) {
+            openedAt = System.nanoTime();
+        }
+        // 状态切换后重新统计，避免旧窗口影响新的判断
+        recorded = 0;
+        failures = 0;
+        slowCalls = 0;
+        windowPosition = 0;
+        stateCode.set(target == State.CLOSED ? 0 : target == State.HALF_OPEN ? 1 : 2);
+        transitions.get(target).increment();
+    }
+
+    private double rate(byte outcome) {
+        synchronized (lock) {
+            if (recorded == 0) {
+                return 0;
+            }
+            return (double) (outcome == FAILURE ? failures : slowCalls) / recorded;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.qa.llm;
+
+// 熔断器处于打开状态（或半开试探名额已用完），本次调用不会发往上游
+public class CircuitOpenException extends RuntimeException {
+
+    public CircuitOpenException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.qa.llm;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+// 按 token 预算构建多轮对话消息：
+// 从最新一轮开始往前填充历史，单轮过长时截断；放不下的更早轮次压缩成摘要，作为一条系统消息放在历史之前。
+// 摘要按会话缓存，只对新移出预算的轮次追加摘要行，不会每轮重建；
+// 复用前比对已覆盖轮次的整段摘要值，键冲突或历史被改写时重新生成，不会把别的会话的内容带进提示词
+@Slf4j
+@Component
+public class ConversationContextBuilder {
+
+    private final int promptBudget;
+    private final int maxTurnTokens;
+    private final int summaryBudget;
+    private final int summaryLineTokens;
+    private final int maxHistoryTurns;
+
+    // 会话键 -> 已生成的滚动摘要
+    private final Cache<String, RollingSummary> summaries;
+
+    public ConversationContextBuilder(@Value("${qa.llm.prompt.budget-tokens:3000}") int promptBudget,
+                                      @Value("${qa.llm.prompt.max-turn-tokens:600}") int maxTurnTokens,
+                                      @Value("${qa.llm.prompt.summary-tokens:400}") int summaryBudget,
+                                      @Value("${qa.llm.prompt.summary-line-tokens:40}") int summaryLineTokens,
+                                      @Value("${qa.llm.prompt.max-history-turns:20}") int maxHistoryTurns,
+                                      @Value("${qa.llm.prompt.summary-cache-size:10000}") long summaryCacheSize,
+                                      @Value("${qa.llm.prompt.summary-expire-after-access:30m}") Duration summaryExpireAfterAccess) {
+        this.promptBudget = promptBudget;
+        this.maxTurnTokens = maxTurnTokens;
+        this.summaryBudget = summaryBudget;
+        this.summaryLineTokens = summaryLineTokens;
+        this.maxHistoryTurns = maxHistoryTurns;
+        this.summaries = Caffeine.newBuilder()
+                .maximumSize(summaryCacheSize)
+                .expireAfterAccess(summaryExpireAfterAccess)
+                .build();
+    }
+
+    public List<ChatMessage> build(String conversationId, String systemPrompt, String question,
+                                   List<Map<String, String>> history) {
+        List<Turn> turns = validTurns(history);
+
+        int available = promptBudget
+                - TokenEstimator.estimateMessage(systemPrompt)
+                - TokenEstimator.estimateMessage(question);
+
+        // 先尝试放下全部历史；放不下时给摘要预留空间后再从新到旧填充
+        List<Turn> kept = fillNewestFirst(turns, available);
+        String summary = null;
+        if (kept.size() < turns.size()) {
+            kept = fillNewestFirst(turns, available - summaryBudget - TokenEstimator.MESSAGE_OVERHEAD);
+            int dropped = turns.size() - kept.size();
+            summary = summarize(conversationId, turns, dropped);
+            log.info("历史对话超出预算，保留最近 {} 轮，{} 轮压缩为摘要", kept.size(), dropped);
+        }
+
+        List<ChatMessage> messages = new ArrayList<>(kept.size() + 3);
+        messages.add(ChatMessage.system(systemPrompt));
+        if (summary != null && !summary.isEmpty()) {
+            messages.add(ChatMessage.system("以下是更早对话的摘要：\n" + summary));
+        }
+        for (Turn turn : kept) {
+            messages.add(new ChatMessage(turn.role(), turn.content()));
+        }
+        messages.add(ChatMessage.user(question));
+        return messages;
+    }
+
+    // 从最新一轮往前取，直到预算用完或达到轮数上限；返回按时间顺序排列的轮次
+    private List<Turn> fillNewestFirst(List<Turn> turns, int budget) {
+        List<Turn> kept = new ArrayList<>();
+        int used = 0;
+        for (int i = turns.size() - 1; i >= 0 && kept.size() < maxHistoryTurns; i--) {
+            Turn turn = turns.get(i);
+            String content = TokenEstimator.truncate(turn.content(), maxTurnTokens);
+            int cost = TokenEstimator.estimateMessage(content);
+            if (used + cost > budget) {
+                break;
+            }
+            used += cost;
+            kept.add(new Turn(turn.role(), content));
+        }
+        Collections.reverse(kept);
+        return kept;
+    }
+
+    // 为最早的 dropped 轮生成摘要；缓存中的摘要覆盖的轮次仍是当前历史的前缀时只追加新移出的轮次
+    private String summarize(String conversationId, List<Turn> turns, int dropped) {
+        if (dropped <= 0) {
+            return null;
+        }
+        RollingSummary cached = conversationId != null ? summaries.getIfPresent(conversationId) : null;
+        int covered = cached != null && cached.coveredTurns() <= dropped ? cached.coveredTurns() : 0;
+
+        // 一次遍历算出前 dropped 轮的摘要值，顺带取出缓存覆盖范围的前缀摘要值用于比对
+        MessageDigest digest = newDigest();
+        byte[] coveredDigest = null;
+        for (int i = 0; i < dropped; i++) {
+            update(digest, turns.get(i));
+            if (i + 1 == covered) {
+                coveredDigest = copyDigest(digest);
+            }
+        }
+        byte[] droppedDigest = digest.digest();
+
+        List<String> lines;
+        int from;
+        if (coveredDigest != null && Arrays.equals(coveredDigest, cached.prefixDigest())) {
+            lines = new ArrayList<>(cached.lines());
+            from = covered;
+        } else {
+            lines = new ArrayList<>();
+            from = 0;
+        }
+        for (int i = from; i < dropped; i++) {
+            Turn turn = turns.get(i);
+            String label = ChatMessage.ASSISTANT.equals(turn.role()) ? "客服：" : "用户：";
+            lines.add(label + TokenEstimator.truncate(firstSentence(turn.content()), summaryLineTokens));
+        }
+
+        // 超出摘要预算时丢弃最早的摘要行
+        int total = 0;
+        int start = lines.size();
+        while (start > 0) {
+            int cost = TokenEstimator.estimate(lines.get(start - 1)) + 1;
+            if (total + cost > summaryBudget) {
+                break;
+            }
+            total += cost;
+            start--;
+        }
+        lines = List.copyOf(lines.subList(start, lines.size()));
+
+        if (conversationId != null) {
+            summaries.put(conversationId, new RollingSummary(dropped, droppedDigest, lines));
+        }
+        return String.join("\n", lines);
+    }
+
+    // 客户端自带完整历史时没有会话 id，以首轮内容的摘要值作为会话键
+    public static String historyKey(List<Map<String, String>> history) {
+        List<Turn> turns = validTurns(history);
+        if (turns.isEmpty()) {
+            return null;
+        }
+        MessageDigest digest = newDigest();
+        update(digest, turns.get(0));
+        return "h:" + HexFormat.of().formatHex(digest.digest());
+    }
+
+    public static String sessionKey(String sessionId) {
+        return sessionId != null ? "s:" + sessionId : null;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    private static byte[] copyDigest(MessageDigest digest) {
+        try {
+            return ((MessageDigest) digest.clone()).digest();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("摘要算法不支持复制", e);
+        }
+    }
+
+    // 角色和内容都计入，并以长度分隔，避免相邻轮次拼接后产生相同输入
+    private static void update(MessageDigest digest, Turn turn) {
+        byte[] role = turn.role().getBytes(StandardCharsets.UTF_8);
+        byte[] content = turn.content().getBytes(StandardCharsets.UTF_8);
+        digest.update(role);
+        digest.update((byte) 0);
+        digest.update(Integer.toString(content.length).getBytes(StandardCharsets.US_ASCII));
+        digest.update((byte) 0);
+        digest.update(content);
+    }
+
+    private static String firstSentence(String content) {
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (c == '。' || c == '！' || c == '？' || c == '\n' || ((c == '.' || c == '!' || c == '?') && i > 0)) {
+                return content.substring(0, i + 1).trim();
+            }
+        }
+        return content;
+    }
+
+    private static List<Turn> validTurns(List<Map<String, String>> history) {
+        if (history == null || history.isEmpty()) {
+            return List.of();
+        }
+        List<Turn> turns = new ArrayList<>(history.size());
+        for (Map<String, String> item : history) {
+            if (item == null) {
+                continue;
+            }
+            String role = item.get("role");
+            String content = item.get("content");
+            if (role != null && content != null && !content.trim().isEmpty()) {
+                turns.add(new Turn(role, content.trim()));
+            }
+        }
+        return turns;
+    }
+
+    private record Turn(String role, String content) {
+    }
+
+    // prefixDigest 是被摘要的前 coveredTurns 轮的 SHA-256
+    private record RollingSummary(int coveredTurns, byte[] prefixDigest, List<String> lines) {
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.qa.llm;
+
+// 并发限制器拒绝请求：等待队列已满或排队超时，调用方应立即走降级逻辑
+public class LimitExceededException extends RuntimeException {
+
+    public LimitExceededException(String message) {
+        super(message, null, false, false);
+    }
+}
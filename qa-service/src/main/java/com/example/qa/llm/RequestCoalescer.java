@@ -0,0 +1,161 @@
+package com.example.qa.llm;
+
+import com.example.common.text.QuestionNormalizer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// 相同问题的并发上游调用合并（single-flight）：
+// 同一时刻 key 相同的请求只向 DeepSeek 发起一次调用，其余请求共享结果
+@Slf4j
+@Component
+public class RequestCoalescer {
+
+    private final Map<String, Flight<?>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter leaderCounter;
+    private final Counter coalescedCounter;
+
+    public RequestCoalescer(MeterRegistry meterRegistry) {
+        this.leaderCounter = Counter.builder("qa.llm.coalescer.requests")
+                .description("实际发往上游的调用次数")
+                .tag("role", "leader")
+                .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("qa.llm.coalescer.requests")
+                .description("被合并到已有调用上的请求次数")
+                .tag("role", "coalesced")
+                .register(meterRegistry);
+        Gauge.builder("qa.llm.coalescer.inflight", inFlight, Map::size)
+                .description("当前进行中的合并调用数")
+                .register(meterRegistry);
+    }
+
+    // 以 key 合并调用；上游结束（成功、失败、取消）后立即移除，之后的请求会重新发起调用。
+    // 已结束或已取消的调用不再接受等待者，拿到这样的条目时移除并重新发起，不会重复订阅上游
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> execute(String key, Supplier<Mono<T>> call) {
+        return Mono.deferContextual(context -> {
+            while (true) {
+                Flight<T> created = new Flight<>(key);
+                Flight<T> flight = (Flight<T>) inFlight.computeIfAbsent(key, k -> created);
+                if (!flight.join()) {
+                    inFlight.remove(key, flight);
+                    continue;
+                }
+                if (flight == created) {
+                    leaderCounter.increment();
+                    // 上游在发起者的 Context 下订阅，只订阅一次
+                    flight.start(call.get().contextWrite(context));
+                } else {
+                    coalescedCounter.increment();
+                    log.info("合并到进行中的上游调用: {}", key);
+                }
+                return flight.result();
+            }
+        });
+    }
+
+    // 一次合并调用：记录等待者数量，发起者取消时结果仍会交给其他等待者，
+    // 所有等待者都取消时才取消上游调用（例如投机调用输给了知识库命中）
+    private final class Flight<T> {
+
+        private final String key;
+        private final Sinks.One<T> sink = Sinks.one();
+        private int waiters;
+        private boolean closed;
+        private Disposable upstream;
+
+        Flight(String key) {
+            this.key = key;
+        }
+
+        synchronized boolean join() {
+            if (closed) {
+                return false;
+            }
+            waiters++;
+            return true;
+        }
+
+        void start(Mono<T> call) {
+            Disposable subscription = call
+                    .doFinally(signal -> close())
+                    .subscribe(
+                            value -> sink.tryEmitValue(value),
+                            sink::tryEmitError,
+                            sink::tryEmitEmpty);
+            synchronized (this) {
+                if (!closed) {
+                    upstream = subscription;
+                    return;
+                }
+            }
+            // 所有等待者在订阅上游之前就已取消
+            subscription.dispose();
+        }
+
+        Mono<T> result() {
+            return sink.asMono().doOnCancel(this::leave);
+        }
+
+        private void leave() {
+            Disposable toCancel;
+            synchronized (this) {
+                if (--waiters > 0 || closed) {
+                    return;
+                }
+                closed = true;
+                toCancel = upstream;
+            }
+            inFlight.remove(key, this);
+            if (toCancel != null) {
+                toCancel.dispose();
+            }
+        }
+
+        private void close() {
+            synchronized (this) {
+                closed = true;
+            }
+            inFlight.remove(key, this);
+        }
+    }
+
+    // 生成合并 key：模型 + 规范化后的问题 + 上下文摘要
+    public static String keyOf(String model, String question, List<String> context) {
+        StringBuilder key = new StringBuilder()
+                .append(model).append('|')
+                .append(QuestionNormalizer.normalize(question));
+        if (context != null && !context.isEmpty()) {
+            key.append('|').append(digest(context));
+        }
+        return key.toString();
+    }
+
+    private static String digest(List<String> context) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            for (String item : context) {
+                sha256.update(String.valueOf(item).getBytes(StandardCharsets.UTF_8));
+                sha256.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(sha256.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+}
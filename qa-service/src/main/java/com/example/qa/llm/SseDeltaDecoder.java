@@ -0,0 +1,253 @@
+package com.example.qa.llm;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// DeepSeek SSE 流的增量解码器：直接处理 DataBuffer，跨数据块拼接 SSE 事件，
+// 用 Jackson 流式解析器只取 choices[0].delta.content / finish_reason 及 usage，不为每个 token 构建 Map
+public final class SseDeltaDecoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final byte[] DONE = "[DONE]".getBytes();
+    private static final byte[] DATA_FIELD = "data:".getBytes();
+
+    private SseDeltaDecoder() {
+    }
+
+    // 每个订阅拥有独立的拼帧状态，数据块读完立即释放
+    public static Flux<ChatDelta> decode(Flux<DataBuffer> body) {
+        return Flux.defer(() -> {
+            EventFramer framer = new EventFramer();
+            return body
+                    .concatMapIterable(buffer -> {
+                        try {
+                            return framer.feed(buffer);
+                        } finally {
+                            DataBufferUtils.release(buffer);
+                        }
+                    })
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(framer.finish())));
+        });
+    }
+
+    // 解析单个 data 负载；没有内容、结束原因、错误或用量的增量（如仅含 role 的首包）返回 null
+    public static ChatDelta parseDelta(byte[] data, int offset, int length) throws IOException {
+        String content = null;
+        String finishReason = null;
+        String error = null;
+        TokenUsage usage = null;
+
+        try (JsonParser parser = JSON_FACTORY.createParser(data, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                    // 只看第一个 choice，其余跳过
+                    if (parser.nextToken() == JsonToken.START_OBJECT) {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String choiceField = parser.currentName();
+                            JsonToken choiceValue = parser.nextToken();
+                            if ("delta".equals(choiceField) && choiceValue == JsonToken.START_OBJECT) {
+                                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                                    String deltaField = parser.currentName();
+                                    JsonToken deltaValue = parser.nextToken();
+                                    if ("content".equals(deltaField) && deltaValue == JsonToken.VALUE_STRING) {
+                                        content = parser.getText();
+                                    } else {
+                                        parser.skipChildren();
+                                    }
+                                }
+                            } else if ("finish_reason".equals(choiceField) && choiceValue == JsonToken.VALUE_STRING) {
+                                finishReason = parser.getText();
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                        skipRemainingElements(parser);
+                    }
+                } else if ("error".equals(field)) {
+                    error = value == JsonToken.START_OBJECT ? readErrorMessage(parser) : parser.getText();
+                } else if ("usage".equals(field) && value == JsonToken.START_OBJECT) {
+                    usage = TokenUsage.read(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        if (content == null && finishReason == null && error == null && usage == null) {
+            return null;
+        }
+        return new ChatDelta(content, finishReason, error, usage);
+    }
+
+    static void skipRemainingElements(JsonParser parser) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.END_ARRAY) {
+            parser.skipChildren();
+        }
+    }
+
+    private static String readErrorMessage(JsonParser parser) throws IOException {
+        String message = "上游返回错误";
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("message".equals(field) && value == JsonToken.VALUE_STRING) {
+                message = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return message;
+    }
+
+    // SSE 拼帧：按行扫描，data 行累积到事件缓冲区，遇到空行分发事件
+    static final class EventFramer {
+
+        private byte[] pending = new byte[4096];
+        private int pendingLength;
+
+        private byte[] event = new byte[4096];
+        private int eventLength;
+        private boolean eventHasData;
+
+        private boolean done;
+
+        List<ChatDelta> feed(DataBuffer buffer) {
+            int readable = buffer.readableByteCount();
+            ensurePending(pendingLength + readable);
+            buffer.read(pending, pendingLength, readable);
+            pendingLength += readable;
+            return drain();
+        }
+
+        // 上游结束时处理最后一个没有以空行结尾的事件
+        List<ChatDelta> finish() {
+            if (pendingLength > 0) {
+                processLine(0, pendingLength);
+                pendingLength = 0;
+            }
+            List<ChatDelta> deltas = new ArrayList<>(1);
+            dispatch(deltas);
+            return deltas;
+        }
+
+        private List<ChatDelta> drain() {
+            List<ChatDelta> deltas = Collections.emptyList();
+            int lineStart = 0;
+            int i = 0;
+            while (i < pendingLength) {
+                byte b = pending[i];
+                if (b != '\n' && b != '\r') {
+                    i++;
+                    continue;
+                }
+                // \r\n 跨数据块时等待下一块再判断
+                if (b == '\r' && i + 1 == pendingLength) {
+                    break;
+                }
+                int lineEnd = i;
+                i += (b == '\r' && pending[i + 1] == '\n') ? 2 : 1;
+
+                if (lineEnd == lineStart) {
+                    if (deltas.isEmpty()) {
+                        deltas = new ArrayList<>(2);
+                    }
+                    dispatch(deltas);
+                } else {
+                    processLine(lineStart, lineEnd);
+                }
+                lineStart = i;
+            }
+            // 未完成的行移到缓冲区开头
+            if (lineStart > 0) {
+                System.arraycopy(pending, lineStart, pending, 0, pendingLength - lineStart);
+                pendingLength -= lineStart;
+            }
+            return deltas;
+        }
+
+        private void processLine(int start, int end) {
+            if (!startsWith(pending, start, end, DATA_FIELD)) {
+                // 注释行（": keep-alive"）以及 event/id/retry 字段与增量内容无关
+                return;
+            }
+            int valueStart = start + DATA_FIELD.length;
+            if (valueStart < end && pending[valueStart] == ' ') {
+                valueStart++;
+            }
+            int valueLength = end - valueStart;
+            int extra = eventHasData ? 1 : 0;
+            ensureEvent(eventLength + extra + valueLength);
+            if (eventHasData) {
+                event[eventLength++] = '\n';
+            }
+            System.arraycopy(pending, valueStart, event, eventLength, valueLength);
+            eventLength += valueLength;
+            eventHasData = true;
+        }
+
+        private void dispatch(List<ChatDelta> deltas) {
+            if (!eventHasData) {
+                return;
+            }
+            try {
+                if (done) {
+                    return;
+                }
+                if (eventLength == DONE.length && startsWith(event, 0, eventLength, DONE)) {
+                    done = true;
+                    return;
+                }
+                ChatDelta delta = parseDelta(event, 0, eventLength);
+                if (delta != null) {
+                    deltas.add(delta);
+                }
+            } catch (IOException e) {
+                // 无法解析的事件直接跳过，不中断整个流
+            } finally {
+                eventLength = 0;
+                eventHasData = false;
+            }
+        }
+
+        private void ensurePending(int capacity) {
+            if (capacity > pending.length) {
+                pending = Arrays.copyOf(pending, Math.max(capacity, pending.length * 2));
+            }
+        }
+
+        private void ensureEvent(int capacity) {
+            if (capacity > event.length) {
+                event = Arrays.copyOf(event, Math.max(capacity, event.length * 2));
+            }
+        }
+
+        private static boolean startsWith(byte[] bytes, int start, int end, byte[] prefix) {
+            if (end - start < prefix.length) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length; i++) {
+                if (bytes[start + i] != prefix[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
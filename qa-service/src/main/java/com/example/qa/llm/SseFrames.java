@@ -0,0 +1,31 @@
+package com.example.qa.llm;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+// 发给客户端的 SSE 数据负载（Spring MVC 会自动加上 "data:" 前缀和事件分隔符）
+public final class SseFrames {
+
+    public static final String DONE = "[DONE]";
+
+    private SseFrames() {
+    }
+
+    public static String of(ChatDelta delta) {
+        if (delta.isError()) {
+            return error(delta.error());
+        }
+        return content(delta.content() != null ? delta.content() : "");
+    }
+
+    public static String content(String text) {
+        return "{\"content\":\"" + escape(text) + "\"}";
+    }
+
+    public static String error(String message) {
+        return "{\"error\":\"" + escape(message) + "\"}";
+    }
+
+    private static String escape(String text) {
+        return new String(JsonStringEncoder.getInstance().quoteAsString(text));
+    }
+}
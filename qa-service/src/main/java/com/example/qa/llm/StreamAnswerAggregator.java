@@ -0,0 +1,51 @@
+package com.example.qa.llm;
+
+// 流式回答聚合：只拼接增量的 content 文本，不保留任何帧格式；
+// 遇到错误增量时标记失败，调用方据此跳过持久化；finish_reason 为 stop 才算完整的回答
+public class StreamAnswerAggregator {
+
+    private final StringBuilder content = new StringBuilder();
+    private boolean failed;
+    private TokenUsage usage;
+    private String finishReason;
+
+    public void accept(ChatDelta delta) {
+        if (delta.usage() != null) {
+            usage = delta.usage();
+        }
+        if (delta.finishReason() != null) {
+            finishReason = delta.finishReason();
+        }
+        if (delta.isError()) {
+            failed = true;
+        } else if (delta.hasContent()) {
+            content.append(delta.content());
+        }
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    // 因 max_tokens 截断（length）、内容过滤等原因结束的回答不完整，不应写入缓存
+    public boolean isComplete() {
+        return !failed && "stop".equals(finishReason);
+    }
+
+    public String finishReason() {
+        return finishReason;
+    }
+
+    public boolean isEmpty() {
+        return content.length() == 0;
+    }
+
+    // 上游在最后一个数据包中返回的用量，未返回时为 null
+    public TokenUsage usage() {
+        return usage;
+    }
+
+    public String content() {
+        return content.toString();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.qa.llm;
+
+// 本地估算 DeepSeek token 数，不依赖分词器：
+// 按官方给出的换算比例，1 个中文字符约 0.6 token，1 个英文字符约 0.3 token。
+// 只用于预算控制，估算值略偏大即可
+public final class TokenEstimator {
+
+    // 每条消息的角色、分隔符等固定开销
+    public static final int MESSAGE_OVERHEAD = 4;
+
+    // 以千分之一 token 为单位累加，避免浮点运算
+    private static final int ASCII_WEIGHT = 300;
+    private static final int CJK_WEIGHT = 600;
+    private static final int OTHER_WEIGHT = 500;
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        long milli = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            milli += weight(codePoint);
+            i += Character.charCount(codePoint);
+        }
+        return (int) ((milli + 999) / 1000);
+    }
+
+    // 一条消息的估算 token 数（含固定开销）
+    public static int estimateMessage(String content) {
+        return estimate(content) + MESSAGE_OVERHEAD;
+    }
+
+    // 截断到不超过 maxTokens，超出部分以省略号代替；不会拆开代理对
+    public static String truncate(String text, int maxTokens) {
+        if (text == null || estimate(text) <= maxTokens) {
+            return text;
+        }
+        long limit = Math.max(0, maxTokens - 1) * 1000L;
+        long milli = 0;
+        int end = 0;
+        while (end < text.length()) {
+            int codePoint = text.codePointAt(end);
+            int weight = weight(codePoint);
+            if (milli + weight > limit) {
+                break;
+            }
+            milli += weight;
+            end += Character.charCount(codePoint);
+        }
+        return text.substring(0, end) + "…";
+    }
+
+    private static int weight(int codePoint) {
+        if (codePoint < 0x80) {
+            return ASCII_WEIGHT;
+        }
+        // 0x2E80 以上基本是中日韩文字、全角符号及表情
+        return codePoint >= 0x2E80 ? CJK_WEIGHT : OTHER_WEIGHT;
+    }
+}
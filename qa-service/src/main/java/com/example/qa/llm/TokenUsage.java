@@ -0,0 +1,35 @@
+package com.example.qa.llm;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+// DeepSeek 返回的 usage 字段；promptCacheHitTokens / promptCacheMissTokens 为上游上下文缓存的命中情况
+public record TokenUsage(long promptTokens, long completionTokens, long promptCacheHitTokens, long promptCacheMissTokens) {
+
+    // 从流式解析器读取 usage 对象，调用时解析器位于 START_OBJECT
+    static TokenUsage read(JsonParser parser) throws IOException {
+        long promptTokens = 0;
+        long completionTokens = 0;
+        long cacheHitTokens = 0;
+        long cacheMissTokens = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value != JsonToken.VALUE_NUMBER_INT) {
+                parser.skipChildren();
+                continue;
+            }
+            switch (field) {
+                case "prompt_tokens" -> promptTokens = parser.getLongValue();
+                case "completion_tokens" -> completionTokens = parser.getLongValue();
+                case "prompt_cache_hit_tokens" -> cacheHitTokens = parser.getLongValue();
+                case "prompt_cache_miss_tokens" -> cacheMissTokens = parser.getLongValue();
+                default -> {
+                }
+            }
+        }
+        return new TokenUsage(promptTokens, completionTokens, cacheHitTokens, cacheMissTokens);
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.qa.metrics;
+
+import com.example.qa.llm.TokenUsage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+// 问答链路指标：按接口（endpoint）、模型（model）、答案来源（path）打标签。
+// 接口名由 Controller 通过 Reactor Context 传入，服务层不感知调用方。
+// 标签组合有限，每种组合的 Meter 注册一次后缓存，记录时不再走 builder 和注册表查找
+@Component
+public class QaMetrics {
+
+    public static final String PATH_CACHE = "cache";
+    public static final String PATH_KNOWLEDGE = "knowledge";
+    public static final String PATH_LLM = "llm";
+    public static final String PATH_LLM_HISTORY = "llm-history";
+    public static final String PATH_FALLBACK = "fallback";
+
+    private static final String ENDPOINT_KEY = QaMetrics.class.getName() + ".endpoint";
+    private static final String UNKNOWN = "unknown";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<MeterKey, Timer> answerTimers = new ConcurrentHashMap<>();
+    private final Map<MeterKey, Timer> upstreamTimers = new ConcurrentHashMap<>();
+    private final Map<MeterKey, Timer> ttftTimers = new ConcurrentHashMap<>();
+    private final Map<MeterKey, UsageMeters> usageMeters = new ConcurrentHashMap<>();
+    private final Map<MeterKey, Counter> speculativeCalls = new ConcurrentHashMap<>();
+
+    public QaMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    // Controller 使用：.contextWrite(QaMetrics.endpoint("/qa/ask"))
+    public static Function<Context, Context> endpoint(String endpoint) {
+        return context -> context.put(ENDPOINT_KEY, endpoint);
+    }
+
+    public static String endpointOf(ContextView context) {
+        return context.getOrDefault(ENDPOINT_KEY, UNKNOWN);
+    }
+
+    // 记录一次问答的端到端耗时；调用方在确定答案来源时设置 path
+    public <T> Mono<T> timeAnswer(Function<AtomicReference<String>, Mono<T>> answer) {
+        return Mono.deferContextual(context -> {
+            String endpoint = endpointOf(context);
+            AtomicReference<String> path = new AtomicReference<>(UNKNOWN);
+            long start = System.nanoTime();
+            return answer.apply(path)
+                    .doOnSuccess(value -> recordAnswer(endpoint, path.get(), System.nanoTime() - start));
+        });
+    }
+
+    // 流式版本，流结束时记录
+    public <T> Flux<T> timeAnswerStream(Function<AtomicReference<String>, Flux<T>> answer) {
+        return Flux.deferContextual(context -> {
+            String endpoint = endpointOf(context);
+            AtomicReference<String> path = new AtomicReference<>(UNKNOWN);
+            long start = System.nanoTime();
+            return answer.apply(path)
+                    .doOnComplete(() -> recordAnswer(endpoint, path.get(), System.nanoTime() - start));
+        });
+    }
+
+    private void recordAnswer(String endpoint, String path, long nanos) {
+        answerTimers.computeIfAbsent(new MeterKey(endpoint, null, path, null), key -> Timer.builder("qa.answer.latency")
+                        .description("问答端到端耗时")
+                        .tag("endpoint", endpoint)
+                        .tag("path", path)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // 上游调用总耗时，outcome 为 success / error
+    public void recordUpstream(String endpoint, String model, String path, long nanos, boolean success) {
+        String outcome = success ? "success" : "error";
+        upstreamTimers.computeIfAbsent(new MeterKey(endpoint, model, path, outcome), key -> Timer.builder("qa.llm.upstream.latency")
+                        .description("DeepSeek 调用总耗时")
+                        .tag("endpoint", endpoint)
+                        .tag("model", model)
+                        .tag("path", path)
+                        .tag("outcome", outcome)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // 流式调用首个增量的到达时间
+    public void recordTimeToFirstToken(String endpoint, String model, String path, long nanos) {
+        ttftTimers.computeIfAbsent(new MeterKey(endpoint, model, path, null), key -> Timer.builder("qa.llm.upstream.ttft")
+                        .description("DeepSeek 流式调用首个增量耗时")
+                        .tag("endpoint", endpoint)
+                        .tag("model", model)
+                        .tag("path", path)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordUsage(String endpoint, String model, String path, TokenUsage usage) {
+        if (usage == null) {
+            return;
+        }
+        UsageMeters meters = usageMeters.computeIfAbsent(new MeterKey(endpoint, model, path, null),
+                key -> new UsageMeters(
+                        tokenCounter(endpoint, model, path, "prompt"),
+                        tokenCounter(endpoint, model, path, "completion"),
+                        tokenCounter(endpoint, model, path, "prompt-cache-hit"),
+                        tokenCounter(endpoint, model, path, "prompt-cache-miss"),
+                        DistributionSummary.builder("qa.llm.completion.tokens.per.call")
+                                .description("单次调用生成的 token 数")
+                                .tag("endpoint", endpoint)
+                                .tag("model", model)
+                                .tag("path", path)
+                                .publishPercentileHistogram()
+                                .register(meterRegistry)));
+        meters.prompt().increment(usage.promptTokens());
+        meters.completion().increment(usage.completionTokens());
+        meters.promptCacheHit().increment(usage.promptCacheHitTokens());
+        meters.promptCacheMiss().increment(usage.promptCacheMissTokens());
+        meters.completionPerCall().record(usage.completionTokens());
+    }
+
+    // 并行编排中投机发起的 DeepSeek 调用：used 为答案被采用，cancelled 为知识库命中后被取消
+    public void recordSpeculativeCall(String endpoint, String outcome) {
+        speculativeCalls.computeIfAbsent(new MeterKey(endpoint, null, null, outcome), key -> Counter.builder("qa.llm.speculative.calls")
+                        .description("投机发起的 DeepSeek 调用次数")
+                        .tag("endpoint", endpoint)
+                        .tag("outcome", outcome)
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    private Counter tokenCounter(String endpoint, String model, String path, String type) {
+        return Counter.builder("qa.llm.tokens")
+                .tag("endpoint", endpoint)
+                .tag("model", model)
+                .tag("path", path)
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+
+    // 缓存键：各指标用到的标签值，未用到的为 null
+    private record MeterKey(String endpoint, String model, String path, String outcome) {
+    }
+
+    private record UsageMeters(Counter prompt, Counter completion, Counter promptCacheHit, Counter promptCacheMiss,
+                               DistributionSummary completionPerCall) {
+    }
+}
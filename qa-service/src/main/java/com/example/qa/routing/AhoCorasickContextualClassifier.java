@@ -0,0 +1,141 @@
+package com.example.qa.routing;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 默认的路由分类器：指代词和追问词编译成一个 Aho-Corasick 自动机，一次扫描完成判断。
+// 配置在 Nacos 中修改后重新编译词典，编译失败时继续使用旧词典
+@Slf4j
+@Component
+public class AhoCorasickContextualClassifier implements ContextualQuestionClassifier,
+        ApplicationListener<EnvironmentChangeEvent> {
+
+    public static final String PREFIX = "qa.routing.contextual";
+
+    private final Environment environment;
+    private volatile Dictionary dictionary;
+
+    @Autowired
+    public AhoCorasickContextualClassifier(Environment environment) {
+        this.environment = environment;
+        this.dictionary = compile(bind(environment));
+    }
+
+    // 不依赖 Spring 环境的构造方式，词典固定
+    public AhoCorasickContextualClassifier(ContextualRoutingProperties properties) {
+        this.environment = null;
+        this.dictionary = compile(properties);
+    }
+
+    @Override
+    public boolean needsContext(String question) {
+        if (question == null) {
+            return false;
+        }
+        Dictionary current = dictionary;
+        String text = question.trim();
+        if (text.length() < current.shortQuestionLength()) {
+            log.debug("问题过于简短 ({}字符), 可能需要上下文理解", text.length());
+            return true;
+        }
+        boolean followUpEligible = text.length() <= current.followUpMaxLength();
+        return current.matcher().scan(text, (pattern, start, end) -> {
+            Entry entry = current.entries()[pattern];
+            if (entry.wordBounded() && !isWordBoundary(text, start, end)) {
+                return false;
+            }
+            if (entry.reference()) {
+                log.debug("问题包含指代词 '{}', 需要上下文理解", entry.word());
+                return true;
+            }
+            if (followUpEligible) {
+                log.debug("问题是简短追问且包含 '{}', 可能需要上下文", entry.word());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @Override
+    public void onApplicationEvent(EnvironmentChangeEvent event) {
+        if (environment == null || event.getKeys().stream().noneMatch(key -> key.startsWith(PREFIX))) {
+            return;
+        }
+        try {
+            dictionary = compile(bind(environment));
+            log.info("上下文路由词典已更新，词条数: {}", dictionary.entries().length);
+        } catch (RuntimeException e) {
+            log.error("上下文路由词典更新失败，继续使用旧词典: {}", e.getMessage());
+        }
+    }
+
+    private static ContextualRoutingProperties bind(Environment environment) {
+        return Binder.get(environment)
+                .bind(PREFIX, Bindable.ofInstance(new ContextualRoutingProperties()))
+                .orElseGet(ContextualRoutingProperties::new);
+    }
+
+    // 同一个词同时出现在两个列表中时按指代词处理
+    private static Dictionary compile(ContextualRoutingProperties properties) {
+        Map<String, Boolean> words = new LinkedHashMap<>();
+        for (String word : properties.getReferences()) {
+            addWord(words, word, true);
+        }
+        for (String word : properties.getFollowUpWords()) {
+            addWord(words, word, false);
+        }
+
+        List<String> patterns = new ArrayList<>(words.size());
+        Entry[] entries = new Entry[words.size()];
+        for (Map.Entry<String, Boolean> word : words.entrySet()) {
+            entries[patterns.size()] = new Entry(word.getKey(), word.getValue(), hasWordCharacter(word.getKey()));
+            patterns.add(word.getKey());
+        }
+        return new Dictionary(AhoCorasickMatcher.compile(patterns), entries,
+                properties.getShortQuestionLength(), properties.getFollowUpMaxLength());
+    }
+
+    private static void addWord(Map<String, Boolean> words, String word, boolean reference) {
+        if (word == null || word.trim().isEmpty()) {
+            return;
+        }
+        words.merge(word.trim().toLowerCase(), reference, Boolean::logicalOr);
+    }
+
+    private static boolean isWordBoundary(String text, int start, int end) {
+        return (start == 0 || !isWordCharacter(text.charAt(start - 1)))
+                && (end == text.length() || !isWordCharacter(text.charAt(end)));
+    }
+
+    private static boolean hasWordCharacter(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (isWordCharacter(word.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 拉丁字母和数字；中日韩文字没有词间空格，不参与整词判断
+    private static boolean isWordCharacter(char c) {
+        return c < 0x2E80 && Character.isLetterOrDigit(c);
+    }
+
+    private record Entry(String word, boolean reference, boolean wordBounded) {
+    }
+
+    private record Dictionary(AhoCorasickMatcher matcher, Entry[] entries, int shortQuestionLength,
+                              int followUpMaxLength) {
+    }
+}
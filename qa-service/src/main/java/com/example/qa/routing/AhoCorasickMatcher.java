@@ -0,0 +1,172 @@
+package com.example.qa.routing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Aho-Corasick 多模式串匹配自动机：一次扫描找出文本中出现的全部模式串。
+// 模式串和输入都按 Character.toLowerCase 逐字符比较，扫描时不创建小写副本。
+// ASCII 字符预先展开为完整的状态转移表，扫描英文时每个字符只查一次表；其他字符走有序出边 + 失败指针。
+// 编译后不可变，可在多个线程间共享
+public final class AhoCorasickMatcher {
+
+    // 返回 true 时停止扫描
+    @FunctionalInterface
+    public interface MatchHandler {
+        boolean onMatch(int pattern, int start, int end);
+    }
+
+    // 每个状态的出边：keys 有序，targets 与之一一对应，按二分查找
+    private final char[][] keys;
+    private final int[][] targets;
+    // asciiNext[state * ASCII + c]：已合并失败指针的 ASCII 转移
+    private final int[] asciiNext;
+    private final int[] fail;
+    // 以该状态结尾的模式串编号，没有时为 -1
+    private final int[] output;
+    // 沿失败链找到的下一个有输出的状态，没有时为 -1
+    private final int[] outputLink;
+    // 到达该状态时第一个需要报告的状态（自身或 outputLink），绝大多数状态为 -1，扫描时只需一次判断
+    private final int[] firstOutput;
+    private final int[] patternLengths;
+
+    private static final int ASCII = 128;
+
+    private AhoCorasickMatcher(char[][] keys, int[][] targets, int[] asciiNext, int[] fail, int[] output,
+                               int[] outputLink, int[] patternLengths) {
+        this.keys = keys;
+        this.targets = targets;
+        this.asciiNext = asciiNext;
+        this.fail = fail;
+        this.output = output;
+        this.outputLink = outputLink;
+        this.firstOutput = new int[output.length];
+        for (int state = 0; state < output.length; state++) {
+            firstOutput[state] = output[state] >= 0 ? state : outputLink[state];
+        }
+        this.patternLengths = patternLengths;
+    }
+
+    // 模式串编号即其在列表中的下标；重复的模式串只保留第一个编号，空串忽略
+    public static AhoCorasickMatcher compile(List<String> patterns) {
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> outputs = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        outputs.add(-1);
+
+        int[] lengths = new int[patterns.size()];
+        for (int id = 0; id < patterns.size(); id++) {
+            String pattern = patterns.get(id);
+            lengths[id] = pattern.length();
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = Character.toLowerCase(pattern.charAt(i));
+                Integer next = trie.get(state).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.get(state).put(c, next);
+                    trie.add(new TreeMap<>());
+                    outputs.add(-1);
+                }
+                state = next;
+            }
+            if (outputs.get(state) < 0) {
+                outputs.set(state, id);
+            }
+        }
+
+        int size = trie.size();
+        char[][] keys = new char[size][];
+        int[][] targets = new int[size][];
+        int[] output = new int[size];
+        for (int state = 0; state < size; state++) {
+            Map<Character, Integer> edges = trie.get(state);
+            keys[state] = new char[edges.size()];
+            targets[state] = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                keys[state][i] = edge.getKey();
+                targets[state][i] = edge.getValue();
+                i++;
+            }
+            output[state] = outputs.get(state);
+        }
+
+        // 按层次遍历计算失败指针、输出链和 ASCII 转移表；父状态总是先于子状态处理
+        int[] fail = new int[size];
+        int[] outputLink = new int[size];
+        Arrays.fill(outputLink, -1);
+        int[] asciiNext = new int[size * ASCII];
+        for (int i = 0; i < keys[0].length; i++) {
+            if (keys[0][i] < ASCII) {
+                asciiNext[keys[0][i]] = targets[0][i];
+            }
+        }
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[0]) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            System.arraycopy(asciiNext, fail[state] * ASCII, asciiNext, state * ASCII, ASCII);
+            for (int i = 0; i < keys[state].length; i++) {
+                if (keys[state][i] < ASCII) {
+                    asciiNext[state * ASCII + keys[state][i]] = targets[state][i];
+                }
+            }
+            for (int i = 0; i < keys[state].length; i++) {
+                char c = keys[state][i];
+                int child = targets[state][i];
+                int f = fail[state];
+                while (f != 0 && step(keys, targets, f, c) < 0) {
+                    f = fail[f];
+                }
+                int next = step(keys, targets, f, c);
+                fail[child] = next >= 0 && next != child ? next : 0;
+                outputLink[child] = output[fail[child]] >= 0 ? fail[child] : outputLink[fail[child]];
+                queue.add(child);
+            }
+        }
+        return new AhoCorasickMatcher(keys, targets, asciiNext, fail, output, outputLink, lengths);
+    }
+
+    // 扫描文本，每找到一个模式串回调一次（end 不含）；返回是否被回调提前终止
+    public boolean scan(String text, MatchHandler handler) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < ASCII) {
+                if (c >= 'A' && c <= 'Z') {
+                    c += 'a' - 'A';
+                }
+                state = asciiNext[state * ASCII + c];
+            } else {
+                c = Character.toLowerCase(c);
+                int next;
+                while ((next = step(keys, targets, state, c)) < 0 && state != 0) {
+                    state = fail[state];
+                }
+                state = Math.max(next, 0);
+            }
+            for (int s = firstOutput[state]; s >= 0; s = outputLink[s]) {
+                int pattern = output[s];
+                if (handler.onMatch(pattern, i + 1 - patternLengths[pattern], i + 1)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static int step(char[][] keys, int[][] targets, int state, char c) {
+        int index = Arrays.binarySearch(keys[state], c);
+        return index >= 0 ? targets[state][index] : -1;
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.qa.routing;
+
+// 多轮对话路由：判断问题是否依赖之前的对话。
+// 返回 false 的问题走可缓存的单轮流程，返回 true 的问题带历史调用 DeepSeek
+public interface ContextualQuestionClassifier {
+
+    boolean needsContext(String question);
+}
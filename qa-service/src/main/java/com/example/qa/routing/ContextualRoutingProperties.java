@@ -0,0 +1,30 @@
+package com.example.qa.routing;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// qa.routing.contextual.* 配置，可通过 Nacos 动态修改。
+// 含拉丁字母的词按整词匹配（前后不能紧挨字母或数字），中文词按子串匹配
+@Data
+public class ContextualRoutingProperties {
+
+    // 指代词：出现即认为依赖上下文
+    private List<String> references = new ArrayList<>(List.of(
+            "它", "它们", "他", "她", "他们", "这个", "那个", "这些", "那些", "这种", "那种",
+            "上面", "上述", "前面", "刚才", "刚刚", "之前",
+            "it", "its", "this", "that", "these", "those", "they", "them",
+            "above", "previous", "earlier", "mentioned"));
+
+    // 追问词：只在短问题中认为依赖上下文，避免完整的 what/how 问题都走多轮流程
+    private List<String> followUpWords = new ArrayList<>(List.of(
+            "什么", "怎么", "如何", "为什么", "哪个", "呢",
+            "what", "how", "why", "when", "which", "where"));
+
+    // 短于该字符数的问题一律认为依赖上下文
+    private int shortQuestionLength = 10;
+
+    // 不超过该字符数的问题包含追问词时认为依赖上下文
+    private int followUpMaxLength = 20;
+}
@@ -0,0 +1,9 @@
+package com.example.qa.service;
+
+// /qa/ask 在缓存未命中后的编排方式
+public enum AskOrchestration {
+    // 依次执行：上下文检索 -> 缓存 -> 知识库精确匹配 -> DeepSeek
+    SEQUENTIAL,
+    // 缓存未命中后并发执行知识库精确匹配和上下文检索，可选在对冲延迟后投机调用 DeepSeek
+    PARALLEL
+}
@@ -1,13 +1,29 @@
 package com.example.qa.service;
 
 import com.example.common.response.ApiResponse;
-import com.example.knowledge.entity.Knowledge;
-import com.example.qa.client.KnowledgeServiceClient;
+import com.example.qa.cache.AnswerCache;
+import com.example.qa.client.ReactiveKnowledgeClient;
 import com.example.qa.entity.Answer;
+import com.example.qa.llm.AdaptiveConcurrencyLimiter;
+import com.example.qa.llm.ChatCompletionCodec;
+import com.example.qa.llm.ChatCompletionRequest;
+import com.example.qa.llm.ChatCompletionResponse;
+import com.example.qa.llm.ChatDelta;
+import com.example.qa.llm.ChatMessage;
+import com.example.qa.llm.CircuitBreaker;
+import com.example.qa.llm.CircuitOpenException;
+import com.example.qa.llm.ConversationContextBuilder;
+import com.example.qa.llm.LimitExceededException;
+import com.example.qa.llm.RequestCoalescer;
+import com.example.qa.llm.SseDeltaDecoder;
+import com.example.qa.llm.StreamAnswerAggregator;
+import com.example.qa.metrics.QaMetrics;
+import com.example.qa.routing.ContextualQuestionClassifier;
+import com.example.qa.session.ConversationSessionStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -16,18 +32,19 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.annotation.PostConstruct;
+import java.io.IOException;
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @Service
 public class DeepSeekService {
 
     private final WebClient webClient;
-    private final KnowledgeServiceClient knowledgeServiceClient;
 
     @Value("${deepseek.api.key}")
     private String apiKey;
@@ -38,6 +55,36 @@ public class DeepSeekService {
     @Value("${deepseek.model}")
     private String model;
 
+    // 单次回答的最大生成 token 数
+    @Value("${qa.llm.max-tokens:1000}")
+    private int maxTokens;
+
+    // 流式接口回放缓存答案时每个增量的字符数
+    @Value("${qa.stream.replay-chunk-size:16}")
+    private int replayChunkSize;
+
+    // /qa/ask 的编排方式，见 AskOrchestration
+    @Value("${qa.ask.orchestration:PARALLEL}")
+    private AskOrchestration orchestration;
+
+    // 并行编排下是否投机调用 DeepSeek，以及精确匹配超过多久未返回才发起
+    @Value("${qa.ask.speculative.enabled:true}")
+    private boolean speculativeEnabled;
+
+    @Value("${qa.ask.speculative.hedge-delay:300ms}")
+    private Duration hedgeDelay;
+
+    // 精确匹配未命中时，问题向量相似度不低于阈值的知识库问题视为命中
+    @Value("${qa.knowledge.near-exact.enabled:true}")
+    private boolean nearExactEnabled;
+
+    @Value("${qa.knowledge.near-exact.threshold:0.9}")
+    private double nearExactThreshold;
+
+    // 作为 DeepSeek 上下文的知识库检索结果条数，按相关性取前几条
+    @Value("${qa.context.max-results:5}")
+    private int contextMaxResults;
+
     @PostConstruct
     public void init() {
         log.info("DeepSeek Service 初始化完成");
@@ -48,409 +95,543 @@ public class DeepSeekService {
                 apiKey.substring(apiKey.length() - 4));
     }
 
-    // 原有的主要方法，增加知识库查询逻辑
-    @Cacheable(value = "answerCache", key = "#question")
-    public Answer getAnswer(String question, Long userId, List<String> context) {
-        try {
-            log.info("正在处理问题: {}", question);
-
-            // 第一步：尝试从知识库精确匹配
-            Answer knowledgeAnswer = getAnswerFromKnowledge(question, userId);
-            if (knowledgeAnswer != null) {
-                log.info("从知识库找到精确匹配答案");
-                return knowledgeAnswer;
-            }
+    private final ReactiveKnowledgeClient reactiveKnowledgeClient;
+    private final AnswerCache answerCache;
+    private final RequestCoalescer requestCoalescer;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final CircuitBreaker circuitBreaker;
+    private final ConversationContextBuilder contextBuilder;
+    private final ConversationSessionStore sessionStore;
+    private final QaMetrics metrics;
+    private final ChatCompletionCodec codec;
+    private final ContextualQuestionClassifier contextualClassifier;
 
-            // 第二步：知识库没有精确匹配，调用 DeepSeek API
-            log.info("知识库无精确匹配，调用 DeepSeek API");
-            return getAnswerFromDeepSeek(question, userId, context);
+    public DeepSeekService(WebClient webClient,
+                           ReactiveKnowledgeClient reactiveKnowledgeClient,
+                           AnswerCache answerCache,
+                           RequestCoalescer requestCoalescer,
+                           AdaptiveConcurrencyLimiter concurrencyLimiter,
+                           CircuitBreaker circuitBreaker,
+                           ConversationContextBuilder contextBuilder,
+                           ConversationSessionStore sessionStore,
+                           QaMetrics metrics,
+                           ChatCompletionCodec codec,
+                           ContextualQuestionClassifier contextualClassifier) {
+        this.webClient = webClient;
+        this.reactiveKnowledgeClient = reactiveKnowledgeClient;
+        this.answerCache = answerCache;
+        this.requestCoalescer = requestCoalescer;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.contextBuilder = contextBuilder;
+        this.sessionStore = sessionStore;
+        this.metrics = metrics;
+        this.codec = codec;
+        this.contextualClassifier = contextualClassifier;
+    }
 
-        } catch (Exception e) {
-            log.error("获取答案时发生错误: {}", e.getMessage(), e);
-            return createFallbackAnswer(question, userId, e.getMessage());
-        }
+    // 阻塞版本，保留给非响应式调用方；内部复用响应式链路
+    public Answer getAnswer(String question, Long userId, List<String> context) {
+        return getAnswerAsync(question, userId, context).block();
     }
 
-    // 修改后的支持多轮对话的方法 - 优先使用缓存
+    // 阻塞版本，保留给非响应式调用方；内部复用响应式链路
     public Answer getAnswerWithHistory(String question, Long userId, List<Map<String, String>> history) {
-        try {
-            log.info("正在处理多轮对话问题: {}, 历史对话数量: {}", question, history != null ? history.size() : 0);
+        return getAnswerWithHistoryAsync(question, userId, history).block();
+    }
 
-            // 第一步：如果没有历史对话或历史对话为空，使用原有的缓存方法
-            if (history == null || history.isEmpty()) {
-                log.info("无历史对话，使用原有缓存方法 getAnswer()");
-                return getAnswer(question, userId, List.of());
-            }
+    // 响应式主流程：缓存 -> 知识库精确匹配 -> DeepSeek，全程不阻塞线程
+    public Mono<Answer> getAnswerAsync(String question, Long userId, List<String> context) {
+        return metrics.timeAnswer(path -> Mono.defer(() -> {
+                    log.info("正在处理问题: {}", question);
+                    return answerCache.lookup(question);
+                })
+                .doOnNext(answer -> path.set(QaMetrics.PATH_CACHE))
+                .switchIfEmpty(Mono.defer(() -> findKnowledgeAnswer(question, userId)
+                        .doOnNext(answer -> {
+                            log.info("从知识库找到精确匹配答案");
+                            path.set(QaMetrics.PATH_KNOWLEDGE);
+                        })
+                        .switchIfEmpty(Mono.defer(() -> {
+                            log.info("知识库无精确匹配，调用 DeepSeek API");
+                            path.set(QaMetrics.PATH_LLM);
+                            return getAnswerFromDeepSeek(question, userId, context);
+                        }))
+                        .doOnNext(answer -> answerCache.put(question, answer))))
+                .onErrorResume(e -> {
+                    path.set(QaMetrics.PATH_FALLBACK);
+                    return degradedAnswer(question, userId, e);
+                }));
+    }
 
-            // 第二步：即使有历史对话，也先尝试从缓存获取单独问题的答案
-            log.info("存在历史对话，但先尝试从缓存获取单独问题的答案");
-            Answer cachedAnswer = tryGetCachedAnswer(question, userId);
-            if (cachedAnswer != null) {
-                log.info("从缓存找到答案，直接返回（多轮对话中的缓存命中）");
-                return cachedAnswer;
-            }
+    // /qa/ask 入口：按配置的编排方式组合上下文检索、缓存、知识库精确匹配和 DeepSeek
+    public Mono<Answer> askAsync(String question, Long userId, Mono<List<String>> contextSearch) {
+        if (orchestration == AskOrchestration.PARALLEL) {
+            return getAnswerFanOutAsync(question, userId, contextSearch);
+        }
+        return contextSearch.flatMap(context -> getAnswerAsync(question, userId, context));
+    }
 
-            // 第三步：检查知识库精确匹配
-            Answer knowledgeAnswer = getAnswerFromKnowledge(question, userId);
-            if (knowledgeAnswer != null) {
-                log.info("从知识库找到精确匹配答案");
-                return knowledgeAnswer;
-            }
+    // 并行编排：缓存未命中后同时发起知识库精确匹配和上下文检索。
+    // 精确匹配命中时直接返回，并取消上下文检索和已发起的 DeepSeek 调用；
+    // 开启投机调用时，精确匹配超过 hedgeDelay 仍未返回就先调用 DeepSeek，其结果在确认未命中后采用
+    public Mono<Answer> getAnswerFanOutAsync(String question, Long userId, Mono<List<String>> contextSearch) {
+        return metrics.timeAnswer(path -> Mono.defer(() -> {
+                    log.info("正在处理问题（并行编排）: {}", question);
+                    return answerCache.lookup(question);
+                })
+                .doOnNext(answer -> path.set(QaMetrics.PATH_CACHE))
+                .switchIfEmpty(Mono.defer(() -> fanOut(question, userId, contextSearch, path))
+                        .doOnNext(answer -> answerCache.put(question, answer)))
+                .onErrorResume(e -> {
+                    path.set(QaMetrics.PATH_FALLBACK);
+                    return degradedAnswer(question, userId, e);
+                }));
+    }
 
-            // 第四步：检查问题是否需要上下文理解
-            if (needsContextualUnderstanding(question, history)) {
-                log.info("问题需要上下文理解，调用 DeepSeek API 进行多轮对话");
-                return getAnswerFromDeepSeekWithHistory(question, userId, history);
-            } else {
-                log.info("问题不需要上下文，使用普通缓存方法处理");
-                return getAnswer(question, userId, List.of());
-            }
+    private Mono<Answer> fanOut(String question, Long userId, Mono<List<String>> contextSearch,
+                                AtomicReference<String> path) {
+        return Mono.deferContextual(ctx -> {
+            String endpoint = QaMetrics.endpointOf(ctx);
+            // 精确匹配同时用于结果分支和 DeepSeek 的触发信号，只查询一次
+            Mono<Answer> exact = findKnowledgeAnswer(question, userId).cache();
+            Mono<Boolean> miss = exact.hasElement().filter(hit -> !hit);
+            Mono<Boolean> trigger = speculativeEnabled
+                    ? Mono.firstWithSignal(Mono.delay(hedgeDelay).thenReturn(true), miss)
+                    : miss;
+
+            AtomicBoolean exactResolved = new AtomicBoolean();
+            AtomicBoolean speculative = new AtomicBoolean();
+            // zip 立即订阅上下文检索，与精确匹配并发执行；精确匹配先命中时 trigger 为空，上下文检索随之取消
+            Mono<Answer> llm = Mono.zip(contextSearch, trigger)
+                    .flatMap(tuple -> {
+                        if (!exactResolved.get()) {
+                            speculative.set(true);
+                            log.info("知识库精确匹配 {} 内未返回，投机调用 DeepSeek API", hedgeDelay);
+                        } else {
+                            log.info("知识库无精确匹配，调用 DeepSeek API");
+                        }
+                        return getAnswerFromDeepSeek(question, userId, tuple.getT1());
+                    });
 
-        } catch (Exception e) {
-            log.error("获取答案时发生错误: {}", e.getMessage(), e);
-            return createFallbackAnswer(question, userId, e.getMessage());
+            // 两个分支的结果按到达顺序处理：知识库命中立即采用，DeepSeek 的结果要等确认未命中才采用。
+            // next() 取得答案后取消其余分支；DeepSeek 出错只在知识库也未命中时才向外传播
+            Answer[] pending = new Answer[1];
+            return Flux.mergeDelayError(1,
+                            exact.map(answer -> new Branch(answer, true)).defaultIfEmpty(Branch.MISS),
+                            llm.map(answer -> new Branch(answer, false)))
+                    .<Answer>handle((branch, sink) -> {
+                        if (branch.knowledge()) {
+                            exactResolved.set(true);
+                            if (branch.answer() != null) {
+                                log.info("从知识库找到精确匹配答案");
+                                path.set(QaMetrics.PATH_KNOWLEDGE);
+                                if (speculative.get()) {
+                                    metrics.recordSpeculativeCall(endpoint, "cancelled");
+                                }
+                                sink.next(branch.answer());
+                            } else if (pending[0] != null) {
+                                useLlmAnswer(endpoint, path, speculative.get());
+                                sink.next(pending[0]);
+                            }
+                        } else if (exactResolved.get()) {
+                            useLlmAnswer(endpoint, path, speculative.get());
+                            sink.next(branch.answer());
+                        } else {
+                            pending[0] = branch.answer();
+                        }
+                    })
+                    .next();
+        });
+    }
+
+    private void useLlmAnswer(String endpoint, AtomicReference<String> path, boolean speculative) {
+        path.set(QaMetrics.PATH_LLM);
+        if (speculative) {
+            metrics.recordSpeculativeCall(endpoint, "used");
         }
     }
 
-    private final org.springframework.cache.CacheManager cacheManager;
+    // 并行编排中一个分支的结果；knowledge 为 true 且 answer 为 null 表示知识库未命中
+    private record Branch(Answer answer, boolean knowledge) {
+        static final Branch MISS = new Branch(null, true);
+    }
 
-    // 修改构造函数
-    public DeepSeekService(WebClient webClient,
-                           KnowledgeServiceClient knowledgeServiceClient,
-                           org.springframework.cache.CacheManager cacheManager) {
-        this.webClient = webClient;
-        this.knowledgeServiceClient = knowledgeServiceClient;
-        this.cacheManager = cacheManager;
+    // 服务端会话：从会话存储加载历史，回答后把本轮问答追加到会话
+    // 降级答案不追加到会话，避免后续轮次把错误提示当作上下文
+    public Mono<Answer> getAnswerInSessionAsync(String question, Long userId, String sessionId) {
+        String conversationId = ConversationContextBuilder.sessionKey(ConversationSessionStore.scopedId(userId, sessionId));
+        return sessionStore.load(userId, sessionId)
+                .flatMap(history -> answerWithHistory(question, userId, history, conversationId))
+                .flatMap(answer -> answer.isDegraded()
+                        ? Mono.just(answer)
+                        : sessionStore.append(userId, sessionId, question, answer.getAnswer()).thenReturn(answer));
     }
 
-    // 新增：手动查询缓存的方法
-    private Answer tryGetCachedAnswer(String question, Long userId) {
-        try {
-            org.springframework.cache.Cache cache = cacheManager.getCache("answerCache");
-            if (cache != null) {
-                org.springframework.cache.Cache.ValueWrapper wrapper = cache.get(question);
-                if (wrapper != null) {
-                    Answer cachedAnswer = (Answer) wrapper.get();
-                    log.info("从缓存获取到答案: {}", question);
-                    return cachedAnswer;
-                }
-            }
-            log.debug("缓存中未找到问题: {}", question);
-            return null;
-        } catch (Exception e) {
-            log.debug("查询缓存失败: {}", e.getMessage());
-            return null;
-        }
+    // 响应式多轮对话流程 - 优先使用缓存
+    public Mono<Answer> getAnswerWithHistoryAsync(String question, Long userId, List<Map<String, String>> history) {
+        return answerWithHistory(question, userId, history, ConversationContextBuilder.historyKey(history));
     }
 
-    // 新增：判断问题是否需要上下文理解
-    private boolean needsContextualUnderstanding(String question, List<Map<String, String>> history) {
+    // conversationId 用于复用更早轮次的滚动摘要
+    private Mono<Answer> answerWithHistory(String question, Long userId, List<Map<String, String>> history,
+                                           String conversationId) {
+        log.info("正在处理多轮对话问题: {}, 历史对话数量: {}", question, history != null ? history.size() : 0);
+
+        // 第一步：如果没有历史对话或历史对话为空，使用原有的缓存流程
         if (history == null || history.isEmpty()) {
-            return false;
+            log.info("无历史对话，使用原有缓存流程 getAnswerAsync()");
+            return getAnswerAsync(question, userId, List.of());
         }
 
-        String lowerQuestion = question.toLowerCase().trim();
-
-        // 包含指代词的问题需要上下文
-        String[] contextualWords = {
-                "它", "这个", "那个", "他", "她", "这", "那", "上面", "前面", "刚才", "之前",
-                "this", "that", "it", "above", "previous", "earlier", "what", "which"
-        };
+        // 第二步：即使有历史对话，也先尝试从缓存获取单独问题的答案
+        return metrics.timeAnswer(path -> answerCache.lookup(question)
+                .doOnNext(answer -> {
+                    log.info("从缓存找到答案，直接返回（多轮对话中的缓存命中）");
+                    path.set(QaMetrics.PATH_CACHE);
+                })
+                // 第三步：检查知识库精确匹配
+                .switchIfEmpty(Mono.defer(() -> findKnowledgeAnswer(question, userId)
+                        .doOnNext(answer -> {
+                            log.info("从知识库找到精确匹配答案");
+                            path.set(QaMetrics.PATH_KNOWLEDGE);
+                        })))
+                // 第四步：检查问题是否需要上下文理解
+                .switchIfEmpty(Mono.defer(() -> {
+                    if (needsContextualUnderstanding(question, history)) {
+                        log.info("问题需要上下文理解，调用 DeepSeek API 进行多轮对话");
+                        path.set(QaMetrics.PATH_LLM_HISTORY);
+                        return getAnswerFromDeepSeekWithHistory(question, userId, history, conversationId);
+                    }
+                    log.info("问题不需要上下文，使用普通缓存流程处理");
+                    path.set(QaMetrics.PATH_LLM);
+                    return getAnswerFromDeepSeek(question, userId, List.of())
+                            .doOnNext(answer -> answerCache.put(question, answer));
+                }))
+                .onErrorResume(e -> {
+                    path.set(QaMetrics.PATH_FALLBACK);
+                    return degradedAnswer(question, userId, e);
+                }));
+    }
 
-        for (String word : contextualWords) {
-            if (lowerQuestion.contains(word)) {
-                log.info("问题包含指代词 '{}', 需要上下文理解", word);
-                return true;
-            }
-        }
+    // 缓存预热使用：知识库精确匹配 -> 检索上下文后调用 DeepSeek（useLlm 为 false 时跳过），结果写入缓存。
+    // 与 /qa/ask 使用相同的上下文检索，预热写入的答案与线上请求生成的一致。
+    // 不经过缓存查询，也不生成降级答案，失败直接返回错误
+    public Mono<Answer> warmAnswer(String question, boolean useLlm) {
+        return findKnowledgeAnswer(question, null)
+                .switchIfEmpty(Mono.defer(() -> useLlm
+                        ? searchContext(question).flatMap(context -> getAnswerFromDeepSeek(question, null, context))
+                        : Mono.empty()))
+                .doOnNext(answer -> answerCache.put(question, answer));
+    }
 
-        // 简短问题可能需要上下文
-        if (lowerQuestion.length() < 10) {
-            log.info("问题过于简短 ({}字符), 可能需要上下文理解", lowerQuestion.length());
-            return true;
-        }
+    // 从知识库检索上下文，失败时使用空上下文继续处理
+    public Mono<List<String>> searchContext(String query) {
+        return Mono.defer(() -> {
+                    log.info("尝试调用知识库服务...");
+                    return reactiveKnowledgeClient.searchKnowledge(query, contextMaxResults);
+                })
+                .mapNotNull(ApiResponse::getData)
+                .map(results -> results.stream()
+                        .map(knowledge -> "问题：" + knowledge.getQuestion() + "\n答案：" + knowledge.getAnswer())
+                        .toList())
+                .doOnNext(context -> log.info("知识库返回 {} 条相关信息", context.size()))
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    log.warn("知识库服务返回空结果");
+                    return List.of();
+                }))
+                .onErrorResume(e -> {
+                    log.warn("知识库服务调用失败，使用空上下文继续处理: {}", e.getMessage());
+                    return Mono.just(List.of());
+                });
+    }
 
-        // 问号结尾的简单疑问可能需要上下文
-        if (lowerQuestion.endsWith("?") || lowerQuestion.endsWith("？")) {
-            String[] simpleQuestions = {"什么", "怎么", "如何", "为什么", "when", "how", "why", "what"};
-            for (String word : simpleQuestions) {
-                if (lowerQuestion.contains(word)) {
-                    log.info("问题是简单疑问且包含 '{}', 可能需要上下文", word);
-                    return true;
-                }
-            }
+    // 判断问题是否需要上下文理解，具体规则由路由分类器决定
+    private boolean needsContextualUnderstanding(String question, List<Map<String, String>> history) {
+        if (history == null || history.isEmpty()) {
+            return false;
         }
-
-        log.info("问题判定为独立问题，不需要上下文理解");
-        return false;
+        return contextualClassifier.needsContext(question);
     }
 
     // 从知识库获取精确匹配的答案
-    private Answer getAnswerFromKnowledge(String question, Long userId) {
-        try {
-            log.info("尝试从知识库精确查询: {}", question);
-
-            ApiResponse<Knowledge> response = knowledgeServiceClient.findByQuestion(question);
-
-            if (response != null && response.getData() != null) {
-                Knowledge knowledge = response.getData();
-                if (knowledge.getAnswer() != null && !knowledge.getAnswer().trim().isEmpty()) {
+    private Mono<Answer> findKnowledgeAnswer(String question, Long userId) {
+        return Mono.defer(() -> {
+                    log.info("尝试从知识库精确查询: {}", question);
+                    return reactiveKnowledgeClient.findByQuestion(question);
+                })
+                .mapNotNull(ApiResponse::getData)
+                .filter(knowledge -> knowledge.getAnswer() != null && !knowledge.getAnswer().trim().isEmpty())
+                .map(knowledge -> {
                     log.info("知识库找到匹配答案，长度: {}", knowledge.getAnswer().length());
                     return new Answer(knowledge.getAnswer(), question, userId);
-                }
-            }
-
-            log.debug("知识库中未找到精确匹配的问题");
-            return null;
-
-        } catch (Exception e) {
-            log.warn("查询知识库失败，继续使用 DeepSeek: {}", e.getMessage());
-            return null;
-        }
+                })
+                .switchIfEmpty(Mono.defer(() -> findNearExactAnswer(question, userId)))
+                .onErrorResume(e -> {
+                    log.warn("查询知识库失败，继续使用 DeepSeek: {}", e.getMessage());
+                    return Mono.empty();
+                });
     }
 
-    // 原有的 DeepSeek API 调用逻辑，提取为单独方法
-    private Answer getAnswerFromDeepSeek(String question, Long userId, List<String> context) {
-        try {
-            log.info("正在调用 DeepSeek API，问题: {}", question);
-
-            // 构建请求消息
-            List<Map<String, String>> messages = buildMessages(question, context);
-
-            // 构建请求体
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", model);
-            requestBody.put("messages", messages);
-            requestBody.put("max_tokens", 1000);
-            requestBody.put("temperature", 0.7);
-
-            log.debug("发送请求到: {}/chat/completions", baseUrl);
-
-            // 发送请求
-            Mono<Map> responseMono = webClient.post()
-                    .uri("/chat/completions")
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .header("Authorization", "Bearer " + apiKey)
-                    .bodyValue(requestBody)
-                    .retrieve()
-                    .onStatus(
-                            status -> status.isError(),
-                            response -> {
-                                log.error("DeepSeek API 返回错误状态: {}", response.statusCode());
-                                return response.bodyToMono(String.class)
-                                        .map(body -> {
-                                            log.error("错误响应体: {}", body);
-                                            return new RuntimeException("API调用失败: " + response.statusCode() + " - " + body);
-                                        });
-                            }
-                    )
-                    .bodyToMono(Map.class)
-                    .timeout(Duration.ofSeconds(60))
-                    .doOnError(error -> log.error("请求发送失败: {}", error.getMessage()));
-
-            Map<String, Object> response = responseMono.block();
-
-            String answerContent = extractAnswerFromResponse(response);
-            log.info("DeepSeek API 调用成功，答案长度: {}", answerContent.length());
-
-            return new Answer(answerContent, question, userId);
-
-        } catch (WebClientResponseException e) {
-            log.error("DeepSeek API HTTP错误: 状态码={}, 响应体={}", e.getStatusCode(), e.getResponseBodyAsString());
-            throw new RuntimeException("DeepSeek API调用失败", e);
-        } catch (Exception e) {
-            log.error("调用 DeepSeek API 失败: {}", e.getMessage(), e);
-            throw e;
+    // 近似命中：取知识库中与问题最相似的一条，相似度阈值由 knowledge-service 过滤
+    private Mono<Answer> findNearExactAnswer(String question, Long userId) {
+        if (!nearExactEnabled) {
+            return Mono.empty();
         }
+        return reactiveKnowledgeClient.findSimilar(question, 1, nearExactThreshold)
+                .mapNotNull(ApiResponse::getData)
+                .flatMapIterable(results -> results)
+                .next()
+                .filter(knowledge -> knowledge.getAnswer() != null && !knowledge.getAnswer().trim().isEmpty())
+                .map(knowledge -> {
+                    log.info("知识库找到近似问题: [{}] -> [{}]，相似度 {}", question, knowledge.getQuestion(), knowledge.getScore());
+                    return new Answer(knowledge.getAnswer(), question, userId);
+                });
     }
 
-    // 支持历史对话的 DeepSeek API 调用
-    private Answer getAnswerFromDeepSeekWithHistory(String question, Long userId, List<Map<String, String>> history) {
-        try {
-            log.info("正在调用 DeepSeek API，问题: {}, 历史对话: {}", question, history != null ? history.size() : 0);
-
-            // 构建包含历史对话的请求消息
-            List<Map<String, String>> messages = buildMessagesWithHistory(question, history);
-
-            // 构建请求体
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", model);
-            requestBody.put("messages", messages);
-            requestBody.put("max_tokens", 1000);
-            requestBody.put("temperature", 0.7);
-
-            log.debug("发送请求到: {}/chat/completions, 消息数量: {}", baseUrl, messages.size());
+    // DeepSeek API 调用逻辑，相同问题的并发调用会被合并
+    private Mono<Answer> getAnswerFromDeepSeek(String question, Long userId, List<String> context) {
+        log.info("正在调用 DeepSeek API，问题: {}", question);
+        String key = RequestCoalescer.keyOf(model, question, context);
+        return requestCoalescer.execute(key, () -> requestCompletion(buildMessages(question, context), QaMetrics.PATH_LLM))
+                .map(answerContent -> new Answer(answerContent, question, userId));
+    }
 
-            // 发送请求
-            Mono<Map> responseMono = webClient.post()
-                    .uri("/chat/completions")
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .header("Authorization", "Bearer " + apiKey)
-                    .bodyValue(requestBody)
-                    .retrieve()
-                    .onStatus(
-                            status -> status.isError(),
-                            response -> {
-                                log.error("DeepSeek API 返回错误状态: {}", response.statusCode());
-                                return response.bodyToMono(String.class)
-                                        .map(body -> {
-                                            log.error("错误响应体: {}", body);
-                                            return new RuntimeException("API调用失败: " + response.statusCode() + " - " + body);
-                                        });
-                            }
-                    )
-                    .bodyToMono(Map.class)
-                    .timeout(Duration.ofSeconds(60))
-                    .doOnError(error -> log.error("请求发送失败: {}", error.getMessage()));
+    // 支持历史对话的 DeepSeek API 调用，以历史对话内容作为合并 key 的上下文
+    private Mono<Answer> getAnswerFromDeepSeekWithHistory(String question, Long userId, List<Map<String, String>> history,
+                                                          String conversationId) {
+        log.info("正在调用 DeepSeek API，问题: {}, 历史对话: {}", question, history != null ? history.size() : 0);
+        List<String> historyContext = history == null ? List.of() : history.stream()
+                .filter(item -> item != null)
+                .map(item -> item.get("role") + ":" + item.get("content"))
+                .toList();
+        String key = RequestCoalescer.keyOf(model, question, historyContext);
+        return requestCoalescer.execute(key, () -> requestCompletion(buildMessagesWithHistory(question, conversationId, history), QaMetrics.PATH_LLM_HISTORY))
+                .map(answerContent -> new Answer(answerContent, question, userId));
+    }
 
-            Map<String, Object> response = responseMono.block();
+    // 发送非流式 chat/completions 请求，返回答案内容；path 用于指标标签
+    private Mono<String> requestCompletion(List<ChatMessage> messages, String path) {
+        byte[] requestBody = codec.encode(ChatCompletionRequest.blocking(messages, maxTokens, 0.7));
+
+        log.debug("发送请求到: {}/chat/completions, 消息数量: {}", baseUrl, messages.size());
+
+        return Mono.deferContextual(ctx -> {
+                    String endpoint = QaMetrics.endpointOf(ctx);
+                    long start = System.nanoTime();
+                    return circuitBreaker.execute(() -> concurrencyLimiter.execute(() -> postCompletion(requestBody)))
+                            .doOnSuccess(response -> {
+                                metrics.recordUpstream(endpoint, model, path, System.nanoTime() - start, true);
+                                if (response != null) {
+                                    metrics.recordUsage(endpoint, model, path, response.usage());
+                                }
+                            })
+                            .doOnError(error -> {
+                                if (!isRejected(error)) {
+                                    metrics.recordUpstream(endpoint, model, path, System.nanoTime() - start, false);
+                                }
+                            });
+                })
+                .map(DeepSeekService::extractAnswerFromResponse)
+                .doOnNext(answerContent -> log.info("DeepSeek API 调用成功，答案长度: {}", answerContent.length()))
+                .onErrorMap(WebClientResponseException.class, e -> {
+                    log.error("DeepSeek API HTTP错误: 状态码={}, 响应体={}", e.getStatusCode(), e.getResponseBodyAsString());
+                    return new RuntimeException("DeepSeek API调用失败", e);
+                })
+                .doOnError(error -> log.error("调用 DeepSeek API 失败: {}", error.getMessage()));
+    }
 
-            String answerContent = extractAnswerFromResponse(response);
-            log.info("DeepSeek API 调用成功，答案长度: {}", answerContent.length());
+    // 请求体已由 codec 编码为字节，响应按字节读取后流式解析
+    private Mono<ChatCompletionResponse> postCompletion(byte[] requestBody) {
+        return webClient.post()
+                .uri("/chat/completions")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Authorization", "Bearer " + apiKey)
+                .bodyValue(requestBody)
+                .retrieve()
+                .onStatus(
+                        status -> status.isError(),
+                        // 保留状态码，熔断器据此区分请求本身的错误和上游故障
+                        response -> {
+                            log.error("DeepSeek API 返回错误状态: {}", response.statusCode());
+                            return response.createException()
+                                    .doOnNext(e -> log.error("错误响应体: {}", e.getResponseBodyAsString()));
+                        }
+                )
+                .bodyToMono(byte[].class)
+                .timeout(Duration.ofSeconds(60))
+                .handle((body, sink) -> {
+                    try {
+                        sink.next(codec.decode(body));
+                    } catch (IOException e) {
+                        log.error("解析响应时发生错误: {}", e.getMessage());
+                        sink.error(new RuntimeException("DeepSeek 响应格式错误", e));
+                    }
+                });
+    }
 
-            return new Answer(answerContent, question, userId);
+    // 流式接口：缓存 -> 知识库 -> 流式 DeepSeek，与 getAnswer 使用相同的缓存层级；返回的 Flux 只应被订阅一次
+    public Flux<ChatDelta> getAnswerStream(String question, Long userId, List<String> context) {
+        return metrics.timeAnswerStream(path -> answerCache.lookup(question)
+                .map(cachedAnswer -> {
+                    log.info("流式接口从缓存找到答案，按 {} 字符分块回放", replayChunkSize);
+                    path.set(QaMetrics.PATH_CACHE);
+                    return replay(cachedAnswer.getAnswer());
+                })
+                .switchIfEmpty(Mono.defer(() -> findKnowledgeAnswer(question, userId)
+                        .map(knowledgeAnswer -> {
+                            log.info("流式接口从知识库找到答案，直接返回");
+                            path.set(QaMetrics.PATH_KNOWLEDGE);
+                            answerCache.put(question, knowledgeAnswer);
+                            return replay(knowledgeAnswer.getAnswer());
+                        })))
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    path.set(QaMetrics.PATH_LLM);
+                    return streamFromDeepSeek(question, userId, context, path);
+                }))
+                .flatMapMany(stream -> stream)
+                .onErrorResume(e -> {
+                    log.error("初始化流式调用失败: {}", e.getMessage());
+                    path.set(QaMetrics.PATH_FALLBACK);
+                    return Flux.just(ChatDelta.error("AI服务暂时不可用，请稍后再试"));
+                }));
+    }
 
-        } catch (WebClientResponseException e) {
-            log.error("DeepSeek API HTTP错误: 状态码={}, 响应体={}", e.getStatusCode(), e.getResponseBodyAsString());
-            throw new RuntimeException("DeepSeek API调用失败", e);
-        } catch (Exception e) {
-            log.error("调用 DeepSeek API 失败: {}", e.getMessage(), e);
-            throw e;
+    // 把完整答案切成固定字符数的增量，按码点切分，不会拆开代理对
+    private Flux<ChatDelta> replay(String answer) {
+        List<ChatDelta> deltas = new ArrayList<>();
+        int chunkSize = Math.max(1, replayChunkSize);
+        int start = 0;
+        while (start < answer.length()) {
+            int end = answer.offsetByCodePoints(start, Math.min(chunkSize, answer.codePointCount(start, answer.length())));
+            deltas.add(ChatDelta.content(answer.substring(start, end)));
+            start = end;
         }
+        return Flux.fromIterable(deltas);
     }
 
-    // 流式接口保持不变，但也可以考虑加入知识库查询
-    public Flux<String> getAnswerStream(String question, Long userId, List<String> context) {
-        try {
-            // 可选：也可以在流式接口中先检查知识库
-            Answer knowledgeAnswer = getAnswerFromKnowledge(question, userId);
-            if (knowledgeAnswer != null) {
-                log.info("流式接口从知识库找到答案，直接返回");
-                return Flux.just("data: {\"content\": \"" + knowledgeAnswer.getAnswer().replace("\"", "\\\"") + "\"}\n\n")
-                        .concatWith(Flux.just("data: [DONE]\n\n"));
-            }
-
-            // 如果知识库没有，继续使用流式 DeepSeek
-            List<Map<String, String>> messages = buildMessages(question, context);
-
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", model);
-            requestBody.put("messages", messages);
-            requestBody.put("stream", true);
-            requestBody.put("max_tokens", 1000);
-
-            return webClient.post()
-                    .uri("/chat/completions")
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .header("Authorization", "Bearer " + apiKey)
-                    .bodyValue(requestBody)
-                    .retrieve()
-                    .bodyToFlux(String.class)
-                    .timeout(Duration.ofSeconds(60))
+    // 如果缓存和知识库都没有，继续使用流式 DeepSeek；原始 DataBuffer 直接交给 SSE 增量解码器，
+    // finish_reason 为 stop 且没有错误的回答写回缓存
+    private Flux<ChatDelta> streamFromDeepSeek(String question, Long userId, List<String> context,
+                                               AtomicReference<String> path) {
+        byte[] requestBody = codec.encode(ChatCompletionRequest.streaming(buildMessages(question, context), maxTokens));
+
+        Flux<DataBuffer> body = webClient.post()
+                .uri("/chat/completions")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Authorization", "Bearer " + apiKey)
+                .bodyValue(requestBody)
+                .retrieve()
+                .bodyToFlux(DataBuffer.class);
+
+        return Flux.deferContextual(ctx -> {
+            String endpoint = QaMetrics.endpointOf(ctx);
+            StreamAnswerAggregator aggregator = new StreamAnswerAggregator();
+            long start = System.nanoTime();
+            AtomicBoolean firstToken = new AtomicBoolean();
+            return circuitBreaker.executeMany(() -> concurrencyLimiter.executeMany(
+                            () -> SseDeltaDecoder.decode(body).timeout(Duration.ofSeconds(60))))
+                    .doOnNext(delta -> {
+                        aggregator.accept(delta);
+                        if (delta.hasContent() && firstToken.compareAndSet(false, true)) {
+                            metrics.recordTimeToFirstToken(endpoint, model, QaMetrics.PATH_LLM, System.nanoTime() - start);
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        metrics.recordUpstream(endpoint, model, QaMetrics.PATH_LLM, System.nanoTime() - start, !aggregator.isFailed());
+                        metrics.recordUsage(endpoint, model, QaMetrics.PATH_LLM, aggregator.usage());
+                        if (aggregator.isComplete() && !aggregator.isEmpty()) {
+                            answerCache.put(question, new Answer(aggregator.content(), question, userId));
+                        } else if (!aggregator.isFailed()) {
+                            log.info("流式回答未正常结束（finish_reason={}），不写入缓存", aggregator.finishReason());
+                        }
+                    })
+                    .doOnError(error -> {
+                        if (!isRejected(error)) {
+                            metrics.recordUpstream(endpoint, model, QaMetrics.PATH_LLM, System.nanoTime() - start, false);
+                        }
+                    })
+                    // 只携带用量的最后一个数据包不需要转发给客户端
+                    .filter(delta -> delta.hasContent() || delta.isError() || delta.finishReason() != null)
+                    .onErrorResume(DeepSeekService::isRejected, e -> {
+                        log.warn("DeepSeek 调用被拒绝，流式接口改用知识库检索结果: {}", e.getMessage());
+                        path.set(QaMetrics.PATH_FALLBACK);
+                        return degradedAnswer(question, userId, e).flatMapMany(answer -> replay(answer.getAnswer()));
+                    })
                     .onErrorResume(error -> {
                         log.error("流式调用失败: {}", error.getMessage());
-                        return Flux.just("data: {\"error\": \"AI服务暂时不可用，请稍后再试\"}\n\n");
+                        return Flux.just(ChatDelta.error("AI服务暂时不可用，请稍后再试"));
                     });
-
-        } catch (Exception e) {
-            log.error("初始化流式调用失败: {}", e.getMessage());
-            return Flux.just("data: {\"error\": \"AI服务暂时不可用，请稍后再试\"}\n\n");
-        }
+        });
     }
 
-    // 原有的构建消息方法
-    private List<Map<String, String>> buildMessages(String question, List<String> context) {
-        List<Map<String, String>> messages = new ArrayList<>();
-
-        StringBuilder systemPrompt = new StringBuilder("You are a helpful AI customer service assistant.");
+    // 原有的构建消息方法；没有上下文时系统提示词是常量，编码时直接使用预序列化的字节
+    static List<ChatMessage> buildMessages(String question, List<String> context) {
+        String systemPrompt = ChatCompletionCodec.DEFAULT_SYSTEM_PROMPT;
         if (context != null && !context.isEmpty()) {
-            systemPrompt.append(" Use the following information to answer the question: \n");
+            StringBuilder prompt = new StringBuilder(ChatCompletionCodec.DEFAULT_SYSTEM_PROMPT)
+                    .append(" Use the following information to answer the question: \n");
             for (String ctx : context) {
-                systemPrompt.append(ctx).append("\n");
+                prompt.append(ctx).append("\n");
             }
+            systemPrompt = prompt.toString();
         }
-
-        Map<String, String> systemMessage = new HashMap<>();
-        systemMessage.put("role", "system");
-        systemMessage.put("content", systemPrompt.toString());
-        messages.add(systemMessage);
-
-        Map<String, String> userMessage = new HashMap<>();
-        userMessage.put("role", "user");
-        userMessage.put("content", question);
-        messages.add(userMessage);
-
-        return messages;
+        return List.of(ChatMessage.system(systemPrompt), ChatMessage.user(question));
     }
 
-    // 构建包含历史对话的消息列表
-    private List<Map<String, String>> buildMessagesWithHistory(String question, List<Map<String, String>> history) {
-        List<Map<String, String>> messages = new ArrayList<>();
-
-        // 添加系统提示
-        Map<String, String> systemMessage = new HashMap<>();
-        systemMessage.put("role", "system");
-        systemMessage.put("content", "You are a helpful AI customer service assistant. Please provide helpful and accurate responses based on the conversation history and the current question.");
-        messages.add(systemMessage);
-
-        // 添加历史对话（限制数量，避免token过多）
-        if (history != null && !history.isEmpty()) {
-            int maxHistoryCount = 10; // 最多保留最近10轮对话
-            int startIndex = Math.max(0, history.size() - maxHistoryCount);
-
-            for (int i = startIndex; i < history.size(); i++) {
-                Map<String, String> historyItem = history.get(i);
-                if (historyItem != null) {
-                    String role = historyItem.get("role");
-                    String content = historyItem.get("content");
-
-                    if (role != null && content != null && !content.trim().isEmpty()) {
-                        Map<String, String> message = new HashMap<>();
-                        message.put("role", role);
-                        message.put("content", content.trim());
-                        messages.add(message);
-                    }
-                }
-            }
-
-            log.info("添加了 {} 条历史对话", history.size() - startIndex);
-        }
-
-        // 添加当前问题
-        Map<String, String> userMessage = new HashMap<>();
-        userMessage.put("role", "user");
-        userMessage.put("content", question);
-        messages.add(userMessage);
-
+    // 构建包含历史对话的消息列表，历史按 token 预算从新到旧填充，更早的轮次压缩为摘要
+    private List<ChatMessage> buildMessagesWithHistory(String question, String conversationId,
+                                                       List<Map<String, String>> history) {
+        List<ChatMessage> messages = contextBuilder.build(conversationId, ChatCompletionCodec.HISTORY_SYSTEM_PROMPT, question, history);
         log.debug("构建完成，总消息数量: {}", messages.size());
         return messages;
     }
 
-    private String extractAnswerFromResponse(Map<String, Object> response) {
-        try {
-            if (response == null) {
-                return "抱歉，未收到有效响应";
-            }
+    static String extractAnswerFromResponse(ChatCompletionResponse response) {
+        if (response == null) {
+            return "抱歉，未收到有效响应";
+        }
+        String content = response.content();
+        if (content != null && !content.trim().isEmpty()) {
+            return content.trim();
+        }
+        log.warn("响应格式异常，无法提取答案内容: {}", response);
+        return "抱歉，未能获取到有效回复";
+    }
 
-            List<Map<String, Object>> choices = (List<Map<String, Object>>) response.get("choices");
-            if (choices != null && !choices.isEmpty()) {
-                Map<String, Object> choice = choices.get(0);
-                Map<String, Object> message = (Map<String, Object>) choice.get("message");
-                if (message != null) {
-                    String content = (String) message.get("content");
-                    if (content != null && !content.trim().isEmpty()) {
-                        return content.trim();
-                    }
-                }
-            }
+    // 上游调用失败时的降级答案：被并发限制或熔断器拒绝时立即用知识库检索结果回答，其余错误返回提示信息。
+    // 降级答案不写入缓存
+    private Mono<Answer> degradedAnswer(String question, Long userId, Throwable error) {
+        if (isRejected(error)) {
+            return answerFromKnowledgeSearch(question, userId)
+                    .switchIfEmpty(Mono.fromSupplier(() -> createFallbackAnswer(question, userId, "服务繁忙")));
+        }
+        log.error("获取答案时发生错误: {}", error.getMessage(), error);
+        return Mono.just(createFallbackAnswer(question, userId, error.getMessage()));
+    }
 
-            log.warn("响应格式异常，无法提取答案内容: {}", response);
-            return "抱歉，未能获取到有效回复";
+    // 调用没有发往上游就被拒绝（并发已满或熔断器打开）
+    private static boolean isRejected(Throwable error) {
+        return error instanceof LimitExceededException || error instanceof CircuitOpenException;
+    }
 
-        } catch (Exception e) {
-            log.error("解析响应时发生错误: {}", e.getMessage());
-            return "抱歉，解析回复时发生错误";
-        }
+    // 用知识库检索中相关性最高、答案非空的一条作为答案
+    private Mono<Answer> answerFromKnowledgeSearch(String question, Long userId) {
+        return Mono.defer(() -> reactiveKnowledgeClient.searchKnowledge(question, 3))
+                .mapNotNull(ApiResponse::getData)
+                .flatMapIterable(results -> results)
+                .filter(knowledge -> knowledge.getAnswer() != null && !knowledge.getAnswer().trim().isEmpty())
+                .next()
+                .map(knowledge -> {
+                    log.info("使用知识库检索结果作为降级答案: {}", knowledge.getQuestion());
+                    Answer answer = new Answer(knowledge.getAnswer(), question, userId);
+                    answer.setDegraded(true);
+                    return answer;
+                })
+                .onErrorResume(e -> {
+                    log.warn("降级查询知识库失败: {}", e.getMessage());
+                    return Mono.empty();
+                });
     }
 
     private Answer createFallbackAnswer(String question, Long userId, String errorMsg) {
@@ -458,23 +639,16 @@ public class DeepSeekService {
                 "抱歉，服务暂时不可用。您的问题是：\"%s\"。\n\n错误信息：%s\n\n请稍后再试或联系技术支持。",
                 question, errorMsg
         );
-        return new Answer(fallbackAnswer, question, userId);
+        Answer answer = new Answer(fallbackAnswer, question, userId);
+        answer.setDegraded(true);
+        return answer;
     }
 
     public boolean testConnection() {
         try {
             log.info("开始测试 DeepSeek API 连接...");
 
-            List<Map<String, String>> testMessages = new ArrayList<>();
-            Map<String, String> testMessage = new HashMap<>();
-            testMessage.put("role", "user");
-            testMessage.put("content", "Hello");
-            testMessages.add(testMessage);
-
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", model);
-            requestBody.put("messages", testMessages);
-            requestBody.put("max_tokens", 5);
+            byte[] requestBody = codec.encode(ChatCompletionRequest.blocking(List.of(ChatMessage.user("Hello")), 5, null));
 
             String response = webClient.post()
                     .uri("/chat/completions")
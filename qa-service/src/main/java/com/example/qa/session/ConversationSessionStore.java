@@ -0,0 +1,184 @@
+package com.example.qa.session;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+// 服务端会话存储：每个会话在 Redis 中是一个有界列表（环形缓冲，只保留最近 maxTurns 轮，即 2 * maxTurns 条消息），
+// 本地 Caffeine 作为近缓存。写入后通过 Redis 频道通知其他实例清理各自的近缓存。
+// 会话按用户隔离：Redis 键和近缓存键都带上用户 id，拿到别人的会话 id 也读不到其中的历史
+@Slf4j
+@Component
+public class ConversationSessionStore implements MessageListener {
+
+    public static final String INVALIDATION_CHANNEL = "qa:session:invalidation";
+
+    private static final String KEY_PREFIX = "qa:session:";
+    private static final Pattern SESSION_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final TypeReference<Map<String, String>> TURN_TYPE = new TypeReference<>() {
+    };
+
+    // 追加消息、裁剪到最近 maxMessages 条并刷新过期时间，一次往返完成
+    private static final RedisScript<Long> APPEND_SCRIPT = RedisScript.of(
+            "redis.call('RPUSH', KEYS[1], unpack(ARGV, 3))\n"
+                    + "redis.call('LTRIM', KEYS[1], -tonumber(ARGV[1]), -1)\n"
+                    + "redis.call('PEXPIRE', KEYS[1], ARGV[2])\n"
+                    + "return redis.call('LLEN', KEYS[1])",
+            Long.class);
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    // 每轮一问一答两条消息
+    private final int maxMessages;
+    private final Duration ttl;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    // 用户 id:会话 id -> 最近的消息（不可变列表）
+    private final Cache<String, List<Map<String, String>>> nearCache;
+    // 每次追加或失效加一；加载期间有变化时不回填近缓存，避免写入过期数据
+    private final AtomicLong mutations = new AtomicLong();
+
+    public ConversationSessionStore(ReactiveStringRedisTemplate redisTemplate,
+                                    ObjectMapper objectMapper,
+                                    @Value("${qa.session.max-turns:40}") int maxTurns,
+                                    @Value("${qa.session.ttl:2h}") Duration ttl,
+                                    @Value("${qa.session.near-cache.max-size:10000}") long nearCacheSize,
+                                    @Value("${qa.session.near-cache.expire-after-access:10m}") Duration nearCacheTtl) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.maxMessages = 2 * maxTurns;
+        this.ttl = ttl;
+        this.nearCache = Caffeine.newBuilder()
+                .maximumSize(nearCacheSize)
+                .expireAfterAccess(nearCacheTtl)
+                .build();
+    }
+
+    public static boolean isValidId(String sessionId) {
+        return sessionId != null && SESSION_ID.matcher(sessionId).matches();
+    }
+
+    public static String newSessionId() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+
+    public static String scopedId(Long userId, String sessionId) {
+        return userId + ":" + sessionId;
+    }
+
+    // 读取会话历史，近缓存未命中时从 Redis 加载；Redis 不可用时返回空历史
+    public Mono<List<Map<String, String>>> load(Long userId, String sessionId) {
+        String key = scopedId(userId, sessionId);
+        List<Map<String, String>> cached = nearCache.getIfPresent(key);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        return Mono.defer(() -> {
+                    long version = mutations.get();
+                    return redisTemplate.opsForList().range(KEY_PREFIX + key, 0, -1)
+                            .map(this::readTurn)
+                            .filter(turn -> !turn.isEmpty())
+                            .collectList()
+                            .map(turns -> {
+                                List<Map<String, String>> loaded = List.copyOf(turns);
+                                if (mutations.get() == version) {
+                                    nearCache.put(key, loaded);
+                                }
+                                return loaded;
+                            });
+                })
+                .onErrorResume(e -> {
+                    log.warn("读取会话历史失败，按新会话处理: sessionId={}, error={}", key, e.getMessage());
+                    return Mono.just(List.of());
+                });
+    }
+
+    // 一问一答追加到会话末尾
+    public Mono<Void> append(Long userId, String sessionId, String question, String answer) {
+        String key = scopedId(userId, sessionId);
+        List<Map<String, String>> turns = List.of(
+                Map.of("role", "user", "content", question),
+                Map.of("role", "assistant", "content", answer));
+
+        List<String> args = new ArrayList<>(turns.size() + 2);
+        args.add(String.valueOf(maxMessages));
+        args.add(String.valueOf(ttl.toMillis()));
+        try {
+            for (Map<String, String> turn : turns) {
+                args.add(objectMapper.writeValueAsString(turn));
+            }
+        } catch (JsonProcessingException e) {
+            return Mono.error(e);
+        }
+
+        return Mono.defer(() -> {
+                    mutations.incrementAndGet();
+                    return redisTemplate.execute(APPEND_SCRIPT, List.of(KEY_PREFIX + key), args).then();
+                })
+                .then(Mono.fromRunnable(() -> {
+                    mutations.incrementAndGet();
+                    nearCache.asMap().computeIfPresent(key, (id, existing) -> trim(existing, turns));
+                    publishInvalidation(key);
+                }))
+                .onErrorResume(e -> {
+                    // Redis 写入失败时本地近缓存也作废，避免与 Redis 不一致
+                    mutations.incrementAndGet();
+                    nearCache.invalidate(key);
+                    log.warn("追加会话历史失败: sessionId={}, error={}", key, e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private List<Map<String, String>> trim(List<Map<String, String>> existing, List<Map<String, String>> appended) {
+        List<Map<String, String>> merged = new ArrayList<>(existing.size() + appended.size());
+        merged.addAll(existing);
+        merged.addAll(appended);
+        int from = Math.max(0, merged.size() - maxMessages);
+        return List.copyOf(merged.subList(from, merged.size()));
+    }
+
+    private Map<String, String> readTurn(String json) {
+        try {
+            return objectMapper.readValue(json, TURN_TYPE);
+        } catch (JsonProcessingException e) {
+            log.warn("会话历史格式错误，已跳过: {}", e.getMessage());
+            return Map.of();
+        }
+    }
+
+    private void publishInvalidation(String sessionId) {
+        redisTemplate.convertAndSend(INVALIDATION_CHANNEL, instanceId + "\t" + sessionId)
+                .subscribe(null, e -> log.warn("发布会话失效消息失败: sessionId={}, error={}", sessionId, e.getMessage()));
+    }
+
+    // 其他实例追加了消息，清理本地近缓存
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\t", 2);
+        if (parts.length < 2 || instanceId.equals(parts[0])) {
+            return;
+        }
+        mutations.incrementAndGet();
+        nearCache.invalidate(parts[1]);
+    }
+}
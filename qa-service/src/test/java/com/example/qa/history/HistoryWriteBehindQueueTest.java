@@ -0,0 +1,148 @@
+package com.example.qa.history;
+
+import com.example.common.response.ApiResponse;
+import com.example.qa.client.ReactiveHistoryClient;
+import com.example.qa.entity.Answer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// history-service 拒绝（4xx）与暂时性失败的处理：拒绝时拆批写入正常记录，问题记录达到上限后进入死信文件；
+// 暂时性失败整批溢出，不拆批也不计入拒绝次数；溢出文件中的残行回放时跳过
+class HistoryWriteBehindQueueTest {
+
+    @TempDir
+    Path dir;
+
+    private ReactiveHistoryClient client;
+    private final List<Answer> saved = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        client = mock(ReactiveHistoryClient.class);
+        // userId 为空的记录违反 qa_history.user_id 的非空约束，整批被拒绝
+        when(client.saveHistoryBatch(anyList())).thenAnswer(invocation -> {
+            List<Answer> batch = List.copyOf(invocation.getArgument(0));
+            return Mono.defer(() -> {
+                requests.incrementAndGet();
+                if (batch.stream().anyMatch(answer -> answer.getUserId() == null)) {
+                    return Mono.error(WebClientResponseException.create(400, "Bad Request", HttpHeaders.EMPTY,
+                            new byte[0], StandardCharsets.UTF_8));
+                }
+                saved.addAll(batch);
+                return Mono.just(ApiResponse.success(batch.size()));
+            });
+        });
+    }
+
+    @Test
+    void rejectedBatchIsSplitAndBadRowIsDeadLettered() throws IOException {
+        HistoryWriteBehindQueue queue = queue(1, Duration.ofHours(1));
+        for (int i = 0; i < 10; i++) {
+            queue.submit(new Answer("答案" + i, "问题" + i, i == 6 ? null : (long) i));
+        }
+        queue.stop();
+
+        assertThat(saved).extracting(Answer::getQuestion)
+                .containsExactlyInAnyOrder("问题0", "问题1", "问题2", "问题3", "问题4", "问题5", "问题7", "问题8", "问题9");
+        assertThat(Files.readAllLines(dir.resolve("dead.jsonl"))).singleElement().asString().contains("问题6");
+        assertThat(dir.resolve("spill.jsonl")).doesNotExist();
+    }
+
+    @Test
+    void rejectedRowIsReplayedUntilTheAttemptCap() {
+        HistoryWriteBehindQueue queue = queue(3, Duration.ofMillis(20));
+        queue.start();
+        try {
+            queue.submit(new Answer("答案", "问题", 1L));
+            queue.submit(new Answer("坏答案", "坏问题", null));
+
+            await().atMost(Duration.ofSeconds(10)).until(() -> Files.exists(dir.resolve("dead.jsonl")));
+            assertThat(saved).extracting(Answer::getQuestion).containsExactly("问题");
+            // 整批 1 次、拆批后两条各 1 次、坏记录回放 2 次
+            assertThat(requests).hasValue(5);
+        } finally {
+            queue.stop();
+        }
+    }
+
+    @Test
+    void transientFailureSpillsWholeBatchWithoutSplitting() throws IOException {
+        when(client.saveHistoryBatch(anyList())).thenReturn(Mono.defer(() -> {
+            requests.incrementAndGet();
+            return Mono.error(WebClientResponseException.create(503, "Service Unavailable", HttpHeaders.EMPTY,
+                    new byte[0], StandardCharsets.UTF_8));
+        }));
+        HistoryWriteBehindQueue queue = queue(1, Duration.ofHours(1));
+        for (int i = 0; i < 4; i++) {
+            queue.submit(new Answer("答案" + i, "问题" + i, i == 2 ? null : (long) i));
+        }
+        queue.stop();
+
+        // 一次请求加两次重试
+        assertThat(requests).hasValue(3);
+        assertThat(Files.readAllLines(dir.resolve("spill.jsonl"))).hasSize(4);
+        assertThat(dir.resolve("dead.jsonl")).doesNotExist();
+    }
+
+    @Test
+    void replaySkipsCorruptLines() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Files.writeString(dir.resolve("spill.jsonl"),
+                objectMapper.writeValueAsString(new Answer("答案1", "问题1", 1L)) + "\n"
+                        + "{\"answer\":\"写到一半\n"
+                        + objectMapper.writeValueAsString(new Answer("答案2", "问题2", 2L)) + "\n");
+        HistoryWriteBehindQueue queue = queue(3, Duration.ofMillis(20));
+        queue.start();
+        try {
+            await().atMost(Duration.ofSeconds(10)).until(() -> saved.size() == 2);
+            await().atMost(Duration.ofSeconds(10)).until(() -> !Files.exists(dir.resolve("spill.jsonl.replay")));
+            assertThat(saved).extracting(Answer::getQuestion).containsExactly("问题1", "问题2");
+        } finally {
+            queue.stop();
+        }
+    }
+
+    @Test
+    void spillAfterPartialLineStartsOnANewLine() throws IOException {
+        when(client.saveHistoryBatch(anyList())).thenReturn(Mono.error(WebClientResponseException.create(503,
+                "Service Unavailable", HttpHeaders.EMPTY, new byte[0], StandardCharsets.UTF_8)));
+        Files.writeString(dir.resolve("spill.jsonl"), "{\"answer\":\"写到一半");
+        HistoryWriteBehindQueue queue = queue(3, Duration.ofHours(1));
+        queue.submit(new Answer("答案", "问题", 1L));
+        queue.stop();
+
+        List<String> lines = Files.readAllLines(dir.resolve("spill.jsonl"));
+        assertThat(lines).hasSize(2);
+        assertThat(new ObjectMapper().readValue(lines.get(1), Answer.class).getQuestion()).isEqualTo("问题");
+    }
+
+    private HistoryWriteBehindQueue queue(int maxRowAttempts, Duration flushInterval) {
+        return new HistoryWriteBehindQueue(client, new ObjectMapper(), new SimpleMeterRegistry(),
+                100, 200, flushInterval, OverflowPolicy.SPILL,
+                dir.resolve("spill.jsonl").toString(), dir.resolve("dead.jsonl").toString(),
+                maxRowAttempts, Duration.ofSeconds(10));
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.qa.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// AIMD 限制值的增减，以及许可排队、超时、取消和归还
+class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    void queuedCallRunsWhenPermitIsReleased() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 2, 10, 1, Duration.ofSeconds(5));
+        Sinks.One<String> first = Sinks.one();
+        Sinks.One<String> second = Sinks.one();
+        AtomicInteger started = new AtomicInteger();
+        limiter.execute(() -> {
+            started.incrementAndGet();
+            return first.asMono();
+        }).subscribe();
+        limiter.execute(() -> {
+            started.incrementAndGet();
+            return second.asMono();
+        }).subscribe();
+        assertThat(limiter.getInflight()).isEqualTo(2);
+
+        List<String> queuedResult = new ArrayList<>();
+        limiter.execute(() -> {
+            started.incrementAndGet();
+            return Mono.just("queued");
+        }).subscribe(queuedResult::add);
+        assertThat(started).hasValue(2);
+
+        // 队列容量为 1，再来的请求立即被拒绝
+        assertThatThrownBy(() -> limiter.execute(() -> Mono.just("rejected")).block())
+                .isInstanceOf(LimitExceededException.class);
+
+        first.tryEmitValue("first");
+        assertThat(started).hasValue(3);
+        assertThat(queuedResult).containsExactly("queued");
+        assertThat(limiter.getInflight()).isEqualTo(1);
+
+        second.tryEmitValue("second");
+        assertThat(limiter.getInflight()).isZero();
+    }
+
+    @Test
+    void queuedCallTimesOutWithoutTakingAPermit() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 10, 5, Duration.ofMillis(100));
+        Sinks.One<String> holder = Sinks.one();
+        limiter.execute(holder::asMono).subscribe();
+
+        AtomicInteger started = new AtomicInteger();
+        StepVerifier.create(limiter.execute(() -> {
+                    started.incrementAndGet();
+                    return Mono.just("late");
+                }))
+                .expectError(LimitExceededException.class)
+                .verify(Duration.ofSeconds(5));
+        assertThat(started).hasValue(0);
+
+        holder.tryEmitValue("done");
+        assertThat(limiter.getInflight()).isZero();
+    }
+
+    @Test
+    void cancelledWaiterIsSkippedOnRelease() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 10, 5, Duration.ofSeconds(5));
+        Sinks.One<String> holder = Sinks.one();
+        limiter.execute(holder::asMono).subscribe();
+
+        AtomicInteger started = new AtomicInteger();
+        Disposable cancelled = limiter.execute(() -> {
+            started.incrementAndGet();
+            return Mono.just("cancelled");
+        }).subscribe();
+        List<String> next = new ArrayList<>();
+        limiter.execute(() -> Mono.just("next")).subscribe(next::add);
+        cancelled.dispose();
+
+        holder.tryEmitValue("done");
+        assertThat(started).hasValue(0);
+        assertThat(next).containsExactly("next");
+        assertThat(limiter.getInflight()).isZero();
+    }
+
+    @Test
+    void errorsBackOffMultiplicativelyDownToMinimum() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 2, 100, 5, Duration.ofSeconds(5));
+        int[] expected = {5, 2, 2, 2};
+        for (int limit : expected) {
+            assertThatThrownBy(() -> limiter.execute(() -> Mono.error(new IllegalStateException("boom"))).block())
+                    .isInstanceOf(IllegalStateException.class);
+            assertThat(limiter.getLimit()).isEqualTo(limit);
+        }
+        assertThat(limiter.getInflight()).isZero();
+    }
+
+    @Test
+    void slowCallsBackOff() {
+        AdaptiveConcurrencyLimiter fast = limiter(10, 2, 100, 5, Duration.ofSeconds(5));
+        AdaptiveConcurrencyLimiter slow = new AdaptiveConcurrencyLimiter(new SimpleMeterRegistry(),
+                10, 2, 100, 0.5, Duration.ofMillis(10), 5, Duration.ofSeconds(5));
+        slow.execute(() -> Mono.delay(Duration.ofMillis(30)).thenReturn("slow")).block();
+        fast.execute(() -> Mono.delay(Duration.ofMillis(30)).thenReturn("fast")).block();
+        assertThat(slow.getLimit()).isEqualTo(5);
+        assertThat(fast.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    void successesGrowOnlyWhileNearTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 2, 100, 5, Duration.ofSeconds(5));
+        // 串行调用 inflight 恒为 1：2 -> 2.5 -> 2.9 -> 3.24，之后 1 * 2 < 3 不再增长
+        for (int i = 0; i < 20; i++) {
+            limiter.execute(() -> Mono.just("ok")).block();
+        }
+        assertThat(limiter.getLimit()).isEqualTo(3);
+    }
+
+    @Test
+    void growthIsCappedAtMaximum() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 2, 3, 5, Duration.ofSeconds(5));
+        for (int round = 0; round < 20; round++) {
+            List<Sinks.One<String>> holders = new ArrayList<>();
+            for (int i = 0; i < limiter.getLimit(); i++) {
+                Sinks.One<String> holder = Sinks.one();
+                holders.add(holder);
+                limiter.execute(holder::asMono).subscribe();
+            }
+            holders.forEach(holder -> holder.tryEmitValue("ok"));
+        }
+        assertThat(limiter.getLimit()).isEqualTo(3);
+        assertThat(limiter.getInflight()).isZero();
+    }
+
+    // 延迟阈值 5s、退避系数 0.5
+    private static AdaptiveConcurrencyLimiter limiter(int initialLimit, int minLimit, int maxLimit, int maxQueue, Duration maxWait) {
+        return new AdaptiveConcurrencyLimiter(new SimpleMeterRegistry(),
+                initialLimit, minLimit, maxLimit, 0.5, Duration.ofSeconds(5), maxQueue, maxWait);
+    }
+}
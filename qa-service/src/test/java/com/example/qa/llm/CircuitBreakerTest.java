@@ -0,0 +1,172 @@
+package com.example.qa.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// 熔断器状态机：CLOSED -> OPEN -> HALF_OPEN -> CLOSED / OPEN，以及不计入统计的结束方式
+class CircuitBreakerTest {
+
+    private static final Duration OPEN_DURATION = Duration.ofMillis(300);
+
+    @Test
+    void opensWhenFailureRateReachesThresholdAndRejectsWithoutCallingUpstream() {
+        CircuitBreaker breaker = breaker(2);
+        succeed(breaker);
+        succeed(breaker);
+        fail(breaker);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        fail(breaker);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        AtomicInteger calls = new AtomicInteger();
+        assertThatThrownBy(() -> breaker.execute(() -> Mono.fromCallable(calls::incrementAndGet)).block())
+                .isInstanceOf(CircuitOpenException.class);
+        assertThatThrownBy(() -> breaker.executeMany(() -> Flux.defer(() -> Flux.just(calls.incrementAndGet()))).blockLast())
+                .isInstanceOf(CircuitOpenException.class);
+        assertThat(calls).hasValue(0);
+    }
+
+    @Test
+    void staysClosedBelowMinimumCalls() {
+        CircuitBreaker breaker = breaker(2);
+        fail(breaker);
+        fail(breaker);
+        fail(breaker);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void halfOpenClosesAfterAllProbesSucceed() throws InterruptedException {
+        CircuitBreaker breaker = trip(breaker(2));
+
+        Thread.sleep(OPEN_DURATION.toMillis() + 50);
+        succeed(breaker);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        succeed(breaker);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        // 关闭后重新统计，之前的失败不再计入
+        fail(breaker);
+        fail(breaker);
+        fail(breaker);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void halfOpenProbeFailureReopens() throws InterruptedException {
+        CircuitBreaker breaker = trip(breaker(2));
+
+        Thread.sleep(OPEN_DURATION.toMillis() + 50);
+        succeed(breaker);
+        fail(breaker);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThatThrownBy(() -> succeed(breaker)).isInstanceOf(CircuitOpenException.class);
+    }
+
+    @Test
+    void halfOpenAdmitsOnlyConfiguredProbesAndCancellationReturnsTheSlot() throws InterruptedException {
+        CircuitBreaker breaker = trip(breaker(2));
+        Thread.sleep(OPEN_DURATION.toMillis() + 50);
+
+        Sinks.One<String> first = Sinks.one();
+        Sinks.One<String> second = Sinks.one();
+        Disposable firstCall = breaker.execute(first::asMono).subscribe();
+        breaker.execute(second::asMono).subscribe();
+        assertThatThrownBy(() -> succeed(breaker)).isInstanceOf(CircuitOpenException.class);
+
+        // 取消不计入统计，只归还试探名额
+        firstCall.dispose();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        succeed(breaker);
+        second.tryEmitValue("ok");
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void limiterRejectionsAreNotCounted() {
+        CircuitBreaker breaker = breaker(2);
+        for (int i = 0; i < 10; i++) {
+            assertThatThrownBy(() -> breaker.execute(() -> Mono.error(new LimitExceededException("full"))).block())
+                    .isInstanceOf(LimitExceededException.class);
+        }
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void clientErrorsAreNotCountedButRateLimitingIs() {
+        CircuitBreaker breaker = breaker(2);
+        for (int status : new int[]{400, 401, 413, 422, 400, 401, 413, 422}) {
+            assertThatThrownBy(() -> breaker.execute(() -> Mono.error(httpError(status))).block())
+                    .isInstanceOf(WebClientResponseException.class);
+        }
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(() -> breaker.execute(() -> Mono.error(httpError(429))).block())
+                    .isInstanceOf(WebClientResponseException.class);
+        }
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void slowCallsOpenTheBreaker() {
+        CircuitBreaker breaker = breaker(2);
+        for (int i = 0; i < 4; i++) {
+            breaker.execute(() -> Mono.delay(Duration.ofMillis(30)).thenReturn("slow")).block();
+        }
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void streamFailureAfterFirstElementCountsAsFailure() {
+        CircuitBreaker breaker = breaker(2);
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(() -> breaker.executeMany(() -> Flux.just("a").concatWith(Flux.error(new IllegalStateException("reset"))))
+                    .blockLast())
+                    .isInstanceOf(IllegalStateException.class);
+        }
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    // 窗口 10、最少 4 次、失败率 50%、慢调用 20ms、打开 300ms，给冷启动的 JVM 留出余量
+    private static CircuitBreaker breaker(int halfOpenCalls) {
+        return new CircuitBreaker(new SimpleMeterRegistry(), 10, 4, 0.5, 0.8,
+                Duration.ofMillis(20), OPEN_DURATION, halfOpenCalls);
+    }
+
+    private static WebClientResponseException httpError(int status) {
+        return WebClientResponseException.create(status, "HTTP " + status, HttpHeaders.EMPTY, new byte[0],
+                StandardCharsets.UTF_8);
+    }
+
+    private static CircuitBreaker trip(CircuitBreaker breaker) {
+        for (int i = 0; i < 4; i++) {
+            fail(breaker);
+        }
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        return breaker;
+    }
+
+    private static void succeed(CircuitBreaker breaker) {
+        breaker.execute(() -> Mono.just("ok")).block();
+    }
+
+    private static void fail(CircuitBreaker breaker) {
+        assertThatThrownBy(() -> breaker.execute(() -> Mono.error(new IllegalStateException("boom"))).block())
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
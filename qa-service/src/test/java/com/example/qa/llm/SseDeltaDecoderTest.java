@@ -0,0 +1,101 @@
+package com.example.qa.llm;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// 无论上游在哪个字节处切分数据块（包括 UTF-8 多字节字符和 \r\n 中间），解码结果都必须与整块输入一致
+class SseDeltaDecoderTest {
+
+    private static final DefaultDataBufferFactory BUFFERS = DefaultDataBufferFactory.sharedInstance;
+
+    private static final String STREAM = ""
+            + ": keep-alive\n\n"
+            + "data: {\"choices\":[{\"delta\":{\"role\":\"assistant\"}}]}\n\n"
+            + "data: {\"choices\":[{\"delta\":{\"content\":\"您好，\"}}]}\r\n\r\n"
+            + "event: message\n"
+            + "id: 3\n"
+            + "data: {\"choices\":[{\"delta\":{\"content\":\"请在“设置”中\"}}]}\r\n\r\n"
+            + "data:{\"choices\":[{\"delta\":{\"content\":\"重置密码 ✅\"},\"finish_reason\":null}]}\n\n"
+            + "data: not json\n\n"
+            + "data: {\"choices\":[{\"delta\":{\"content\":\"。\"},\"finish_reason\":\"stop\"}],\n"
+            + "data: \"usage\":{\"prompt_tokens\":12,\"completion_tokens\":5,"
+            + "\"prompt_cache_hit_tokens\":8,\"prompt_cache_miss_tokens\":4}}\r\n\r\n"
+            + "data: [DONE]\n\n"
+            + "data: {\"choices\":[{\"delta\":{\"content\":\"DONE 之后的内容\"}}]}\n\n";
+
+    private static final List<ChatDelta> EXPECTED = List.of(
+            ChatDelta.content("您好，"),
+            ChatDelta.content("请在“设置”中"),
+            ChatDelta.content("重置密码 ✅"),
+            new ChatDelta("。", "stop", null, new TokenUsage(12, 5, 8, 4)));
+
+    @Test
+    void decodesWholeStream() {
+        assertThat(decode(STREAM.getBytes(StandardCharsets.UTF_8), new int[0])).isEqualTo(EXPECTED);
+    }
+
+    @Test
+    void everySingleSplitPointYieldsSameDeltas() {
+        byte[] bytes = STREAM.getBytes(StandardCharsets.UTF_8);
+        for (int split = 1; split < bytes.length; split++) {
+            assertThat(decode(bytes, new int[]{split})).as("split at %d", split).isEqualTo(EXPECTED);
+        }
+    }
+
+    @Test
+    void randomMultiSplitsYieldSameDeltas() {
+        byte[] bytes = STREAM.getBytes(StandardCharsets.UTF_8);
+        Random random = new Random(17);
+        for (int round = 0; round < 500; round++) {
+            int[] splits = random.ints(1 + random.nextInt(20), 1, bytes.length).sorted().distinct().toArray();
+            assertThat(decode(bytes, splits)).as("splits %s", Arrays.toString(splits)).isEqualTo(EXPECTED);
+        }
+    }
+
+    @Test
+    void byteByByteYieldsSameDeltas() {
+        byte[] bytes = STREAM.getBytes(StandardCharsets.UTF_8);
+        int[] splits = new int[bytes.length - 1];
+        for (int i = 0; i < splits.length; i++) {
+            splits[i] = i + 1;
+        }
+        assertThat(decode(bytes, splits)).isEqualTo(EXPECTED);
+    }
+
+    @Test
+    void lastEventWithoutTrailingBlankLineIsDispatched() {
+        String stream = "data: {\"choices\":[{\"delta\":{\"content\":\"末尾\"}}]}";
+        byte[] bytes = stream.getBytes(StandardCharsets.UTF_8);
+        for (int split = 1; split < bytes.length; split++) {
+            assertThat(decode(bytes, new int[]{split})).containsExactly(ChatDelta.content("末尾"));
+        }
+    }
+
+    @Test
+    void errorPayloadIsSurfaced() {
+        String stream = "data: {\"error\":{\"message\":\"rate limited\",\"code\":429}}\n\n";
+        assertThat(decode(stream.getBytes(StandardCharsets.UTF_8), new int[]{7}))
+                .containsExactly(ChatDelta.error("rate limited"));
+    }
+
+    private static List<ChatDelta> decode(byte[] bytes, int[] splits) {
+        List<DataBuffer> chunks = new ArrayList<>();
+        int from = 0;
+        for (int split : splits) {
+            chunks.add(BUFFERS.wrap(Arrays.copyOfRange(bytes, from, split)));
+            from = split;
+        }
+        chunks.add(BUFFERS.wrap(Arrays.copyOfRange(bytes, from, bytes.length)));
+        return SseDeltaDecoder.decode(Flux.fromIterable(chunks)).collectList().block();
+    }
+}
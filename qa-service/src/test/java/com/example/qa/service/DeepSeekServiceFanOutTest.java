@@ -0,0 +1,225 @@
+package com.example.qa.service;
+
+import com.example.common.response.ApiResponse;
+import com.example.knowledge.entity.Knowledge;
+import com.example.qa.cache.AnswerCache;
+import com.example.qa.client.ReactiveKnowledgeClient;
+import com.example.qa.entity.Answer;
+import com.example.qa.llm.RequestCoalescer;
+import com.example.qa.metrics.QaMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// 并行编排的时序：精确匹配、上下文检索和投机 DeepSeek 调用在虚拟时间下的先后关系，
+// 以及谁的结果被采用、谁被取消（hedge-delay 为 300ms）
+class DeepSeekServiceFanOutTest {
+
+    private static final String QUESTION = "如何重置密码";
+    private static final Duration HEDGE_DELAY = Duration.ofMillis(300);
+
+    private ReactiveKnowledgeClient knowledgeClient;
+    private RequestCoalescer coalescer;
+    private SimpleMeterRegistry registry;
+    private DeepSeekService service;
+
+    // DeepSeek 调用的发起时间（虚拟时间毫秒数），未发起为 -1
+    private final AtomicLong llmStartedAt = new AtomicLong(-1);
+    private final AtomicInteger llmCalls = new AtomicInteger();
+    private final AtomicBoolean llmCancelled = new AtomicBoolean();
+
+    @BeforeEach
+    void setUp() {
+        knowledgeClient = mock(ReactiveKnowledgeClient.class);
+        coalescer = mock(RequestCoalescer.class);
+        registry = new SimpleMeterRegistry();
+        AnswerCache answerCache = mock(AnswerCache.class);
+        when(answerCache.lookup(anyString())).thenReturn(Mono.empty());
+
+        service = new DeepSeekService(null, knowledgeClient, answerCache, coalescer, null, null, null, null,
+                new QaMetrics(registry), null, null);
+        ReflectionTestUtils.setField(service, "model", "deepseek-chat");
+        ReflectionTestUtils.setField(service, "speculativeEnabled", true);
+        ReflectionTestUtils.setField(service, "hedgeDelay", HEDGE_DELAY);
+        ReflectionTestUtils.setField(service, "nearExactEnabled", false);
+    }
+
+    @Test
+    void fastExactHitWinsWithoutCallingDeepSeek() {
+        exactMatch(Duration.ofMillis(100), "知识库答案");
+        llm(Duration.ofSeconds(1));
+        AtomicBoolean contextCancelled = new AtomicBoolean();
+
+        StepVerifier.withVirtualTime(() -> service.getAnswerFanOutAsync(QUESTION, 1L,
+                        context(Duration.ofMillis(500)).doOnCancel(() -> contextCancelled.set(true))))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(100))
+                .assertNext(answer -> assertThat(answer.getAnswer()).isEqualTo("知识库答案"))
+                .verifyComplete();
+
+        assertThat(llmCalls).hasValue(0);
+        assertThat(contextCancelled).isTrue();
+        verify(knowledgeClient, times(1)).findByQuestion(QUESTION);
+    }
+
+    @Test
+    void fastMissCallsDeepSeekOnceContextIsReady() {
+        exactMatch(Duration.ofMillis(100), null);
+        llm(Duration.ofSeconds(1));
+
+        StepVerifier.withVirtualTime(() -> service.getAnswerFanOutAsync(QUESTION, 1L, context(Duration.ofMillis(200))))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(1200))
+                .assertNext(answer -> assertThat(answer.getAnswer()).isEqualTo("DeepSeek 答案"))
+                .verifyComplete();
+
+        // 未命中先于 hedge-delay 确认，DeepSeek 在上下文检索完成时发起，不算投机调用
+        assertThat(llmStartedAt).hasValue(200);
+        assertThat(speculative("used")).isZero();
+        verify(knowledgeClient, times(1)).findByQuestion(QUESTION);
+    }
+
+    @Test
+    void slowExactHitCancelsSpeculativeCall() {
+        exactMatch(Duration.ofSeconds(1), "知识库答案");
+        llm(Duration.ofSeconds(2));
+
+        StepVerifier.withVirtualTime(() -> service.getAnswerFanOutAsync(QUESTION, 1L, context(Duration.ofMillis(50))))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofSeconds(1))
+                .assertNext(answer -> assertThat(answer.getAnswer()).isEqualTo("知识库答案"))
+                .verifyComplete();
+
+        assertThat(llmStartedAt).hasValue(HEDGE_DELAY.toMillis());
+        assertThat(llmCancelled).isTrue();
+        assertThat(speculative("cancelled")).isEqualTo(1);
+    }
+
+    @Test
+    void speculativeAnswerIsHeldUntilMissIsConfirmed() {
+        exactMatch(Duration.ofSeconds(1), null);
+        llm(Duration.ofMillis(500));
+
+        StepVerifier.withVirtualTime(() -> service.getAnswerFanOutAsync(QUESTION, 1L, context(Duration.ofMillis(50))))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofSeconds(1))
+                .assertNext(answer -> assertThat(answer.getAnswer()).isEqualTo("DeepSeek 答案"))
+                .verifyComplete();
+
+        assertThat(llmStartedAt).hasValue(HEDGE_DELAY.toMillis());
+        assertThat(llmCalls).hasValue(1);
+        assertThat(speculative("used")).isEqualTo(1);
+    }
+
+    @Test
+    void speculativeCallWaitsForContextSearch() {
+        exactMatch(Duration.ofSeconds(1), null);
+        llm(Duration.ofMillis(500));
+
+        StepVerifier.withVirtualTime(() -> service.getAnswerFanOutAsync(QUESTION, 1L, context(Duration.ofMillis(600))))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(1100))
+                .assertNext(answer -> assertThat(answer.getAnswer()).isEqualTo("DeepSeek 答案"))
+                .verifyComplete();
+
+        assertThat(llmStartedAt).hasValue(600);
+    }
+
+    @Test
+    void deepSeekErrorIsIgnoredWhenExactMatchHits() {
+        exactMatch(Duration.ofSeconds(1), "知识库答案");
+        llmFails(Duration.ofMillis(200));
+
+        StepVerifier.withVirtualTime(() -> service.getAnswerFanOutAsync(QUESTION, 1L, context(Duration.ofMillis(50))))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofSeconds(1))
+                .assertNext(answer -> {
+                    assertThat(answer.getAnswer()).isEqualTo("知识库答案");
+                    assertThat(answer.isDegraded()).isFalse();
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void deepSeekErrorAfterMissFallsBack() {
+        exactMatch(Duration.ofSeconds(1), null);
+        llmFails(Duration.ofMillis(200));
+
+        StepVerifier.withVirtualTime(() -> service.getAnswerFanOutAsync(QUESTION, 1L, context(Duration.ofMillis(50))))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofSeconds(1))
+                .assertNext(answer -> assertThat(answer.isDegraded()).isTrue())
+                .verifyComplete();
+    }
+
+    @Test
+    void withoutSpeculationDeepSeekWaitsForTheMiss() {
+        ReflectionTestUtils.setField(service, "speculativeEnabled", false);
+        exactMatch(Duration.ofSeconds(1), null);
+        llm(Duration.ofMillis(500));
+
+        StepVerifier.withVirtualTime(() -> service.getAnswerFanOutAsync(QUESTION, 1L, context(Duration.ofMillis(50))))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(1500))
+                .assertNext(answer -> assertThat(answer.getAnswer()).isEqualTo("DeepSeek 答案"))
+                .verifyComplete();
+
+        assertThat(llmStartedAt).hasValue(1000);
+        assertThat(speculative("used")).isZero();
+    }
+
+    // answer 为 null 表示未命中
+    private void exactMatch(Duration latency, String answer) {
+        Knowledge knowledge = answer == null ? null : new Knowledge(1L, QUESTION, answer, null, null);
+        when(knowledgeClient.findByQuestion(QUESTION))
+                .thenAnswer(invocation -> Mono.delay(latency).thenReturn(ApiResponse.success(knowledge)));
+    }
+
+    private void llm(Duration latency) {
+        stubLlm(Mono.delay(latency).thenReturn("DeepSeek 答案"));
+    }
+
+    private void llmFails(Duration latency) {
+        stubLlm(Mono.delay(latency).then(Mono.error(new IllegalStateException("upstream 500"))));
+    }
+
+    private void stubLlm(Mono<String> call) {
+        doAnswer(invocation -> Mono.defer(() -> {
+                    llmCalls.incrementAndGet();
+                    llmStartedAt.set(Schedulers.parallel().now(TimeUnit.MILLISECONDS));
+                    return call;
+                })
+                .doOnCancel(() -> llmCancelled.set(true)))
+                .when(coalescer).execute(anyString(), any());
+    }
+
+    private static Mono<List<String>> context(Duration latency) {
+        return Mono.delay(latency).thenReturn(List.of("Q: 忘记密码 A: 点击找回密码"));
+    }
+
+    private double speculative(String outcome) {
+        Counter counter = registry.find("qa.llm.speculative.calls").tag("outcome", outcome).counter();
+        return counter == null ? 0 : counter.count();
+    }
+}
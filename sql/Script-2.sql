@@ -15,7 +15,8 @@ CREATE TABLE IF NOT EXISTS qa_history (
     question TEXT NOT NULL,
     answer TEXT NOT NULL,
     create_time DATETIME,
-    FOREIGN KEY (user_id) REFERENCES user(id)
+    FOREIGN KEY (user_id) REFERENCES user(id),
+    INDEX idx_create_time (create_time)
 );
 -- Knowledge base table
 CREATE TABLE IF NOT EXISTS knowledge (
@@ -47,7 +48,8 @@ CREATE TABLE `knowledge` (
     `update_time` DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
     PRIMARY KEY (`id`),
     FULLTEXT INDEX `idx_question` (`question`),
-    FULLTEXT INDEX `idx_answer` (`answer`)
+    FULLTEXT INDEX `idx_answer` (`answer`),
+    INDEX `idx_update_time` (`update_time`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='问答知识库表';
 
 -- 插入示例数据